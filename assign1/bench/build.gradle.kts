@@ -0,0 +1,41 @@
+plugins {
+    id("java")
+}
+
+repositories {
+    mavenCentral()
+}
+
+val jmhVersion = "1.37"
+
+dependencies {
+    implementation("org.openjdk.jmh:jmh-core:$jmhVersion")
+    annotationProcessor("org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
+}
+
+// The benchmarks compile against the same kernel sources as the Makefile build
+sourceSets {
+    main {
+        java {
+            srcDir("../src/java")
+        }
+    }
+}
+
+// VectorKernels uses the incubating Vector API, OffHeapKernels the java.lang.foreign preview of JDK 21
+tasks.withType<JavaCompile> {
+    options.release.set(21)
+    options.compilerArgs.addAll(listOf("--enable-preview", "--add-modules", "jdk.incubator.vector"))
+}
+
+// Runs the JMH sweep and appends the samples to docs/data_java.csv.
+// Parameters are forwarded as key=value pairs, e.g.
+//   ./gradlew bench --args="sizes=600,1000 blockSizes=128,256 threads=1,4,8"
+tasks.register<JavaExec>("bench") {
+    group = "benchmark"
+    description = "Runs the JMH matrix product benchmarks and writes docs/data_java.csv rows"
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("MatrixProductBenchmarkRunner")
+    workingDir = file("..")
+    jvmArgs("--enable-preview", "--add-modules", "jdk.incubator.vector")
+}
@@ -0,0 +1,136 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// JMH version of the MatrixProduct test sweep. Allocation and initialisation happen
+// outside the measured region, C is reset before every iteration, and each
+// configuration is warmed up in several forked JVMs before it is measured. The heap
+// of the forks is sized by MatrixProductBenchmarkRunner from the largest size.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 3, jvmArgsAppend = {"--enable-preview", "--add-modules=jdk.incubator.vector"})
+public class MatrixProductBenchmark
+{
+    public enum Kernel
+    {
+        NORMAL("Normal Mult", false),
+        INLINE("Inline Mult", false),
+        BLOCK("Block Mult", true),
+        INLINE_BLOCK("Inline Block Mult", true),
+        SIMD_INLINE("SIMD Inline Mult", false),
+        SIMD_INLINE_BLOCK("SIMD Inline Block Mult", true),
+        PACKED("Packed Mult", false),
+        STRASSEN("Strassen Mult", true);
+
+        final String functionType;
+        final boolean blocked;
+
+        Kernel(String functionType, boolean blocked)
+        {
+            this.functionType = functionType;
+            this.blocked = blocked;
+        }
+    }
+
+    @Param({"1024"})
+    public int size;
+
+    // Ignored by NORMAL and INLINE, the runner passes -1 for them
+    @Param({"-1"})
+    public int blockSize;
+
+    @Param({"NORMAL"})
+    public Kernel kernel;
+
+    // 1 runs the serial kernel, anything else the outer loop parallel version
+    @Param({"1"})
+    public int threads;
+
+    private double[] matrixA;
+    private double[] matrixB;
+    private double[] matrixC;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void allocate()
+    {
+        if (kernel.blocked && blockSize <= 0)
+            throw new IllegalArgumentException(kernel + " needs a positive blockSize");
+
+        matrixA = new double[size * size];
+        matrixB = new double[size * size];
+        matrixC = new double[size * size];
+        MatrixKernels.initMatrices(matrixA, matrixB, matrixC, size);
+
+        if (threads > 1)
+            pool = new ForkJoinPool(threads);
+    }
+
+    // Not per invocation: the fill would run between timed calls and evict the inputs. The
+    // kernels accumulating into C over an iteration cost the same as on a zero C.
+    @Setup(Level.Iteration)
+    public void clearResult()
+    {
+        Arrays.fill(matrixC, 0.0);
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown()
+    {
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    @Benchmark
+    public double[] multiply()
+    {
+        if (pool == null)
+        {
+            switch (kernel)
+            {
+                case NORMAL -> MatrixKernels.mult(matrixA, matrixB, matrixC, size);
+                case INLINE -> MatrixKernels.multLine(matrixA, matrixB, matrixC, size);
+                case BLOCK -> MatrixKernels.multBlock(matrixA, matrixB, matrixC, size, blockSize);
+                case INLINE_BLOCK -> MatrixKernels.multBlockLine(matrixA, matrixB, matrixC, size, blockSize);
+                case SIMD_INLINE -> MatrixKernels.multLineSimd(matrixA, matrixB, matrixC, size);
+                case SIMD_INLINE_BLOCK -> MatrixKernels.multBlockLineSimd(matrixA, matrixB, matrixC, size, blockSize);
+                case PACKED -> PackedGemm.multiply(matrixA, size, matrixB, size, matrixC, size, size, size, size,
+                        PackedGemm.DEFAULT_MC, PackedGemm.DEFAULT_KC, PackedGemm.DEFAULT_NC);
+                case STRASSEN -> Strassen.multiply(null, matrixA, matrixB, matrixC, size, Strassen.DEFAULT_CUTOFF, blockSize);
+            }
+        }
+        else
+        {
+            switch (kernel)
+            {
+                case NORMAL -> MatrixKernels.multParallel(pool, ParallelLoop.OUTER, matrixA, matrixB, matrixC, size);
+                case INLINE -> MatrixKernels.multLineParallel(pool, ParallelLoop.OUTER, matrixA, matrixB, matrixC, size);
+                case BLOCK -> MatrixKernels.multBlockParallel(pool, ParallelLoop.OUTER, matrixA, matrixB, matrixC, size, blockSize);
+                case INLINE_BLOCK -> MatrixKernels.multBlockLineParallel(pool, ParallelLoop.OUTER, matrixA, matrixB, matrixC, size, blockSize);
+                case SIMD_INLINE -> MatrixKernels.multLineSimdParallel(pool, matrixA, matrixB, matrixC, size);
+                case SIMD_INLINE_BLOCK -> MatrixKernels.multBlockLineSimdParallel(pool, matrixA, matrixB, matrixC, size, blockSize);
+                case PACKED -> PackedGemm.multiplyParallel(pool, ParallelLoop.INNER_MOST, matrixA, size, matrixB, size, matrixC, size,
+                        size, size, size, PackedGemm.DEFAULT_MC, PackedGemm.DEFAULT_KC, PackedGemm.DEFAULT_NC);
+                case STRASSEN -> Strassen.multiply(pool, matrixA, matrixB, matrixC, size, Strassen.DEFAULT_CUTOFF, blockSize);
+            }
+        }
+        return matrixC;
+    }
+}
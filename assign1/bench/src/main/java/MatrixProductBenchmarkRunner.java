@@ -0,0 +1,147 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.profile.LinuxPerfNormProfiler;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs MatrixProductBenchmark over the requested sweep and appends every measured
+// iteration to docs/data_java.csv, one row per sample like handleTestCases does.
+//
+// Arguments (all optional, key=value):
+//   sizes=600,1000,...       matrix sizes
+//   blockSizes=128,256,512   block sizes for the block kernels
+//   kernels=NORMAL,...       subset of MatrixProductBenchmark.Kernel
+//   threads=1,4,8,...        1 is the serial kernel
+//   forks=3 warmup=3 iterations=10
+//   heap=6g                  -Xms/-Xmx of the forks, sized from the largest size by default
+//   perfnorm=true|false      defaults to true when a perf binary is on the PATH
+//   out=docs/data_java.csv
+public class MatrixProductBenchmarkRunner
+{
+    public static void main(String[] args) throws RunnerException, IOException
+    {
+        Map<String, String> options = new HashMap<>();
+        options.put("sizes", "600,1000,1400,1800,2200,2600,3000");
+        options.put("blockSizes", "128,256,512");
+        options.put("kernels", "NORMAL,INLINE,BLOCK,INLINE_BLOCK,SIMD_INLINE,SIMD_INLINE_BLOCK,PACKED,STRASSEN");
+        options.put("threads", "1");
+        options.put("forks", "3");
+        options.put("warmup", "3");
+        options.put("iterations", "10");
+        options.put("heap", "");
+        options.put("perfnorm", String.valueOf(perfAvailable()));
+        options.put("out", "docs/data_java.csv");
+
+        for (String arg : args)
+        {
+            int eq = arg.indexOf('=');
+            if (eq <= 0)
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        List<String> plain = new ArrayList<>();
+        List<String> blocked = new ArrayList<>();
+        for (String name : options.get("kernels").split(","))
+        {
+            MatrixProductBenchmark.Kernel kernel = MatrixProductBenchmark.Kernel.valueOf(name.trim());
+            (kernel.blocked ? blocked : plain).add(kernel.name());
+        }
+
+        // Block size is meaningless for NORMAL and INLINE, so they run in their own
+        // pass instead of repeating once per block size
+        List<RunResult> results = new ArrayList<>();
+        if (!plain.isEmpty())
+            results.addAll(run(options, plain, new String[]{"-1"}));
+        if (!blocked.isEmpty())
+            results.addAll(run(options, blocked, options.get("blockSizes").split(",")));
+
+        try (FileWriter file = new FileWriter(options.get("out"), true))
+        {
+            for (RunResult result : results)
+                writeRows(file, result);
+        }
+    }
+
+    private static Collection<RunResult> run(Map<String, String> options, List<String> kernels, String[] blockSizes)
+            throws RunnerException
+    {
+        ChainedOptionsBuilder builder = new OptionsBuilder()
+                .include(MatrixProductBenchmark.class.getSimpleName() + ".multiply")
+                .param("size", options.get("sizes").split(","))
+                .param("blockSize", blockSizes)
+                .param("kernel", kernels.toArray(new String[0]))
+                .param("threads", options.get("threads").split(","))
+                .forks(Integer.parseInt(options.get("forks")))
+                .warmupIterations(Integer.parseInt(options.get("warmup")))
+                .measurementIterations(Integer.parseInt(options.get("iterations")))
+                .jvmArgsPrepend("-Xms" + heap(options), "-Xmx" + heap(options))
+                .addProfiler(GCProfiler.class);
+
+        if (Boolean.parseBoolean(options.get("perfnorm")))
+            builder.addProfiler(LinuxPerfNormProfiler.class);
+
+        return new Runner(builder.build()).run();
+    }
+
+    // One CSV row per measured iteration of every fork
+    private static void writeRows(FileWriter file, RunResult result) throws IOException
+    {
+        BenchmarkParams params = result.getParams();
+        int size = Integer.parseInt(params.getParam("size"));
+        int blockSize = Integer.parseInt(params.getParam("blockSize"));
+        int threads = Integer.parseInt(params.getParam("threads"));
+        MatrixProductBenchmark.Kernel kernel = MatrixProductBenchmark.Kernel.valueOf(params.getParam("kernel"));
+
+        String name = threads > 1 ? "Parallelized " + kernel.functionType : kernel.functionType;
+        String functionType = MatrixProduct.functionType(name, kernel.blocked ? blockSize : -1, threads > 1 ? threads : -1);
+
+        for (BenchmarkResult fork : result.getBenchmarkResults())
+        {
+            for (IterationResult iteration : fork.getIterationResults())
+            {
+                MatrixProduct.writeToCSVFile(file, functionType, size, iteration.getPrimaryResult().getScore());
+            }
+        }
+    }
+
+    // Room for A, B, C and the Strassen temporaries at the largest size, fixed so the
+    // heap does not resize during the measurement
+    private static String heap(Map<String, String> options)
+    {
+        if (!options.get("heap").isEmpty())
+            return options.get("heap");
+
+        long largest = 0;
+        for (String size : options.get("sizes").split(","))
+            largest = Math.max(largest, Long.parseLong(size.trim()));
+        return ((12 * 8 * largest * largest >> 20) + 256) + "m";
+    }
+
+    private static boolean perfAvailable()
+    {
+        String path = System.getenv("PATH");
+        if (path == null)
+            return false;
+        for (String dir : path.split(File.pathSeparator))
+        {
+            if (new File(dir, "perf").canExecute())
+                return true;
+        }
+        return false;
+    }
+}
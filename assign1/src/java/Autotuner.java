@@ -0,0 +1,451 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+// Picks the block size, loop order and thread count of the blocked kernels for the
+// machine it runs on, with short timed trials, and keeps the winners in a profile file.
+//
+// The search is one coordinate at a time, at one representative size per size range:
+//   1. block size, from a list of powers of two, in-between sizes and sizes derived
+//      from the cache sizes the OS reports, with the inline kernel on all threads
+//   2. loop order (Block / Inline Block / SIMD Inline Block) and parallel loop
+//   3. thread count
+//   4. block size again, in steps of 8 around the best one
+//   5. the kernel specialised for that block size (KernelFactory), for each unroll factor
+// Each trial is one untimed warmup at n <= WARMUP_SIZE, then the best of up to TRIALS runs
+// at the tuned size, as many as fit in TRIAL_BUDGET_SECONDS. A candidate is dropped after
+// its first run slower than DROP_MARGIN times the best so far, so the losers of the large
+// ranges cost one multiply each.
+final class Autotuner
+{
+    static final Path DEFAULT_PROFILE = Path.of("docs", "autotune_java.properties");
+    static final int TRIALS = 3;
+    static final double TRIAL_BUDGET_SECONDS = 5;
+    static final double DROP_MARGIN = 1.5;
+    // large enough for the JIT to compile the kernel loops, small enough to be cheap
+    static final int WARMUP_SIZE = 512;
+
+    // Upper bound of each size range and the size it is tuned at. The last range covers the
+    // 4096-10240 sizes of the test cases, whose blocks must fit a far larger working set
+    // than at 2048.
+    static final int[] RANGE_MAX_SIZES = {768, 1536, 3072, Integer.MAX_VALUE};
+    static final int[] RANGE_TUNE_SIZES = {512, 1024, 2048, 4096};
+
+    private static final int[] BASE_BLOCK_SIZES = {32, 48, 64, 96, 128, 160, 192, 256, 320, 384, 512};
+
+    // Loop order of the blocked kernel: i-j-k dot products or i-k-j row updates
+    enum Kernel
+    {
+        BLOCK("Block Mult"),
+        INLINE_BLOCK("Inline Block Mult"),
+        SIMD_INLINE_BLOCK("SIMD Inline Block Mult"),
+        SPECIALIZED_INLINE_BLOCK("Specialized Inline Block Mult");
+
+        final String functionType;
+
+        Kernel(String functionType)
+        {
+            this.functionType = functionType;
+        }
+    }
+
+    static final class Config
+    {
+        final Kernel kernel;
+        final int bkSize;
+        final int threads;
+        final ParallelLoop loop;
+        // unroll factor of SPECIALIZED_INLINE_BLOCK, 1 for the other kernels
+        final int unroll;
+
+        Config(Kernel kernel, int bkSize, int threads, ParallelLoop loop, int unroll)
+        {
+            this.kernel = kernel;
+            this.bkSize = bkSize;
+            this.threads = threads;
+            this.loop = loop;
+            this.unroll = unroll;
+        }
+
+        Config withKernel(Kernel kernel, ParallelLoop loop)
+        {
+            return new Config(kernel, bkSize, threads, loop, unroll);
+        }
+
+        Config withBkSize(int bkSize)
+        {
+            return new Config(kernel, bkSize, threads, loop, unroll);
+        }
+
+        Config withThreads(int threads)
+        {
+            return new Config(kernel, bkSize, threads, loop, unroll);
+        }
+
+        Config withUnroll(int unroll)
+        {
+            return new Config(kernel, bkSize, threads, loop, unroll);
+        }
+
+        // C += A * B with this configuration. pool is ignored for one thread.
+        void run(ForkJoinPool pool, double[] matrixA, double[] matrixB, double[] matrixC, int n)
+        {
+            if (kernel == Kernel.SPECIALIZED_INLINE_BLOCK)
+            {
+                KernelFactory.multiply(threads > 1 ? pool : null, KernelFactory.specialized(bkSize, unroll),
+                        matrixA, matrixB, matrixC, n, bkSize);
+                return;
+            }
+
+            if (threads <= 1)
+            {
+                switch (kernel)
+                {
+                    case BLOCK:
+                        MatrixKernels.multBlock(matrixA, matrixB, matrixC, n, bkSize);
+                        break;
+                    case INLINE_BLOCK:
+                        MatrixKernels.multBlockLine(matrixA, matrixB, matrixC, n, bkSize);
+                        break;
+                    default:
+                        MatrixKernels.multBlockLineSimd(matrixA, matrixB, matrixC, n, bkSize);
+                        break;
+                }
+                return;
+            }
+
+            switch (kernel)
+            {
+                case BLOCK:
+                    MatrixKernels.multBlockParallel(pool, loop, matrixA, matrixB, matrixC, n, bkSize);
+                    break;
+                case INLINE_BLOCK:
+                    MatrixKernels.multBlockLineParallel(pool, loop, matrixA, matrixB, matrixC, n, bkSize);
+                    break;
+                default:
+                    MatrixKernels.multBlockLineSimdParallel(pool, matrixA, matrixB, matrixC, n, bkSize);
+                    break;
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            String shape = kernel == Kernel.SPECIALIZED_INLINE_BLOCK ? ", unroll " + unroll : "";
+            return kernel.functionType + ", bk " + bkSize + shape + ", " + threads + " threads, " + loop + " loop";
+        }
+    }
+
+    // Best configuration per size range, index aligned with RANGE_MAX_SIZES
+    static final class Profile
+    {
+        final Config[] configs;
+
+        Profile(Config[] configs)
+        {
+            this.configs = configs;
+        }
+
+        // A profile saved with fewer ranges uses its last one for the sizes above them
+        Config lookup(int n)
+        {
+            for (int r = 0; r < configs.length; r++)
+            {
+                if (n <= RANGE_MAX_SIZES[r])
+                    return configs[r];
+            }
+            return configs[configs.length - 1];
+        }
+    }
+
+    private Autotuner()
+    {
+    }
+
+    // Tunes every size range, printing each trial
+    static Profile tune()
+    {
+        Config[] configs = new Config[RANGE_TUNE_SIZES.length];
+
+        for (int r = 0; r < RANGE_TUNE_SIZES.length; r++)
+        {
+            System.out.println("== Tuning n = " + RANGE_TUNE_SIZES[r] + " ==");
+            configs[r] = tune(RANGE_TUNE_SIZES[r]);
+            System.out.println("Best: " + configs[r]);
+        }
+        return new Profile(configs);
+    }
+
+    static Config tune(int n)
+    {
+        double[] matrixA = new double[n * n];
+        double[] matrixB = new double[n * n];
+        double[] matrixC = new double[n * n];
+        MatrixKernels.initMatrices(matrixA, matrixB, matrixC, n);
+
+        int warmupSize = Math.min(n, WARMUP_SIZE);
+        Matrices warmup = new Matrices(new double[warmupSize * warmupSize], new double[warmupSize * warmupSize],
+                new double[warmupSize * warmupSize], warmupSize);
+        MatrixKernels.initMatrices(warmup.matrixA, warmup.matrixB, warmup.matrixC, warmupSize);
+
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        Trial best = new Trial(new Config(Kernel.INLINE_BLOCK, 128, maxThreads, ParallelLoop.OUTER, 1), Double.MAX_VALUE);
+
+        // 1. block size
+        for (int bkSize : blockSizeCandidates(n))
+            best = best.min(time(best.config.withBkSize(bkSize), best.time, warmup, matrixA, matrixB, matrixC, n));
+
+        // 2. loop order
+        for (Kernel kernel : Kernel.values())
+        {
+            if (kernel == Kernel.SIMD_INLINE_BLOCK && !MatrixKernels.SIMD_AVAILABLE)
+                continue;
+            // needs the final block size, step 5
+            if (kernel == Kernel.SPECIALIZED_INLINE_BLOCK)
+                continue;
+
+            for (ParallelLoop loop : ParallelLoop.values())
+            {
+                // the SIMD kernel only parallelizes the outer loop, a serial run has no loop to pick
+                if ((kernel == Kernel.SIMD_INLINE_BLOCK || maxThreads == 1) && loop != ParallelLoop.OUTER)
+                    continue;
+                best = best.min(time(best.config.withKernel(kernel, loop), best.time, warmup, matrixA, matrixB, matrixC, n));
+            }
+        }
+
+        // 3. threads
+        for (int threads : threadCandidates(maxThreads))
+            best = best.min(time(best.config.withThreads(threads), best.time, warmup, matrixA, matrixB, matrixC, n));
+
+        // 4. refine the block size
+        int center = best.config.bkSize;
+        for (int bkSize = Math.max(8, center - 24); bkSize <= Math.min(n, center + 24); bkSize += 8)
+            best = best.min(time(best.config.withBkSize(bkSize), best.time, warmup, matrixA, matrixB, matrixC, n));
+
+        // 5. specialised kernel, compiled during the warmup of each trial
+        if (KernelFactory.available())
+        {
+            Config specialized = best.config.withKernel(Kernel.SPECIALIZED_INLINE_BLOCK, ParallelLoop.OUTER);
+            for (int unroll : KernelFactory.UNROLL_FACTORS)
+            {
+                if (specialized.bkSize % unroll == 0)
+                    best = best.min(time(specialized.withUnroll(unroll), best.time, warmup, matrixA, matrixB, matrixC, n));
+            }
+        }
+
+        return best.config;
+    }
+
+    static void save(Profile profile, Path path) throws IOException
+    {
+        Properties properties = new Properties();
+        properties.setProperty("host.processors", Integer.toString(Runtime.getRuntime().availableProcessors()));
+        properties.setProperty("host.arch", System.getProperty("os.arch"));
+
+        for (int r = 0; r < profile.configs.length; r++)
+        {
+            Config config = profile.configs[r];
+            String prefix = "range." + r + ".";
+            properties.setProperty(prefix + "maxSize", Integer.toString(RANGE_MAX_SIZES[r]));
+            properties.setProperty(prefix + "kernel", config.kernel.name());
+            properties.setProperty(prefix + "bkSize", Integer.toString(config.bkSize));
+            properties.setProperty(prefix + "threads", Integer.toString(config.threads));
+            properties.setProperty(prefix + "loop", config.loop.name());
+            properties.setProperty(prefix + "unroll", Integer.toString(config.unroll));
+        }
+
+        try (Writer writer = Files.newBufferedWriter(path))
+        {
+            properties.store(writer, "Autotuned blocked kernel configuration per size range");
+        }
+    }
+
+    // The profile at path, or null when there is none. A profile written for a different
+    // number of processors is still loaded, with a warning.
+    static Profile load(Path path) throws IOException
+    {
+        if (!Files.exists(path))
+            return null;
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path))
+        {
+            properties.load(reader);
+        }
+
+        String processors = properties.getProperty("host.processors");
+        if (processors != null && Integer.parseInt(processors) != Runtime.getRuntime().availableProcessors())
+            System.out.println("Warning: " + path + " was tuned on a machine with " + processors + " processors");
+
+        // profiles saved before the 4096 range have three
+        int ranges = 0;
+        while (ranges < RANGE_MAX_SIZES.length && properties.getProperty("range." + ranges + ".kernel") != null)
+            ranges++;
+        if (ranges == 0)
+            throw new IOException("Malformed autotune profile " + path);
+        if (ranges < RANGE_MAX_SIZES.length)
+            System.out.println("Warning: " + path + " has no range tuned at n = " + RANGE_TUNE_SIZES[ranges] + ", sizes above "
+                    + RANGE_MAX_SIZES[ranges - 1] + " use the one tuned at n = " + RANGE_TUNE_SIZES[ranges - 1] + "; run the autotuner again");
+
+        Config[] configs = new Config[ranges];
+        try
+        {
+            for (int r = 0; r < configs.length; r++)
+            {
+                String prefix = "range." + r + ".";
+                configs[r] = new Config(
+                        Kernel.valueOf(properties.getProperty(prefix + "kernel")),
+                        Integer.parseInt(properties.getProperty(prefix + "bkSize")),
+                        Integer.parseInt(properties.getProperty(prefix + "threads")),
+                        ParallelLoop.valueOf(properties.getProperty(prefix + "loop")),
+                        // profiles saved before the specialised kernels have no unroll
+                        Integer.parseInt(properties.getProperty(prefix + "unroll", "1")));
+            }
+        }
+        catch (NullPointerException | IllegalArgumentException e)
+        {
+            throw new IOException("Malformed autotune profile " + path, e);
+        }
+        return new Profile(configs);
+    }
+
+    // bestTime is the time to beat, Double.MAX_VALUE for the first candidate
+    private static Trial time(Config config, double bestTime, Matrices warmup, double[] matrixA, double[] matrixB, double[] matrixC, int n)
+    {
+        ForkJoinPool pool = config.threads > 1 ? new ForkJoinPool(config.threads) : null;
+        double best = Double.MAX_VALUE;
+        double spent = 0;
+        boolean dropped = false;
+
+        try
+        {
+            config.run(pool, warmup.matrixA, warmup.matrixB, warmup.matrixC, warmup.n);
+
+            // one more run only while it fits in the budget
+            for (int trial = 0; trial < TRIALS && (trial == 0 || spent + best <= TRIAL_BUDGET_SECONDS); trial++)
+            {
+                long start = System.nanoTime();
+                config.run(pool, matrixA, matrixB, matrixC, n);
+                long end = System.nanoTime();
+
+                double time = (end - start) / 1e9;
+                best = Math.min(best, time);
+                spent += time;
+
+                if (time > DROP_MARGIN * bestTime)
+                {
+                    dropped = true;
+                    break;
+                }
+            }
+        }
+        finally
+        {
+            if (pool != null)
+                pool.shutdown();
+        }
+
+        System.out.printf("%s: %.4f seconds%s%n", config, best, dropped ? " (dropped)" : "");
+        return new Trial(config, best);
+    }
+
+    private static List<Integer> blockSizeCandidates(int n)
+    {
+        TreeSet<Integer> sizes = new TreeSet<>();
+        for (int bkSize : BASE_BLOCK_SIZES)
+            sizes.add(bkSize);
+
+        // a block of A, B and C (3 * bk^2 doubles) filling half of each data cache level
+        for (long cacheBytes : dataCacheSizes())
+        {
+            int bkSize = (int) Math.sqrt(cacheBytes / 2.0 / (3 * Double.BYTES)) / 8 * 8;
+            if (bkSize >= 8)
+                sizes.add(bkSize);
+        }
+
+        List<Integer> candidates = new ArrayList<>();
+        for (int bkSize : sizes)
+        {
+            if (bkSize <= n)
+                candidates.add(bkSize);
+        }
+        return candidates;
+    }
+
+    private static List<Integer> threadCandidates(int maxThreads)
+    {
+        TreeSet<Integer> threads = new TreeSet<>();
+        for (int t = 1; t < maxThreads; t *= 2)
+            threads.add(t);
+        threads.add(maxThreads);
+        return new ArrayList<>(threads);
+    }
+
+    // Data and unified cache sizes from sysfs, empty where that is not available
+    static List<Long> dataCacheSizes()
+    {
+        List<Long> sizes = new ArrayList<>();
+        Path cacheDir = Path.of("/sys/devices/system/cpu/cpu0/cache");
+
+        for (int index = 0; Files.isDirectory(cacheDir.resolve("index" + index)); index++)
+        {
+            Path dir = cacheDir.resolve("index" + index);
+            try
+            {
+                if (Files.readString(dir.resolve("type")).trim().equals("Instruction"))
+                    continue;
+
+                String size = Files.readString(dir.resolve("size")).trim();
+                long multiplier = size.endsWith("K") ? 1024 : size.endsWith("M") ? 1024 * 1024 : 1;
+                if (multiplier > 1)
+                    size = size.substring(0, size.length() - 1);
+                sizes.add(Long.parseLong(size) * multiplier);
+            }
+            catch (IOException | NumberFormatException e)
+            {
+                // skip cache levels the kernel does not describe
+            }
+        }
+        return sizes;
+    }
+
+    private static final class Matrices
+    {
+        final double[] matrixA;
+        final double[] matrixB;
+        final double[] matrixC;
+        final int n;
+
+        Matrices(double[] matrixA, double[] matrixB, double[] matrixC, int n)
+        {
+            this.matrixA = matrixA;
+            this.matrixB = matrixB;
+            this.matrixC = matrixC;
+            this.n = n;
+        }
+    }
+
+    private static final class Trial
+    {
+        final Config config;
+        final double time;
+
+        Trial(Config config, double time)
+        {
+            this.config = config;
+            this.time = time;
+        }
+
+        Trial min(Trial other)
+        {
+            return other.time < time ? other : this;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+import java.util.concurrent.ForkJoinPool;
+
+// Right-looking blocked LU factorisation with partial pivoting, P A = L U, and the solver
+// of A x = b on top of it. For every panel of bkSize columns starting at k:
+//
+//   1. factor the panel A[k:n, k:k+bk] column by column, swapping whole rows for the
+//      pivots (serial, O(n bk^2))
+//   2. U12 = L11^-1 A12, the rows of the panel to the right of it (parallel over tiles of
+//      columns)
+//   3. A22 -= L21 U12, the trailing matrix (parallel over bk x bk tiles of A22)
+//
+// Step 3 holds almost all of the 2/3 n^3 flops and is the product of OnMultBlockLine, run
+// through GemmEngine on views of A with alpha = -1 and beta = 1, one tile per task.
+final class BlockedLU
+{
+    // L (unit diagonal, below) and U (on and above) in one n x n array, with the row swaps
+    static final class Factorization
+    {
+        final double[] lu;
+        final int[] pivots;
+        final int n;
+
+        Factorization(double[] lu, int[] pivots, int n)
+        {
+            this.lu = lu;
+            this.pivots = pivots;
+            this.n = n;
+        }
+
+        // x with A x = b, b left as it is
+        double[] solve(double[] b)
+        {
+            if (b.length != n)
+                throw new IllegalArgumentException("b has " + b.length + " elements, expected " + n);
+
+            double[] x = b.clone();
+
+            // P b, in the order the rows were swapped
+            for (int j = 0; j < n; j++)
+            {
+                int p = pivots[j];
+                if (p != j)
+                {
+                    double temp = x[j];
+                    x[j] = x[p];
+                    x[p] = temp;
+                }
+            }
+
+            // L y = P b
+            for (int i = 0; i < n; i++)
+            {
+                double sum = x[i];
+                for (int j = 0; j < i; j++)
+                    sum -= lu[i * n + j] * x[j];
+                x[i] = sum;
+            }
+
+            // U x = y
+            for (int i = n - 1; i >= 0; i--)
+            {
+                double sum = x[i];
+                for (int j = i + 1; j < n; j++)
+                    sum -= lu[i * n + j] * x[j];
+                x[i] = sum / lu[i * n + i];
+            }
+            return x;
+        }
+    }
+
+    private BlockedLU()
+    {
+    }
+
+    // 2/3 n^3, the count LAPACK reports for getrf
+    static double flops(int n)
+    {
+        return 2.0 / 3.0 * n * n * n;
+    }
+
+    // Factors the n x n row-major a in place. pool may be null for a serial run.
+    // Throws ArithmeticException when a column has no non-zero pivot.
+    static Factorization factor(ForkJoinPool pool, double[] a, int n, int bkSize)
+    {
+        if (bkSize < 1)
+            throw new IllegalArgumentException("bkSize must be positive");
+
+        int[] pivots = new int[n];
+        GemmEngine.View matrix = GemmEngine.View.of(a, n, n);
+        // every tile of the trailing update is one task, the engine itself runs serially
+        GemmEngine tileEngine = new GemmEngine(null, bkSize);
+
+        for (int panel = 0; panel < n; panel += bkSize)
+        {
+            int k = panel;
+            int kb = Math.min(bkSize, n - k);
+            int next = k + kb;
+            int rest = n - next;
+
+            factorPanel(a, n, k, kb, pivots);
+
+            if (rest == 0)
+                break;
+
+            int tiles = (rest + bkSize - 1) / bkSize;
+
+            // 2. U12, independent per column
+            if (pool == null)
+            {
+                solveRows(a, n, k, kb, next, n);
+            }
+            else
+            {
+                MatrixKernels.parallelFor(pool, 0, tiles, tile -> {
+                    int from = next + tile * bkSize;
+                    solveRows(a, n, k, kb, from, Math.min(from + bkSize, n));
+                });
+            }
+
+            // 3. A22 -= L21 U12
+            GemmEngine.View l21 = matrix.sub(next, k, rest, kb);
+            GemmEngine.View u12 = matrix.sub(k, next, kb, rest);
+
+            if (pool == null)
+            {
+                tileEngine.multiply(-1.0, l21, u12, 1.0, matrix.sub(next, next, rest, rest));
+                continue;
+            }
+
+            MatrixKernels.parallelFor(pool, 0, tiles * tiles, tile -> {
+                int row = tile / tiles * bkSize, col = tile % tiles * bkSize;
+                int rows = Math.min(bkSize, rest - row), cols = Math.min(bkSize, rest - col);
+
+                tileEngine.multiply(-1.0, l21.sub(row, 0, rows, kb), u12.sub(0, col, kb, cols),
+                        1.0, matrix.sub(next + row, next + col, rows, cols));
+            });
+        }
+
+        return new Factorization(a, pivots, n);
+    }
+
+    // A x = b for the n x n row-major a, which is left as it is
+    static double[] solve(ForkJoinPool pool, double[] a, double[] b, int n, int bkSize)
+    {
+        return factor(pool, a.clone(), n, bkSize).solve(b);
+    }
+
+    // Unblocked LU of the columns [k, k + kb) from row k down. The pivot rows are swapped
+    // across the whole matrix, which also applies the swaps to L to the left and to the
+    // trailing columns the next steps read.
+    private static void factorPanel(double[] a, int n, int k, int kb, int[] pivots)
+    {
+        for (int j = k; j < k + kb; j++)
+        {
+            int p = j;
+            double max = Math.abs(a[j * n + j]);
+            for (int i = j + 1; i < n; i++)
+            {
+                if (Math.abs(a[i * n + j]) > max)
+                {
+                    max = Math.abs(a[i * n + j]);
+                    p = i;
+                }
+            }
+
+            if (max == 0)
+                throw new ArithmeticException("Matrix is singular: column " + j + " has no pivot");
+
+            pivots[j] = p;
+            if (p != j)
+            {
+                for (int c = 0; c < n; c++)
+                {
+                    double temp = a[j * n + c];
+                    a[j * n + c] = a[p * n + c];
+                    a[p * n + c] = temp;
+                }
+            }
+
+            double pivot = a[j * n + j];
+            for (int i = j + 1; i < n; i++)
+            {
+                double l = a[i * n + j] / pivot;
+                a[i * n + j] = l;
+
+                for (int c = j + 1; c < k + kb; c++)
+                {
+                    a[i * n + c] -= l * a[j * n + c];
+                }
+            }
+        }
+    }
+
+    // U12 = L11^-1 A12 for the columns [from, to): forward substitution down the rows of
+    // the panel, each row an AXPY over the columns
+    private static void solveRows(double[] a, int n, int k, int kb, int from, int to)
+    {
+        for (int i = k + 1; i < k + kb; i++)
+        {
+            for (int j = k; j < i; j++)
+            {
+                double l = a[i * n + j];
+
+                for (int c = from; c < to; c++)
+                {
+                    a[i * n + c] -= l * a[j * n + c];
+                }
+            }
+        }
+    }
+}
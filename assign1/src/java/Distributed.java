@@ -0,0 +1,425 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Cannon's algorithm on a q x q grid of worker JVMs started on this machine, to use the
+// memory bandwidth of more than one process. A, B and C are cut into q x q tiles of
+// T = ceil(n / q) (edge tiles zero-padded); worker (i, j) owns C(i, j) and receives A(i, i + j)
+// and B(i + j, j) from the coordinator, already skewed. Each of the q steps multiplies the
+// pair it holds into C(i, j) and then shifts A one worker left and B one worker up, over
+// loopback sockets between the workers.
+//
+// Tiles live in native memory and go to the sockets as direct ByteBuffers over the same
+// memory the kernel reads: a tile received in one step is forwarded as is in the next,
+// without being copied into the Java heap.
+//
+// With bindNodes each worker is started under numactl, bound to one NUMA node round-robin
+// (CPUs and memory), so its tiles are allocated and touched on the node that computes them.
+final class Distributed
+{
+    private static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE;
+    private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+
+    // Wall time of a multiply and where it went. computeTime and shiftTime are the largest
+    // over the workers; commTime is everything else, wall time not spent in the kernel of
+    // the slowest worker: distributing the tiles, the shifts and collecting C.
+    static final class Stats
+    {
+        final double totalTime;
+        final double computeTime;
+        final double commTime;
+        final double shiftTime;
+
+        Stats(double totalTime, double computeTime, double commTime, double shiftTime)
+        {
+            this.totalTime = totalTime;
+            this.computeTime = computeTime;
+            this.commTime = commTime;
+            this.shiftTime = shiftTime;
+        }
+    }
+
+    private Distributed()
+    {
+    }
+
+    // C = A * B for n x n row-major matrices on gridSize x gridSize workers. Starting the
+    // workers, their warmup and connecting them is not part of the timed region.
+    static Stats multiply(double[] matrixA, double[] matrixB, double[] matrixC, int n, int gridSize, int bkSize,
+                          boolean bindNodes) throws IOException
+    {
+        if (gridSize < 1 || bkSize < 1)
+            throw new IllegalArgumentException("gridSize and bkSize must be positive");
+
+        List<Integer> nodes = bindNodes ? numaNodes() : List.of();
+        if (bindNodes && (nodes.size() < 2 || !numactlAvailable()))
+        {
+            System.out.println("Not binding the workers: " + (nodes.size() < 2 ? "one NUMA node" : "numactl not found"));
+            nodes = List.of();
+        }
+
+        int workers = gridSize * gridSize;
+        int tileSize = (n + gridSize - 1) / gridSize;
+        List<Process> processes = new ArrayList<>();
+        SocketChannel[] channels = new SocketChannel[workers];
+
+        try (ServerSocketChannel server = ServerSocketChannel.open();
+             Arena arena = Arena.ofConfined())
+        {
+            server.bind(new InetSocketAddress(LOOPBACK, 0));
+
+            for (int w = 0; w < workers; w++)
+                processes.add(startWorker(server.socket().getLocalPort(), nodes.isEmpty() ? -1 : nodes.get(w % nodes.size())));
+
+            // rank is the order of arrival, every worker sends the port its neighbours connect to
+            int[] ports = new int[workers];
+            ByteBuffer header = ByteBuffer.allocate(4 * Integer.BYTES + workers * Integer.BYTES);
+            for (int w = 0; w < workers; w++)
+            {
+                channels[w] = server.accept();
+                ports[w] = readInts(channels[w], 1)[0];
+            }
+            for (int w = 0; w < workers; w++)
+            {
+                header.clear();
+                header.putInt(w).putInt(gridSize).putInt(tileSize).putInt(bkSize);
+                for (int port : ports)
+                    header.putInt(port);
+                header.flip();
+                writeFully(channels[w], header);
+            }
+            // every worker has warmed up and connected to its neighbours
+            for (int w = 0; w < workers; w++)
+                readInts(channels[w], 1);
+
+            MemorySegment tile = arena.allocate((long) tileSize * tileSize * Double.BYTES, OffHeapKernels.ALIGNMENT);
+            ByteBuffer buffer = tile.asByteBuffer();
+
+            long start = System.nanoTime();
+
+            for (int w = 0; w < workers; w++)
+            {
+                int i = w / gridSize, j = w % gridSize;
+
+                packTile(matrixA, n, tileSize, i, (i + j) % gridSize, tile);
+                writeFully(channels[w], buffer.clear());
+                packTile(matrixB, n, tileSize, (i + j) % gridSize, j, tile);
+                writeFully(channels[w], buffer.clear());
+            }
+
+            long computeNanos = 0, shiftNanos = 0;
+
+            for (int w = 0; w < workers; w++)
+            {
+                ByteBuffer times = ByteBuffer.allocate(2 * Long.BYTES);
+                readFully(channels[w], times);
+                computeNanos = Math.max(computeNanos, times.getLong(0));
+                shiftNanos = Math.max(shiftNanos, times.getLong(Long.BYTES));
+
+                readFully(channels[w], buffer.clear());
+                unpackTile(tile, n, tileSize, w / gridSize, w % gridSize, matrixC);
+            }
+
+            long end = System.nanoTime();
+
+            double totalTime = (end - start) / 1e9;
+            return new Stats(totalTime, computeNanos / 1e9, totalTime - computeNanos / 1e9, shiftNanos / 1e9);
+        }
+        finally
+        {
+            for (SocketChannel channel : channels)
+            {
+                if (channel != null)
+                    channel.close();
+            }
+            waitForWorkers(processes);
+        }
+    }
+
+    // Products of WARMUP_SIZE tiles a new worker runs before it reports ready, so the timed
+    // steps run the compiled kernel instead of starting in the interpreter
+    static final int WARMUP_SIZE = 256;
+    static final int WARMUP_RUNS = 20;
+
+    // Entry point of a worker process, "MatrixProduct worker <coordinator port>"
+    static void worker(int coordinatorPort) throws IOException
+    {
+        ExecutorService sender = Executors.newSingleThreadExecutor();
+
+        try (SocketChannel coordinator = SocketChannel.open(new InetSocketAddress(LOOPBACK, coordinatorPort));
+             ServerSocketChannel server = ServerSocketChannel.open();
+             Arena arena = Arena.ofShared())
+        {
+            server.bind(new InetSocketAddress(LOOPBACK, 0));
+
+            ByteBuffer portMessage = ByteBuffer.allocate(Integer.BYTES).putInt(server.socket().getLocalPort());
+            writeFully(coordinator, portMessage.flip());
+
+            int[] config = readInts(coordinator, 4);
+            int rank = config[0], gridSize = config[1], tileSize = config[2], bkSize = config[3];
+            int[] ports = readInts(coordinator, gridSize * gridSize);
+            int i = rank / gridSize, j = rank % gridSize;
+
+            // same kind of segment and same block size as the timed steps
+            int warmupSize = Math.min(WARMUP_SIZE, tileSize);
+            MemorySegment warmup = OffHeapKernels.allocate(arena, warmupSize);
+            for (int run = 0; run < WARMUP_RUNS; run++)
+                OffHeapKernels.multBlockLineSimd(warmup, warmup, warmup, warmupSize, bkSize);
+
+            // A goes to the left neighbour and comes from the right one, B goes up and comes from below
+            SocketChannel toLeft = null, toUp = null, fromRight = null, fromDown = null;
+            if (gridSize > 1)
+            {
+                toLeft = connectPeer(ports[i * gridSize + (j + gridSize - 1) % gridSize], rank, 0);
+                toUp = connectPeer(ports[((i + gridSize - 1) % gridSize) * gridSize + j], rank, 1);
+
+                for (int c = 0; c < 2; c++)
+                {
+                    SocketChannel peer = server.accept();
+                    if (readInts(peer, 2)[1] == 0)
+                        fromRight = peer;
+                    else
+                        fromDown = peer;
+                }
+            }
+
+            writeFully(coordinator, ByteBuffer.allocate(Integer.BYTES).putInt(rank).flip());
+
+            long bytes = (long) tileSize * tileSize * Double.BYTES;
+            // current pair in [0], the pair being received in [1]; the arena is shared because
+            // the sender thread reads them too
+            MemorySegment[] tileA = {arena.allocate(bytes, OffHeapKernels.ALIGNMENT), arena.allocate(bytes, OffHeapKernels.ALIGNMENT)};
+            MemorySegment[] tileB = {arena.allocate(bytes, OffHeapKernels.ALIGNMENT), arena.allocate(bytes, OffHeapKernels.ALIGNMENT)};
+            MemorySegment tileC = arena.allocate(bytes, OffHeapKernels.ALIGNMENT);
+
+            readFully(coordinator, tileA[0].asByteBuffer());
+            readFully(coordinator, tileB[0].asByteBuffer());
+
+            long computeNanos = 0, shiftNanos = 0;
+
+            for (int step = 0; step < gridSize; step++)
+            {
+                long start = System.nanoTime();
+
+                OffHeapKernels.multBlockLineSimd(tileA[0], tileB[0], tileC, tileSize, bkSize);
+
+                long end = System.nanoTime();
+                computeNanos += end - start;
+
+                if (step == gridSize - 1)
+                    break;
+
+                // send the current pair while receiving the next one, a blocking write of a
+                // tile larger than the socket buffers would otherwise wait for the neighbour
+                final SocketChannel left = toLeft, up = toUp;
+                final MemorySegment sendA = tileA[0], sendB = tileB[0];
+                Future<?> sent = sender.submit(() -> {
+                    writeFully(left, sendA.asByteBuffer());
+                    writeFully(up, sendB.asByteBuffer());
+                    return null;
+                });
+
+                readFully(fromRight, tileA[1].asByteBuffer());
+                readFully(fromDown, tileB[1].asByteBuffer());
+                waitFor(sent);
+
+                MemorySegment swap = tileA[0];
+                tileA[0] = tileA[1];
+                tileA[1] = swap;
+                swap = tileB[0];
+                tileB[0] = tileB[1];
+                tileB[1] = swap;
+
+                shiftNanos += System.nanoTime() - end;
+            }
+
+            ByteBuffer times = ByteBuffer.allocate(2 * Long.BYTES).putLong(computeNanos).putLong(shiftNanos);
+            writeFully(coordinator, times.flip());
+            writeFully(coordinator, tileC.asByteBuffer());
+
+            for (SocketChannel peer : new SocketChannel[]{toLeft, toUp, fromRight, fromDown})
+            {
+                if (peer != null)
+                    peer.close();
+            }
+        }
+        finally
+        {
+            sender.shutdownNow();
+        }
+    }
+
+    // Same java, class path and JVM options as this process, minus a flight recording
+    // that would overwrite the coordinator's. node >= 0 binds it to that NUMA node.
+    private static Process startWorker(int coordinatorPort, int node) throws IOException
+    {
+        List<String> command = new ArrayList<>();
+        if (node >= 0)
+        {
+            command.add("numactl");
+            command.add("--cpunodebind=" + node);
+            command.add("--membind=" + node);
+        }
+        command.add(ProcessHandle.current().info().command()
+                .orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString()));
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments())
+        {
+            if (!option.startsWith("-XX:StartFlightRecording"))
+                command.add(option);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("MatrixProduct");
+        command.add("worker");
+        command.add(Integer.toString(coordinatorPort));
+
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    // NUMA nodes with CPUs, from sysfs; empty where that is not available
+    static List<Integer> numaNodes()
+    {
+        List<Integer> nodes = new ArrayList<>();
+        Path nodeDir = Path.of("/sys/devices/system/node");
+
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(nodeDir, "node[0-9]*"))
+        {
+            for (Path dir : dirs)
+            {
+                if (!Files.readString(dir.resolve("cpulist")).isBlank())
+                    nodes.add(Integer.parseInt(dir.getFileName().toString().substring("node".length())));
+            }
+        }
+        catch (IOException | NumberFormatException e)
+        {
+            // no sysfs, or a node the kernel does not describe: treat the machine as one node
+            return List.of();
+        }
+
+        nodes.sort(null);
+        return nodes;
+    }
+
+    private static boolean numactlAvailable()
+    {
+        String path = System.getenv("PATH");
+        if (path == null)
+            return false;
+
+        for (String dir : path.split(File.pathSeparator))
+        {
+            if (Files.isExecutable(Path.of(dir, "numactl")))
+                return true;
+        }
+        return false;
+    }
+
+    private static void waitForWorkers(List<Process> processes)
+    {
+        for (Process process : processes)
+        {
+            try
+            {
+                if (!process.waitFor(1, TimeUnit.MINUTES))
+                    process.destroyForcibly();
+            }
+            catch (InterruptedException e)
+            {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Opens the channel this worker sends one operand through and tells the receiver
+    // which one it is (0 = A, 1 = B)
+    private static SocketChannel connectPeer(int port, int rank, int operand) throws IOException
+    {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(LOOPBACK, port));
+        ByteBuffer hello = ByteBuffer.allocate(2 * Integer.BYTES).putInt(rank).putInt(operand);
+        writeFully(channel, hello.flip());
+        return channel;
+    }
+
+    // Tile (ti, tj) of the n x n matrix into tile, zero outside the matrix
+    private static void packTile(double[] matrix, int n, int tileSize, int ti, int tj, MemorySegment tile)
+    {
+        tile.fill((byte) 0);
+        int cols = Math.max(0, Math.min(tileSize, n - tj * tileSize));
+
+        for (int r = 0; r < tileSize && ti * tileSize + r < n; r++)
+        {
+            MemorySegment.copy(matrix, (ti * tileSize + r) * n + tj * tileSize, tile, DOUBLE, (long) r * tileSize * Double.BYTES, cols);
+        }
+    }
+
+    private static void unpackTile(MemorySegment tile, int n, int tileSize, int ti, int tj, double[] matrix)
+    {
+        int cols = Math.max(0, Math.min(tileSize, n - tj * tileSize));
+
+        for (int r = 0; r < tileSize && ti * tileSize + r < n; r++)
+        {
+            MemorySegment.copy(tile, DOUBLE, (long) r * tileSize * Double.BYTES, matrix, (ti * tileSize + r) * n + tj * tileSize, cols);
+        }
+    }
+
+    private static int[] readInts(SocketChannel channel, int count) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(count * Integer.BYTES);
+        readFully(channel, buffer);
+        int[] values = new int[count];
+        for (int v = 0; v < count; v++)
+            values[v] = buffer.getInt(v * Integer.BYTES);
+        return values;
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer) < 0)
+                throw new IOException("connection closed with " + buffer.remaining() + " bytes missing");
+        }
+    }
+
+    private static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    private static void waitFor(Future<?> future) throws IOException
+    {
+        try
+        {
+            future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while sending a tile", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException("sending a tile failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,465 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntToDoubleFunction;
+
+// Single precision versions of the MatrixKernels loops, half the memory traffic and
+// twice the SIMD lanes of the double kernels, plus a mixed precision variant that
+// multiplies in float and accumulates each block's partial sums into a double C.
+// Same layout and numbering as MatrixKernels (F1.x serial, F2.x parallel, F3.x SIMD).
+final class FloatKernels
+{
+    private FloatKernels()
+    {
+    }
+
+    // Seed of the inputs, the same matrices for every kernel and every run
+    static final long INPUT_SEED = 20250101L;
+
+    // Rows of C compared with the double reference, spread evenly over the matrix
+    static final int CHECKED_ROWS = 64;
+
+    // Seeded random A and B in [0, 1) and a zeroed C. Unlike the integer inputs of
+    // MatrixKernels.initMatrices, which float holds exactly up to n = 5792, these round on
+    // every product and sum, so the error shows the precision of the kernel.
+    static void initMatrices(float[] matrixA, float[] matrixB, float[] matrixC, int n)
+    {
+        initInputs(matrixA, matrixB, n);
+        Arrays.fill(matrixC, 0, n * n, 0.0f);
+    }
+
+    // A and B only, for the mixed precision kernels whose C is a double[]
+    static void initInputs(float[] matrixA, float[] matrixB, int n)
+    {
+        SplittableRandom random = new SplittableRandom(INPUT_SEED);
+
+        for (int i = 0; i < n * n; i++)
+            matrixA[i] = (float) random.nextDouble();
+        for (int i = 0; i < n * n; i++)
+            matrixB[i] = (float) random.nextDouble();
+    }
+
+    // Largest |C[i][j] - R[i][j]| / |R[i][j]| over CHECKED_ROWS rows, R being the product
+    // of the same float inputs in double. A full reference would be a double multiply as
+    // long as the kernel itself; the rows are O(n^2) each.
+    static double maxRelativeError(float[] matrixA, float[] matrixB, float[] matrixC, int n)
+    {
+        return maxRelativeError(matrixA, matrixB, n, index -> matrixC[index]);
+    }
+
+    static double maxRelativeError(float[] matrixA, float[] matrixB, double[] matrixC, int n)
+    {
+        return maxRelativeError(matrixA, matrixB, n, index -> matrixC[index]);
+    }
+
+    private static double maxRelativeError(float[] matrixA, float[] matrixB, int n, IntToDoubleFunction matrixC)
+    {
+        double[] reference = new double[n];
+        double error = 0;
+        int rows = Math.min(n, CHECKED_ROWS);
+
+        for (int r = 0; r < rows; r++)
+        {
+            int i = (int) ((long) r * n / rows);
+
+            Arrays.fill(reference, 0.0);
+            for (int k = 0; k < n; k++)
+            {
+                double a = matrixA[i * n + k];
+                for (int j = 0; j < n; j++)
+                    reference[j] += a * matrixB[k * n + j];
+            }
+
+            for (int j = 0; j < n; j++)
+            {
+                double difference = Math.abs(matrixC.applyAsDouble(i * n + j) - reference[j]);
+                // NaN in C counts as an infinite error
+                error = Math.max(error, Double.isNaN(difference) ? Double.POSITIVE_INFINITY : difference / Math.abs(reference[j]));
+            }
+        }
+        return error;
+    }
+
+
+    // F1.1 - Conventional multiplication
+    static void mult(float[] matrixA, float[] matrixB, float[] matrixC, int n)
+    {
+        float temp;
+
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                temp = 0;
+                for (int k = 0; k < n; k++)
+                {
+                    temp += matrixA[i * n + k] * matrixB[k * n + j];
+                }
+                matrixC[i * n + j] = temp;
+            }
+        }
+    }
+
+
+    // F1.2 - Line multiplication
+    static void multLine(float[] matrixA, float[] matrixB, float[] matrixC, int n)
+    {
+        float temp;
+
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                temp = matrixA[i * n + j];
+                for (int k = 0; k < n; k++)
+                {
+                    matrixC[i * n + k] += temp * matrixB[j * n + k];
+                }
+            }
+        }
+    }
+
+
+    // F1.3 - Block multiplication
+    static void multBlock(float[] matrixA, float[] matrixB, float[] matrixC, int n, int bkSize)
+    {
+        for (int bi = 0; bi < n; bi = bi + bkSize)
+        {
+            multBlockRows(matrixA, matrixB, matrixC, n, bkSize, bi, Math.min(bi + bkSize, n));
+        }
+    }
+
+
+    // F1.4 - Block multiplication with inline multiplication
+    static void multBlockLine(float[] matrixA, float[] matrixB, float[] matrixC, int n, int bkSize)
+    {
+        for (int bi = 0; bi < n; bi = bi + bkSize)
+        {
+            multBlockLineRows(matrixA, matrixB, matrixC, n, bkSize, bi, Math.min(bi + bkSize, n));
+        }
+    }
+
+
+    // F2.1 - Parallel conventional multiplication. The INNER_MOST reduction runs through
+    // MatrixKernels.parallelSum, so its partial sums are kept in double.
+    static void multParallel(ForkJoinPool pool, ParallelLoop loop, float[] matrixA, float[] matrixB, float[] matrixC, int n)
+    {
+        if (loop == ParallelLoop.OUTER)
+        {
+            MatrixKernels.parallelFor(pool, 0, n, i -> {
+                for (int j = 0; j < n; j++)
+                {
+                    float temp = 0;
+                    for (int k = 0; k < n; k++)
+                    {
+                        temp += matrixA[i * n + k] * matrixB[k * n + j];
+                    }
+                    matrixC[i * n + j] = temp;
+                }
+            });
+            return;
+        }
+
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                final int row = i, col = j;
+                matrixC[i * n + j] = (float) MatrixKernels.parallelSum(pool, 0, n, k -> matrixA[row * n + k] * matrixB[k * n + col]);
+            }
+        }
+    }
+
+
+    // F2.2 - Parallel line multiplication
+    static void multLineParallel(ForkJoinPool pool, ParallelLoop loop, float[] matrixA, float[] matrixB, float[] matrixC, int n)
+    {
+        if (loop == ParallelLoop.OUTER)
+        {
+            MatrixKernels.parallelFor(pool, 0, n, i -> {
+                for (int j = 0; j < n; j++)
+                {
+                    float temp = matrixA[i * n + j];
+                    for (int k = 0; k < n; k++)
+                    {
+                        matrixC[i * n + k] += temp * matrixB[j * n + k];
+                    }
+                }
+            });
+            return;
+        }
+
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                final int row = i, line = j;
+                final float temp = matrixA[i * n + j];
+                MatrixKernels.parallelFor(pool, 0, n, k -> matrixC[row * n + k] += temp * matrixB[line * n + k]);
+            }
+        }
+    }
+
+
+    // F2.3 - Parallel block multiplication
+    static void multBlockParallel(ForkJoinPool pool, ParallelLoop loop, float[] matrixA, float[] matrixB, float[] matrixC, int n, int bkSize)
+    {
+        if (loop == ParallelLoop.OUTER)
+        {
+            MatrixKernels.parallelFor(pool, 0, (n + bkSize - 1) / bkSize, block -> {
+                int bi = block * bkSize;
+                multBlockRows(matrixA, matrixB, matrixC, n, bkSize, bi, Math.min(bi + bkSize, n));
+            });
+            return;
+        }
+
+        for (int bi = 0; bi < n; bi = bi + bkSize)
+        {
+            final int fromI = bi;
+            MatrixKernels.parallelFor(pool, 0, Math.min(bi + bkSize, n) - bi,
+                    i -> multBlockRows(matrixA, matrixB, matrixC, n, bkSize, fromI + i, fromI + i + 1));
+        }
+    }
+
+
+    // F2.4 - Parallel block multiplication with inline multiplication
+    static void multBlockLineParallel(ForkJoinPool pool, ParallelLoop loop, float[] matrixA, float[] matrixB, float[] matrixC, int n, int bkSize)
+    {
+        if (loop == ParallelLoop.OUTER)
+        {
+            MatrixKernels.parallelFor(pool, 0, (n + bkSize - 1) / bkSize, block -> {
+                int bi = block * bkSize;
+                multBlockLineRows(matrixA, matrixB, matrixC, n, bkSize, bi, Math.min(bi + bkSize, n));
+            });
+            return;
+        }
+
+        for (int bi = 0; bi < n; bi = bi + bkSize)
+        {
+            final int fromI = bi;
+            MatrixKernels.parallelFor(pool, 0, Math.min(bi + bkSize, n) - bi,
+                    i -> multBlockLineRows(matrixA, matrixB, matrixC, n, bkSize, fromI + i, fromI + i + 1));
+        }
+    }
+
+
+    // F3.1 - Line multiplication with an explicit SIMD inner loop
+    static void multLineSimd(float[] matrixA, float[] matrixB, float[] matrixC, int n)
+    {
+        if (!MatrixKernels.SIMD_AVAILABLE)
+        {
+            multLine(matrixA, matrixB, matrixC, n);
+            return;
+        }
+        VectorKernels.multLineRows(matrixA, matrixB, matrixC, n, 0, n);
+    }
+
+
+    // F3.2 - Block multiplication with an explicit SIMD inline multiplication
+    static void multBlockLineSimd(float[] matrixA, float[] matrixB, float[] matrixC, int n, int bkSize)
+    {
+        if (!MatrixKernels.SIMD_AVAILABLE)
+        {
+            multBlockLine(matrixA, matrixB, matrixC, n, bkSize);
+            return;
+        }
+        VectorKernels.multBlockLineRows(matrixA, matrixB, matrixC, n, bkSize, 0, n);
+    }
+
+
+    // F3.3 - Outer loop parallel version of multLineSimd
+    static void multLineSimdParallel(ForkJoinPool pool, float[] matrixA, float[] matrixB, float[] matrixC, int n)
+    {
+        if (!MatrixKernels.SIMD_AVAILABLE)
+        {
+            multLineParallel(pool, ParallelLoop.OUTER, matrixA, matrixB, matrixC, n);
+            return;
+        }
+        MatrixKernels.parallelFor(pool, 0, n, i -> VectorKernels.multLineRows(matrixA, matrixB, matrixC, n, i, i + 1));
+    }
+
+
+    // F3.4 - Outer loop parallel version of multBlockLineSimd
+    static void multBlockLineSimdParallel(ForkJoinPool pool, float[] matrixA, float[] matrixB, float[] matrixC, int n, int bkSize)
+    {
+        if (!MatrixKernels.SIMD_AVAILABLE)
+        {
+            multBlockLineParallel(pool, ParallelLoop.OUTER, matrixA, matrixB, matrixC, n, bkSize);
+            return;
+        }
+        MatrixKernels.parallelFor(pool, 0, (n + bkSize - 1) / bkSize, block -> {
+            int bi = block * bkSize;
+            VectorKernels.multBlockLineRows(matrixA, matrixB, matrixC, n, bkSize, bi, Math.min(bi + bkSize, n));
+        });
+    }
+
+
+    // M1 - Mixed precision block multiplication: float dot products over one k block,
+    // added into the double C once per block
+    static void multBlockMixed(float[] matrixA, float[] matrixB, double[] matrixC, int n, int bkSize)
+    {
+        for (int bi = 0; bi < n; bi = bi + bkSize)
+        {
+            multBlockMixedRows(matrixA, matrixB, matrixC, n, bkSize, bi, Math.min(bi + bkSize, n));
+        }
+    }
+
+
+    // M2 - Mixed precision inline block multiplication: each row of a (bj, bk) block is
+    // built in a float buffer (with the SIMD AXPY when simd is set and available) and
+    // then added into the double C
+    static void multBlockLineMixed(float[] matrixA, float[] matrixB, double[] matrixC, int n, int bkSize, boolean simd)
+    {
+        float[] partial = new float[bkSize];
+        for (int bi = 0; bi < n; bi = bi + bkSize)
+        {
+            multBlockLineMixedRows(matrixA, matrixB, matrixC, n, bkSize, bi, Math.min(bi + bkSize, n), simd, partial);
+        }
+    }
+
+
+    // M3 - Outer loop parallel version of multBlockMixed
+    static void multBlockMixedParallel(ForkJoinPool pool, float[] matrixA, float[] matrixB, double[] matrixC, int n, int bkSize)
+    {
+        MatrixKernels.parallelFor(pool, 0, (n + bkSize - 1) / bkSize, block -> {
+            int bi = block * bkSize;
+            multBlockMixedRows(matrixA, matrixB, matrixC, n, bkSize, bi, Math.min(bi + bkSize, n));
+        });
+    }
+
+
+    // M4 - Outer loop parallel version of multBlockLineMixed, one float buffer per task
+    static void multBlockLineMixedParallel(ForkJoinPool pool, float[] matrixA, float[] matrixB, double[] matrixC, int n, int bkSize, boolean simd)
+    {
+        MatrixKernels.parallelFor(pool, 0, (n + bkSize - 1) / bkSize, block -> {
+            int bi = block * bkSize;
+            multBlockLineMixedRows(matrixA, matrixB, matrixC, n, bkSize, bi, Math.min(bi + bkSize, n), simd, new float[bkSize]);
+        });
+    }
+
+
+    // Block multiplication restricted to the rows [bi, minValueI) of C
+    private static void multBlockRows(float[] matrixA, float[] matrixB, float[] matrixC, int n, int bkSize, int bi, int minValueI)
+    {
+        float temp;
+
+        for (int bj = 0; bj < n; bj = bj + bkSize)
+        {
+            for (int bk = 0; bk < n; bk = bk + bkSize)
+            {
+                int minValueJ = Math.min(bj + bkSize, n);
+                int minValueK = Math.min(bk + bkSize, n);
+
+                for (int i = bi; i < minValueI; i++)
+                {
+                    for (int j = bj; j < minValueJ; j++)
+                    {
+                        temp = 0;
+                        for (int k = bk; k < minValueK; k++)
+                        {
+                            temp += matrixA[i * n + k] * matrixB[k * n + j];
+                        }
+                        matrixC[i * n + j] += temp;
+                    }
+                }
+            }
+        }
+    }
+
+
+    // Inline block multiplication restricted to the rows [bi, minValueI) of C
+    private static void multBlockLineRows(float[] matrixA, float[] matrixB, float[] matrixC, int n, int bkSize, int bi, int minValueI)
+    {
+        for (int bj = 0; bj < n; bj = bj + bkSize)
+        {
+            for (int bk = 0; bk < n; bk = bk + bkSize)
+            {
+                int minValueJ = Math.min(bj + bkSize, n);
+                int minValueK = Math.min(bk + bkSize, n);
+
+                for (int i = bi; i < minValueI; i++)
+                {
+                    for (int j = bj; j < minValueJ; j++)
+                    {
+                        float sum_value = matrixA[j + i * n];
+
+                        for (int k = bk; k < minValueK; k++)
+                        {
+                            matrixC[k + i * n] += sum_value * matrixB[k + j * n];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+
+    private static void multBlockMixedRows(float[] matrixA, float[] matrixB, double[] matrixC, int n, int bkSize, int bi, int minValueI)
+    {
+        float temp;
+
+        for (int bj = 0; bj < n; bj = bj + bkSize)
+        {
+            for (int bk = 0; bk < n; bk = bk + bkSize)
+            {
+                int minValueJ = Math.min(bj + bkSize, n);
+                int minValueK = Math.min(bk + bkSize, n);
+
+                for (int i = bi; i < minValueI; i++)
+                {
+                    for (int j = bj; j < minValueJ; j++)
+                    {
+                        temp = 0;
+                        for (int k = bk; k < minValueK; k++)
+                        {
+                            temp += matrixA[i * n + k] * matrixB[k * n + j];
+                        }
+                        matrixC[i * n + j] += temp;
+                    }
+                }
+            }
+        }
+    }
+
+
+    private static void multBlockLineMixedRows(float[] matrixA, float[] matrixB, double[] matrixC, int n, int bkSize, int bi, int minValueI,
+                                               boolean simd, float[] partial)
+    {
+        boolean vector = simd && MatrixKernels.SIMD_AVAILABLE;
+
+        for (int bj = 0; bj < n; bj = bj + bkSize)
+        {
+            for (int bk = 0; bk < n; bk = bk + bkSize)
+            {
+                int minValueJ = Math.min(bj + bkSize, n);
+                int minValueK = Math.min(bk + bkSize, n);
+                int width = minValueK - bk;
+
+                for (int i = bi; i < minValueI; i++)
+                {
+                    Arrays.fill(partial, 0, width, 0.0f);
+
+                    for (int j = bj; j < minValueJ; j++)
+                    {
+                        float sum_value = matrixA[j + i * n];
+
+                        if (vector)
+                        {
+                            VectorKernels.axpy(sum_value, matrixB, bk + j * n, partial, 0, width);
+                            continue;
+                        }
+                        for (int k = bk; k < minValueK; k++)
+                        {
+                            partial[k - bk] += sum_value * matrixB[k + j * n];
+                        }
+                    }
+
+                    for (int k = bk; k < minValueK; k++)
+                    {
+                        matrixC[k + i * n] += partial[k - bk];
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+// Freivalds' check of a product: C == A * B is tested as C r == A (B r) for random
+// vectors r, three matrix-vector products (O(n^2)) instead of a reference multiply. For a
+// wrong C each round with r in {-1, 1}^n misses the error with probability at most 1/2,
+// so rounds rounds miss it with probability at most 2^-rounds.
+//
+// The kernels round differently from one another (blocking, FMA, Strassen), so row i
+// passes when |(C r)_i - (A (B r))_i| <= tolerance * (|A| |B| |r|)_i. The worst case
+// bound of a dot product, n * 2^-52, is loose enough at n = 10240 to let errors of 1e-6
+// through, so the tolerance follows the sqrt(n) growth of rounding errors in practice.
+//
+// The rows of every matrix-vector product are split over the pool.
+final class Freivalds
+{
+    private static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE;
+
+    // Relative tolerance per sqrt(n), with a margin for Strassen and for the rounding of
+    // the check itself
+    static final double TOLERANCE_PER_SQRT_N = 64 * Math.ulp(1.0);
+
+    // Outcome of a check: the largest residual over the rows, relative to their bound
+    static final class Result
+    {
+        final boolean passed;
+        final int rounds;
+        final double maxRelativeResidual;
+
+        Result(boolean passed, int rounds, double maxRelativeResidual)
+        {
+            this.passed = passed;
+            this.rounds = rounds;
+            this.maxRelativeResidual = maxRelativeResidual;
+        }
+    }
+
+    private Freivalds()
+    {
+    }
+
+    // Checks n x n row-major C == A * B with rounds random vectors, stopping at the first
+    // round that fails
+    static Result verify(ForkJoinPool pool, double[] matrixA, double[] matrixB, double[] matrixC, int n, int rounds, long seed)
+    {
+        SplittableRandom random = new SplittableRandom(seed);
+        double tolerance = TOLERANCE_PER_SQRT_N * Math.sqrt(Math.max(n, 1));
+
+        double[] r = new double[n];
+        double[] br = new double[n];
+        double[] absBr = new double[n];
+        double[] residual = new double[n];
+
+        double worst = 0;
+
+        for (int round = 0; round < rounds; round++)
+        {
+            for (int j = 0; j < n; j++)
+                r[j] = random.nextBoolean() ? 1.0 : -1.0;
+
+            // B r and |B| |r|, |r| being all ones
+            MatrixKernels.parallelFor(pool, 0, n, k -> {
+                double sum = 0, absSum = 0;
+                for (int j = 0; j < n; j++)
+                {
+                    sum += matrixB[k * n + j] * r[j];
+                    absSum += Math.abs(matrixB[k * n + j]);
+                }
+                br[k] = sum;
+                absBr[k] = absSum;
+            });
+
+            // (C r - A (B r))_i over (|A| |B| |r|)_i
+            MatrixKernels.parallelFor(pool, 0, n, i -> {
+                double cr = 0, abr = 0, bound = 0;
+                for (int k = 0; k < n; k++)
+                {
+                    cr += matrixC[i * n + k] * r[k];
+                    abr += matrixA[i * n + k] * br[k];
+                    bound += Math.abs(matrixA[i * n + k]) * absBr[k];
+                }
+                double difference = Math.abs(cr - abr);
+                // an all-zero row of A must give an all-zero row of C
+                residual[i] = bound > 0 ? difference / bound : (difference > 0 ? Double.POSITIVE_INFINITY : 0);
+            });
+
+            worst = worst(residual, worst);
+            if (worst > tolerance)
+                return new Result(false, round + 1, worst);
+        }
+
+        return new Result(true, rounds, worst);
+    }
+
+    // The same check of off-heap matrices (OffHeapKernels, NativeBlas), read in place with
+    // long offsets, so n may go past the 46340 where n * n overflows an int. The rows are
+    // read by the pool threads, the segments must be of a shared or global arena
+    static Result verify(ForkJoinPool pool, MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n, int rounds, long seed)
+    {
+        SplittableRandom random = new SplittableRandom(seed);
+        double tolerance = TOLERANCE_PER_SQRT_N * Math.sqrt(Math.max(n, 1));
+        int rows = Math.toIntExact(n);
+
+        double[] r = new double[rows];
+        double[] br = new double[rows];
+        double[] absBr = new double[rows];
+        double[] residual = new double[rows];
+
+        double worst = 0;
+
+        for (int round = 0; round < rounds; round++)
+        {
+            for (int j = 0; j < rows; j++)
+                r[j] = random.nextBoolean() ? 1.0 : -1.0;
+
+            MatrixKernels.parallelFor(pool, 0, rows, k -> {
+                double sum = 0, absSum = 0;
+                long row = k * n;
+                for (int j = 0; j < rows; j++)
+                {
+                    double b = matrixB.getAtIndex(DOUBLE, row + j);
+                    sum += b * r[j];
+                    absSum += Math.abs(b);
+                }
+                br[k] = sum;
+                absBr[k] = absSum;
+            });
+
+            MatrixKernels.parallelFor(pool, 0, rows, i -> {
+                double cr = 0, abr = 0, bound = 0;
+                long row = i * n;
+                for (int k = 0; k < rows; k++)
+                {
+                    double a = matrixA.getAtIndex(DOUBLE, row + k);
+                    cr += matrixC.getAtIndex(DOUBLE, row + k) * r[k];
+                    abr += a * br[k];
+                    bound += Math.abs(a) * absBr[k];
+                }
+                double difference = Math.abs(cr - abr);
+                residual[i] = bound > 0 ? difference / bound : (difference > 0 ? Double.POSITIVE_INFINITY : 0);
+            });
+
+            worst = worst(residual, worst);
+            if (worst > tolerance)
+                return new Result(false, round + 1, worst);
+        }
+
+        return new Result(true, rounds, worst);
+    }
+
+    // Largest of worst and the residuals, NaN in C failing as well
+    private static double worst(double[] residual, double worst)
+    {
+        for (double value : residual)
+            worst = Math.max(worst, Double.isNaN(value) ? Double.POSITIVE_INFINITY : value);
+        return worst;
+    }
+}
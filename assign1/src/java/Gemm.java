@@ -0,0 +1,156 @@
+import java.util.concurrent.ForkJoinPool;
+
+// General matrix multiplication, C = alpha * op(A) * op(B) + beta * C, with
+// op(A) M x K, op(B) K x N and C M x N, row-major with leading dimensions (BLAS dgemm
+// semantics: with beta = 0, C is overwritten and never read).
+//
+// The kernel is the conventional i-j-k algorithm of OnMult, but with both operands
+// read along rows: op(A) as an M x K matrix and op(B) as its N x K transpose, so every
+// dot product runs with unit stride. When an operand is not stored that way it is
+// copied through the cache-blocked transpose first, which costs O(MK) or O(KN) against
+// the O(MNK) of the product.
+final class Gemm
+{
+    static final int DEFAULT_BLOCK_SIZE = 128;
+
+    // Tile of the transpose, 32 x 32 doubles = 8 KB read and 8 KB written
+    static final int TRANSPOSE_BLOCK = 32;
+
+    private Gemm()
+    {
+    }
+
+    // transA: A is stored K x M; transB: B is stored N x K. pool may be null for a serial run.
+    static void gemm(ForkJoinPool pool, boolean transA, boolean transB, int m, int n, int k,
+                     double alpha, double[] matrixA, int lda, double[] matrixB, int ldb,
+                     double beta, double[] matrixC, int ldc, int bkSize)
+    {
+        if (m < 0 || n < 0 || k < 0)
+            throw new IllegalArgumentException("negative dimension");
+        if (lda < Math.max(1, transA ? m : k) || ldb < Math.max(1, transB ? k : n) || ldc < Math.max(1, n))
+            throw new IllegalArgumentException("leading dimension too small");
+        if (bkSize < 1)
+            throw new IllegalArgumentException("bkSize must be positive");
+
+        if (m == 0 || n == 0)
+            return;
+
+        // op(A) as M x K rows
+        double[] rowsA = matrixA;
+        int ldRowsA = lda;
+        if (transA && alpha != 0 && k > 0)
+        {
+            rowsA = new double[m * k];
+            ldRowsA = k;
+            transpose(pool, matrixA, lda, k, m, rowsA, ldRowsA);
+        }
+
+        // op(B) as N x K rows
+        double[] rowsB = matrixB;
+        int ldRowsB = ldb;
+        if (!transB && alpha != 0 && k > 0)
+        {
+            rowsB = new double[n * k];
+            ldRowsB = k;
+            transpose(pool, matrixB, ldb, k, n, rowsB, ldRowsB);
+        }
+
+        final double[] a = rowsA, b = rowsB;
+        final int ldA = ldRowsA, ldB = ldRowsB;
+
+        if (pool == null)
+        {
+            for (int bi = 0; bi < m; bi = bi + bkSize)
+                multBlockRows(alpha, a, ldA, b, ldB, beta, matrixC, ldc, n, k, bkSize, bi, Math.min(bi + bkSize, m));
+            return;
+        }
+
+        // every task owns a band of rows of C
+        MatrixKernels.parallelFor(pool, 0, (m + bkSize - 1) / bkSize, block -> {
+            int bi = block * bkSize;
+            multBlockRows(alpha, a, ldA, b, ldB, beta, matrixC, ldc, n, k, bkSize, bi, Math.min(bi + bkSize, m));
+        });
+    }
+
+    // dst (cols x rows) = src (rows x cols)^T, in TRANSPOSE_BLOCK x TRANSPOSE_BLOCK tiles so
+    // both the reads and the writes stay within a few cache lines per row. pool may be null.
+    static void transpose(ForkJoinPool pool, double[] src, int lds, int rows, int cols, double[] dst, int ldd)
+    {
+        int rowBlocks = (rows + TRANSPOSE_BLOCK - 1) / TRANSPOSE_BLOCK;
+
+        if (pool == null)
+        {
+            for (int block = 0; block < rowBlocks; block++)
+                transposeRows(src, lds, rows, cols, dst, ldd, block * TRANSPOSE_BLOCK);
+            return;
+        }
+
+        // every task owns a band of columns of dst
+        MatrixKernels.parallelFor(pool, 0, rowBlocks, block -> transposeRows(src, lds, rows, cols, dst, ldd, block * TRANSPOSE_BLOCK));
+    }
+
+    private static void transposeRows(double[] src, int lds, int rows, int cols, double[] dst, int ldd, int bi)
+    {
+        int minValueI = Math.min(bi + TRANSPOSE_BLOCK, rows);
+
+        for (int bj = 0; bj < cols; bj = bj + TRANSPOSE_BLOCK)
+        {
+            int minValueJ = Math.min(bj + TRANSPOSE_BLOCK, cols);
+
+            for (int i = bi; i < minValueI; i++)
+            {
+                for (int j = bj; j < minValueJ; j++)
+                {
+                    dst[j * ldd + i] = src[i * lds + j];
+                }
+            }
+        }
+    }
+
+    // Rows [bi, minValueI) of C: beta scaling, then blocked unit-stride dot products
+    private static void multBlockRows(double alpha, double[] rowsA, int ldA, double[] rowsB, int ldB,
+                                      double beta, double[] matrixC, int ldc, int n, int k, int bkSize, int bi, int minValueI)
+    {
+        for (int i = bi; i < minValueI; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                matrixC[i * ldc + j] = beta == 0 ? 0.0 : beta * matrixC[i * ldc + j];
+            }
+        }
+
+        if (alpha == 0)
+            return;
+
+        for (int bj = 0; bj < n; bj = bj + bkSize)
+        {
+            for (int bk = 0; bk < k; bk = bk + bkSize)
+            {
+                int minValueJ = Math.min(bj + bkSize, n);
+                int minValueK = Math.min(bk + bkSize, k);
+
+                for (int i = bi; i < minValueI; i++)
+                {
+                    for (int j = bj; j < minValueJ; j++)
+                    {
+                        double temp;
+
+                        if (MatrixKernels.SIMD_AVAILABLE)
+                        {
+                            temp = VectorKernels.dot(rowsA, i * ldA + bk, rowsB, j * ldB + bk, minValueK - bk);
+                        }
+                        else
+                        {
+                            temp = 0;
+                            for (int p = bk; p < minValueK; p++)
+                            {
+                                temp += rowsA[i * ldA + p] * rowsB[j * ldB + p];
+                            }
+                        }
+                        matrixC[i * ldc + j] += alpha * temp;
+                    }
+                }
+            }
+        }
+    }
+}
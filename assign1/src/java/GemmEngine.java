@@ -0,0 +1,205 @@
+import java.util.concurrent.ForkJoinPool;
+
+// Reusable entry point to the kernels for code outside the benchmark driver. The engine
+// only keeps its configuration: every call works on buffers the caller owns, through
+// views, and allocates no matrix storage, so it can sit in a hot loop.
+//
+//     GemmEngine engine = new GemmEngine(pool, 128);
+//     engine.multiply(1.0, GemmEngine.View.of(a, m, k), GemmEngine.View.of(b, k, n), 0.0, GemmEngine.View.of(c, m, n));
+//
+// multiply is the blocked inline kernel (OnMultBlockLine, SIMD when available) on
+// views with leading dimensions and offsets, parallel over row bands of C when the
+// engine has a pool. multiplyBatch is for many small independent products (8 to 64),
+// where splitting a single product across cores costs more than it gains: each task
+// multiplies whole matrices instead.
+final class GemmEngine
+{
+    // Smallest number of products per batch task, so a task is worth its scheduling cost
+    static final int MIN_BATCH_GRAIN = 16;
+
+    private final ForkJoinPool pool;
+    private final int bkSize;
+
+    // pool may be null for serial runs
+    GemmEngine(ForkJoinPool pool, int bkSize)
+    {
+        if (bkSize < 1)
+            throw new IllegalArgumentException("bkSize must be positive");
+        this.pool = pool;
+        this.bkSize = bkSize;
+    }
+
+    // rows x cols row-major matrix starting at data[offset], ld doubles between rows
+    static final class View
+    {
+        final double[] data;
+        final int offset;
+        final int rows;
+        final int cols;
+        final int ld;
+
+        View(double[] data, int offset, int rows, int cols, int ld)
+        {
+            if (rows < 0 || cols < 0 || ld < cols || offset < 0
+                    || (rows > 0 && (long) offset + (long) (rows - 1) * ld + cols > data.length))
+                throw new IllegalArgumentException("view does not fit in the array");
+            this.data = data;
+            this.offset = offset;
+            this.rows = rows;
+            this.cols = cols;
+            this.ld = ld;
+        }
+
+        static View of(double[] data, int rows, int cols)
+        {
+            return new View(data, 0, rows, cols, cols);
+        }
+
+        // rows x cols sub-matrix at (row, col), sharing the array
+        View sub(int row, int col, int rows, int cols)
+        {
+            if (row < 0 || col < 0 || row + rows > this.rows || col + cols > this.cols)
+                throw new IllegalArgumentException("sub-view out of bounds");
+            return new View(data, offset + row * ld + col, rows, cols, ld);
+        }
+    }
+
+    // C += A * B
+    void multiply(View a, View b, View c)
+    {
+        multiply(1.0, a, b, 1.0, c);
+    }
+
+    // C = alpha * A * B + beta * C (beta = 0 overwrites C without reading it)
+    void multiply(double alpha, View a, View b, double beta, View c)
+    {
+        if (a.cols != b.rows || a.rows != c.rows || b.cols != c.cols)
+            throw new IllegalArgumentException("shapes do not match: " + a.rows + "x" + a.cols + " * "
+                    + b.rows + "x" + b.cols + " -> " + c.rows + "x" + c.cols);
+
+        int m = c.rows;
+
+        if (pool == null)
+        {
+            for (int bi = 0; bi < m; bi = bi + bkSize)
+                multBlockLineRows(alpha, a, b, beta, c, bi, Math.min(bi + bkSize, m));
+            return;
+        }
+
+        MatrixKernels.parallelFor(pool, 0, (m + bkSize - 1) / bkSize, block -> {
+            int bi = block * bkSize;
+            multBlockLineRows(alpha, a, b, beta, c, bi, Math.min(bi + bkSize, m));
+        });
+    }
+
+    // C[i] += A[i] * B[i] for i < count, with A[i] (m x k) at a[i * strideA], B[i] (k x n) at
+    // b[i * strideB] and C[i] (m x n) at c[i * strideC], each one dense row-major
+    void multiplyBatch(int count, int m, int n, int k, double[] a, int strideA, double[] b, int strideB, double[] c, int strideC)
+    {
+        if (count < 0 || m < 0 || n < 0 || k < 0)
+            throw new IllegalArgumentException("negative batch dimension");
+        if (count == 0)
+            return;
+        if (strideA < m * k || strideB < k * n || strideC < m * n
+                || (long) (count - 1) * strideA + m * k > a.length
+                || (long) (count - 1) * strideB + k * n > b.length
+                || (long) (count - 1) * strideC + m * n > c.length)
+            throw new IllegalArgumentException("batch does not fit in the arrays");
+
+        if (pool == null)
+        {
+            smallRange(0, count, m, n, k, a, strideA, b, strideB, c, strideC);
+            return;
+        }
+
+        // about four tasks per thread for load balance, but never fewer products than the grain
+        int grain = Math.max(MIN_BATCH_GRAIN, count / (4 * pool.getParallelism()));
+        MatrixKernels.parallelFor(pool, 0, (count + grain - 1) / grain, task -> {
+            int from = task * grain;
+            smallRange(from, Math.min(from + grain, count), m, n, k, a, strideA, b, strideB, c, strideC);
+        });
+    }
+
+    // Rows [bi, minValueI) of C: beta scaling, then the blocked inline multiplication
+    private void multBlockLineRows(double alpha, View a, View b, double beta, View c, int bi, int minValueI)
+    {
+        int cols = c.cols;
+        int inner = a.cols;
+
+        if (beta != 1)
+        {
+            for (int i = bi; i < minValueI; i++)
+            {
+                int rowC = c.offset + i * c.ld;
+                for (int j = 0; j < cols; j++)
+                {
+                    c.data[rowC + j] = beta == 0 ? 0.0 : beta * c.data[rowC + j];
+                }
+            }
+        }
+
+        if (alpha == 0)
+            return;
+
+        for (int bk = 0; bk < inner; bk = bk + bkSize)
+        {
+            for (int bj = 0; bj < cols; bj = bj + bkSize)
+            {
+                int minValueK = Math.min(bk + bkSize, inner);
+                int minValueJ = Math.min(bj + bkSize, cols);
+
+                for (int i = bi; i < minValueI; i++)
+                {
+                    int rowC = c.offset + i * c.ld;
+
+                    for (int k = bk; k < minValueK; k++)
+                    {
+                        double sum_value = alpha * a.data[a.offset + i * a.ld + k];
+                        int rowB = b.offset + k * b.ld;
+
+                        if (MatrixKernels.SIMD_AVAILABLE)
+                        {
+                            VectorKernels.axpy(sum_value, b.data, rowB + bj, c.data, rowC + bj, minValueJ - bj);
+                            continue;
+                        }
+                        for (int j = bj; j < minValueJ; j++)
+                        {
+                            c.data[rowC + j] += sum_value * b.data[rowB + j];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Products [from, to) of a batch, line multiplication without blocking: a 64 x 64
+    // product (96 KB for A, B and C) already fits in L2
+    private static void smallRange(int from, int to, int m, int n, int k,
+                                   double[] a, int strideA, double[] b, int strideB, double[] c, int strideC)
+    {
+        for (int batch = from; batch < to; batch++)
+        {
+            int offsetA = batch * strideA;
+            int offsetB = batch * strideB;
+            int offsetC = batch * strideC;
+
+            for (int i = 0; i < m; i++)
+            {
+                for (int j = 0; j < k; j++)
+                {
+                    double temp = a[offsetA + i * k + j];
+
+                    if (MatrixKernels.SIMD_AVAILABLE)
+                    {
+                        VectorKernels.axpy(temp, b, offsetB + j * n, c, offsetC + i * n, n);
+                        continue;
+                    }
+                    for (int p = 0; p < n; p++)
+                    {
+                        c[offsetC + i * n + p] += temp * b[offsetB + j * n + p];
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+// Inline block kernels specialised for one block size and unroll factor at run time.
+//
+// With bkSize a parameter the k loop of OnMultBlockLine has an unknown trip count and
+// every j reloads and stores the same row of C. The factory writes the source of a kernel
+// with BK and UNROLL as constants, compiles it in memory with the JDK's compiler and
+// defines it as a hidden class. On full blocks the k loop then has a constant trip count
+// and the j loop is unrolled UNROLL times:
+//
+//     C[i][k] += A[i][j] * B[j][k] + A[i][j + 1] * B[j + 1][k] + ...
+//
+// so C2 keeps the UNROLL values of A in registers and each element of C is loaded and
+// stored once per UNROLL rows of B instead of once per row. Edge blocks use the generic
+// loops. Kernels are cached per (bkSize, unroll) for the life of the JVM.
+//
+// Without a compiler (a JRE, no jdk.compiler module) specialized returns the generic
+// inline block kernel, so callers never need to check.
+final class KernelFactory
+{
+    static final int[] UNROLL_FACTORS = {1, 2, 4, 8};
+
+    // C += A * B for the rows [bi, minValueI) of C, with the block size it was made for
+    interface BlockKernel
+    {
+        void multiplyRows(double[] matrixA, double[] matrixB, double[] matrixC, int n, int bi, int minValueI);
+    }
+
+    private static final Map<Long, BlockKernel> CACHE = new ConcurrentHashMap<>();
+
+    // null when this runtime has no compiler
+    private static final JavaCompiler COMPILER = ToolProvider.getSystemJavaCompiler();
+
+    private KernelFactory()
+    {
+    }
+
+    static boolean available()
+    {
+        return COMPILER != null;
+    }
+
+    // The kernel for this block size and unroll factor, compiled on first use
+    static BlockKernel specialized(int bkSize, int unroll)
+    {
+        if (bkSize < 1 || unroll < 1 || unroll > 8 || bkSize % unroll != 0)
+            throw new IllegalArgumentException("Unroll factor " + unroll + " must be 1..8 and divide the block size " + bkSize);
+
+        if (COMPILER == null)
+            return (matrixA, matrixB, matrixC, n, bi, minValueI) ->
+                    MatrixKernels.multBlockLineRows(matrixA, matrixB, matrixC, n, bkSize, bi, minValueI);
+
+        return CACHE.computeIfAbsent((long) bkSize << 32 | unroll, key -> compile(bkSize, unroll));
+    }
+
+    // Largest unroll factor of UNROLL_FACTORS that divides bkSize
+    static int defaultUnroll(int bkSize)
+    {
+        int unroll = 1;
+        for (int factor : UNROLL_FACTORS)
+        {
+            if (bkSize % factor == 0)
+                unroll = factor;
+        }
+        return unroll;
+    }
+
+    // C += A * B with a kernel made for bkSize. pool may be null for one thread.
+    static void multiply(ForkJoinPool pool, BlockKernel kernel, double[] matrixA, double[] matrixB, double[] matrixC, int n, int bkSize)
+    {
+        if (pool == null)
+        {
+            kernel.multiplyRows(matrixA, matrixB, matrixC, n, 0, n);
+            return;
+        }
+
+        // every task owns a band of rows of C, as in multBlockLineParallel
+        MatrixKernels.parallelFor(pool, 0, (n + bkSize - 1) / bkSize, block -> {
+            int bi = block * bkSize;
+            kernel.multiplyRows(matrixA, matrixB, matrixC, n, bi, Math.min(bi + bkSize, n));
+        });
+    }
+
+    private static BlockKernel compile(int bkSize, int unroll)
+    {
+        String className = "SpecializedBlockKernel_" + bkSize + "_" + unroll;
+        ClassFile classFile = new ClassFile(className);
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager standard = COMPILER.getStandardFileManager(diagnostics, null, null);
+        ForwardingJavaFileManager<StandardJavaFileManager> fileManager = new ForwardingJavaFileManager<>(standard)
+        {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String name, JavaFileObject.Kind kind, FileObject sibling)
+            {
+                return classFile;
+            }
+        };
+
+        // BlockKernel is found on the class path of this JVM
+        List<String> options = List.of("-classpath", System.getProperty("java.class.path"), "-proc:none", "-g:none");
+        boolean compiled = COMPILER.getTask(null, fileManager, diagnostics, options, null,
+                List.of(new SourceFile(className, source(className, bkSize, unroll)))).call();
+
+        if (!compiled)
+            throw new IllegalStateException("Could not compile " + className + ": " + diagnostics.getDiagnostics());
+
+        try
+        {
+            // a hidden class of this package: it can see BlockKernel and MatrixKernels and is
+            // unloaded with its last instance
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile.bytes(), true);
+            return (BlockKernel) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        }
+        catch (Throwable e)
+        {
+            throw new IllegalStateException("Could not define " + className, e);
+        }
+    }
+
+    // Source of the kernel. Full blocks use the constant bounds, edge blocks the generic loops.
+    static String source(String className, int bkSize, int unroll)
+    {
+        StringBuilder src = new StringBuilder();
+
+        src.append("final class ").append(className).append(" implements KernelFactory.BlockKernel\n{\n");
+        src.append("    private static final int BK = ").append(bkSize).append(";\n\n");
+        src.append("    public void multiplyRows(double[] matrixA, double[] matrixB, double[] matrixC, int n, int bi, int minValueI)\n    {\n");
+        src.append("        for (int bj = 0; bj < n; bj = bj + BK)\n        {\n");
+        src.append("            for (int bk = 0; bk < n; bk = bk + BK)\n            {\n");
+        src.append("                if (bj + BK > n || bk + BK > n)\n                {\n");
+        src.append("                    edge(matrixA, matrixB, matrixC, n, bi, minValueI, bj, bk);\n");
+        src.append("                    continue;\n                }\n\n");
+        src.append("                for (int i = bi; i < minValueI; i++)\n                {\n");
+        src.append("                    int rowC = i * n + bk;\n\n");
+        src.append("                    for (int j = bj; j < bj + BK; j = j + ").append(unroll).append(")\n                    {\n");
+        for (int u = 0; u < unroll; u++)
+        {
+            src.append("                        double a").append(u).append(" = matrixA[i * n + j + ").append(u).append("];\n");
+            src.append("                        int rowB").append(u).append(" = (j + ").append(u).append(") * n + bk;\n");
+        }
+        src.append("\n                        for (int k = 0; k < BK; k++)\n                        {\n");
+        src.append("                            matrixC[rowC + k] +=");
+        for (int u = 0; u < unroll; u++)
+        {
+            src.append(u == 0 ? " " : " + ");
+            src.append("a").append(u).append(" * matrixB[rowB").append(u).append(" + k]");
+        }
+        src.append(";\n                        }\n");
+        src.append("                    }\n                }\n            }\n        }\n    }\n\n");
+
+        src.append("    private static void edge(double[] matrixA, double[] matrixB, double[] matrixC, int n, int bi, int minValueI, int bj, int bk)\n    {\n");
+        src.append("        int minValueJ = Math.min(bj + BK, n);\n");
+        src.append("        int minValueK = Math.min(bk + BK, n);\n\n");
+        src.append("        for (int i = bi; i < minValueI; i++)\n        {\n");
+        src.append("            for (int j = bj; j < minValueJ; j++)\n            {\n");
+        src.append("                double sum_value = matrixA[j + i * n];\n\n");
+        src.append("                for (int k = bk; k < minValueK; k++)\n                {\n");
+        src.append("                    matrixC[k + i * n] += sum_value * matrixB[k + j * n];\n");
+        src.append("                }\n            }\n        }\n    }\n}\n");
+
+        return src.toString();
+    }
+
+    private static final class SourceFile extends SimpleJavaFileObject
+    {
+        private final String source;
+
+        SourceFile(String className, String source)
+        {
+            super(URI.create("string:///" + className + Kind.SOURCE.extension), Kind.SOURCE);
+            this.source = source;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors)
+        {
+            return source;
+        }
+    }
+
+    // Receives the class file javac writes
+    private static final class ClassFile extends SimpleJavaFileObject
+    {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        ClassFile(String className)
+        {
+            super(URI.create("bytes:///" + className + Kind.CLASS.extension), Kind.CLASS);
+        }
+
+        @Override
+        public OutputStream openOutputStream()
+        {
+            return bytes;
+        }
+
+        byte[] bytes()
+        {
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// One JFR event per recorded kernel run, committed by MatrixProduct.record. Start the
+// test cases with -XX:StartFlightRecording to get them next to the GC and JIT events.
+@Name("matrixproduct.KernelRun")
+@Label("Kernel Run")
+@Category("Matrix Product")
+@Description("One timed run of a matrix multiplication kernel")
+@StackTrace(false)
+class KernelRunEvent extends jdk.jfr.Event
+{
+    @Label("Function Type")
+    String functionType;
+
+    @Label("Matrix Size")
+    int matrixSize;
+
+    @Label("Block Size")
+    @Description("-1 for the kernels without blocks")
+    int blockSize;
+
+    @Label("Threads")
+    @Description("-1 for a serial run")
+    int numThreads;
+
+    @Label("Real Time")
+    @Description("Seconds, as written to data_java.csv")
+    double realTime;
+
+    @Label("MFLOPS")
+    @Description("2 n^3 floating point operations over the real time")
+    double mflops;
+
+    @Label("Cycles")
+    long cycles;
+
+    @Label("Instructions")
+    long instructions;
+
+    @Label("L1 Data Cache Misses")
+    long l1Misses;
+
+    @Label("L2 Data Cache Misses")
+    long l2Misses;
+
+    @Label("LLC Misses")
+    long llcMisses;
+
+    @Label("Initialization Time")
+    @Description("Seconds to fill A, B and C before the timed region, split over the threads of parallel runs; 0 when not measured")
+    double initTime;
+}
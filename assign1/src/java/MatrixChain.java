@@ -0,0 +1,228 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Product of a chain A1 * A2 * ... * Ak of matrices of different shapes, Ai being
+// dims[i - 1] x dims[i]. The order of the products changes the work by orders of
+// magnitude (10x100, 100x5, 5x50: 7500 multiply-adds left to right, 75000 right to left),
+// so plan finds the cheapest parenthesisation with the O(k^3) dynamic programme
+//
+//     cost[i][j] = min over i <= s < j of cost[i][s] + cost[s + 1][j] + dims[i] dims[s + 1] dims[j + 1]
+//
+// and multiply runs it on GemmEngine. The two sides of every split are independent, so
+// both are forked when both are products; each product is also split over row bands by
+// the engine. Intermediates come from a pool of buffers kept by the MatrixChain, reused by
+// any later product that fits in them, and go back to it once their parent has read them.
+final class MatrixChain
+{
+    private final ForkJoinPool pool;
+    private final GemmEngine engine;
+    private final Buffers buffers = new Buffers();
+
+    // Parenthesisation of a chain: split[i][j] is the s of the best (Ai..As)(As+1..Aj)
+    static final class Plan
+    {
+        final int[] dims;
+        final long[][] cost;
+        final int[][] split;
+
+        Plan(int[] dims, long[][] cost, int[][] split)
+        {
+            this.dims = dims;
+            this.cost = cost;
+            this.split = split;
+        }
+
+        int length()
+        {
+            return dims.length - 1;
+        }
+
+        // 2 multiply-adds per element of every product
+        double flops()
+        {
+            return 2.0 * cost[0][length() - 1];
+        }
+
+        @Override
+        public String toString()
+        {
+            return format(0, length() - 1);
+        }
+
+        private String format(int i, int j)
+        {
+            if (i == j)
+                return "A" + (i + 1);
+            return "(" + format(i, split[i][j]) + " " + format(split[i][j] + 1, j) + ")";
+        }
+    }
+
+    // pool may be null for serial runs
+    MatrixChain(ForkJoinPool pool, int bkSize)
+    {
+        this.pool = pool;
+        this.engine = new GemmEngine(pool, bkSize);
+    }
+
+    // Cheapest order of the chain with shapes dims (dims.length - 1 matrices)
+    static Plan plan(int[] dims)
+    {
+        int k = dims.length - 1;
+        if (k < 1)
+            throw new IllegalArgumentException("a chain needs at least one matrix");
+        for (int dim : dims)
+        {
+            if (dim < 1)
+                throw new IllegalArgumentException("dimensions must be positive");
+        }
+
+        long[][] cost = new long[k][k];
+        int[][] split = new int[k][k];
+
+        for (int span = 1; span < k; span++)
+        {
+            for (int i = 0; i + span < k; i++)
+            {
+                int j = i + span;
+                cost[i][j] = Long.MAX_VALUE;
+
+                for (int s = i; s < j; s++)
+                {
+                    long candidate = cost[i][s] + cost[s + 1][j] + (long) dims[i] * dims[s + 1] * dims[j + 1];
+                    if (candidate < cost[i][j])
+                    {
+                        cost[i][j] = candidate;
+                        split[i][j] = s;
+                    }
+                }
+            }
+        }
+        return new Plan(dims.clone(), cost, split);
+    }
+
+    // ((A1 A2) A3) ..., the order of a plain loop, for comparison
+    static Plan leftToRight(int[] dims)
+    {
+        int k = dims.length - 1;
+        long[][] cost = new long[k][k];
+        int[][] split = new int[k][k];
+
+        for (int j = 1; j < k; j++)
+        {
+            cost[0][j] = cost[0][j - 1] + (long) dims[0] * dims[j] * dims[j + 1];
+            split[0][j] = j - 1;
+        }
+        return new Plan(dims.clone(), cost, split);
+    }
+
+    // A1 * ... * Ak in the order of plan, matrices[i] being dims[i] x dims[i + 1] row-major.
+    // Returns a new dims[0] x dims[k] array owned by the caller.
+    double[] multiply(Plan plan, double[][] matrices)
+    {
+        if (matrices.length != plan.length())
+            throw new IllegalArgumentException("plan is for " + plan.length() + " matrices, got " + matrices.length);
+        for (int i = 0; i < matrices.length; i++)
+        {
+            if (matrices[i].length != plan.dims[i] * plan.dims[i + 1])
+                throw new IllegalArgumentException("matrix " + (i + 1) + " is not " + plan.dims[i] + "x" + plan.dims[i + 1]);
+        }
+
+        int k = plan.length();
+        if (k == 1)
+            return matrices[0].clone();
+
+        // the result is the caller's, only the intermediates come from the pool
+        double[] result = new double[plan.dims[0] * plan.dims[k]];
+        int s = plan.split[0][k - 1];
+        Runnable root = () -> product(plan, matrices, 0, s, s + 1, k - 1, result);
+
+        if (pool == null)
+            root.run();
+        else
+            pool.submit(root).join();
+        return result;
+    }
+
+    // The shape of Ai..Aj into a buffer of the pool, or the input itself when i == j
+    private double[] evaluate(Plan plan, double[][] matrices, int i, int j)
+    {
+        if (i == j)
+            return matrices[i];
+
+        double[] c = buffers.acquire(plan.dims[i] * plan.dims[j + 1]);
+        int s = plan.split[i][j];
+        product(plan, matrices, i, s, s + 1, j, c);
+        return c;
+    }
+
+    // c = (Ai..As) * (As+1..Aj), the two sides forked when both are products
+    private void product(Plan plan, double[][] matrices, int i, int s, int t, int j, double[] c)
+    {
+        double[][] sides = new double[2][];
+
+        if (pool != null && s > i && j > t)
+        {
+            ForkJoinTask.invokeAll(
+                    ForkJoinTask.adapt(() -> sides[0] = evaluate(plan, matrices, i, s)),
+                    ForkJoinTask.adapt(() -> sides[1] = evaluate(plan, matrices, t, j)));
+        }
+        else
+        {
+            sides[0] = evaluate(plan, matrices, i, s);
+            sides[1] = evaluate(plan, matrices, t, j);
+        }
+
+        int m = plan.dims[i], inner = plan.dims[t], n = plan.dims[j + 1];
+        engine.multiply(1.0, new GemmEngine.View(sides[0], 0, m, inner, inner), new GemmEngine.View(sides[1], 0, inner, n, n),
+                0.0, new GemmEngine.View(c, 0, m, n, n));
+
+        if (s > i)
+            buffers.release(sides[0]);
+        if (j > t)
+            buffers.release(sides[1]);
+    }
+
+    // Doubles held by the buffer pool, for reporting
+    long pooledDoubles()
+    {
+        return buffers.pooledDoubles();
+    }
+
+    // Free buffers by capacity; a request takes the smallest one that fits, so a buffer
+    // of one shape is reused by any smaller product later in the chain or in later chains
+    private static final class Buffers
+    {
+        private final TreeMap<Integer, List<double[]>> free = new TreeMap<>();
+        private long pooledDoubles;
+
+        synchronized double[] acquire(int length)
+        {
+            Map.Entry<Integer, List<double[]>> entry = free.ceilingEntry(length);
+            if (entry == null)
+            {
+                pooledDoubles += length;
+                return new double[length];
+            }
+
+            List<double[]> buffers = entry.getValue();
+            double[] buffer = buffers.remove(buffers.size() - 1);
+            if (buffers.isEmpty())
+                free.remove(entry.getKey());
+            return buffer;
+        }
+
+        synchronized void release(double[] buffer)
+        {
+            free.computeIfAbsent(buffer.length, l -> new ArrayList<>()).add(buffer);
+        }
+
+        synchronized long pooledDoubles()
+        {
+            return pooledDoubles;
+        }
+    }
+}
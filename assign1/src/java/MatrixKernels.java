@@ -0,0 +1,364 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
+
+// Compute loops of the matrix products, kept apart from allocation and timing
+// so that both MatrixProduct and the JMH benchmarks run exactly the same code.
+// All matrices are n x n, row-major, and matrixC is accumulated into.
+final class MatrixKernels
+{
+    // True when the Vector API module was resolved at startup
+    // (java --add-modules jdk.incubator.vector) and gives more than one lane
+    static final boolean SIMD_AVAILABLE = simdAvailable();
+
+    private MatrixKernels()
+    {
+    }
+
+    private static boolean simdAvailable()
+    {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty())
+            return false;
+
+        try
+        {
+            return VectorKernels.lanes() > 1;
+        }
+        catch (LinkageError e)
+        {
+            return false;
+        }
+    }
+
+    // Same initial values as every language version: A = 1, B[i][*] = i + 1, C = 0
+    static void initMatrices(double[] matrixA, double[] matrixB, double[] matrixC, int n)
+    {
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                matrixA[i * n + j] = 1.0;
+                matrixB[i * n + j] = (double) i + 1.0;
+                matrixC[i * n + j] = 0.0;
+            }
+        }
+    }
+
+
+    // 1.1 - Conventional multiplication
+    static void mult(double[] matrixA, double[] matrixB, double[] matrixC, int n)
+    {
+        double temp;
+
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                temp = 0;
+                for (int k = 0; k < n; k++)
+                {
+                    temp += matrixA[i * n + k] * matrixB[k * n + j];
+                }
+                matrixC[i * n + j] = temp;
+            }
+        }
+    }
+
+
+    // 1.2 - Line multiplication
+    static void multLine(double[] matrixA, double[] matrixB, double[] matrixC, int n)
+    {
+        double temp;
+
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                temp = matrixA[i * n + j];
+                for (int k = 0; k < n; k++)
+                {
+                    matrixC[i * n + k] += temp * matrixB[j * n + k];
+                }
+            }
+        }
+    }
+
+
+    // 1.3 - Block multiplication
+    static void multBlock(double[] matrixA, double[] matrixB, double[] matrixC, int n, int bkSize)
+    {
+        for (int bi = 0; bi < n; bi = bi + bkSize)
+        {
+            multBlockRows(matrixA, matrixB, matrixC, n, bkSize, bi, Math.min(bi + bkSize, n));
+        }
+    }
+
+
+    // 1.4 - Block multiplication with inline multiplication
+    static void multBlockLine(double[] matrixA, double[] matrixB, double[] matrixC, int n, int bkSize)
+    {
+        for (int bi = 0; bi < n; bi = bi + bkSize)
+        {
+            multBlockLineRows(matrixA, matrixB, matrixC, n, bkSize, bi, Math.min(bi + bkSize, n));
+        }
+    }
+
+
+    // 2.1 - Parallel conventional multiplication, splitting either the row loop or the dot product loop
+    static void multParallel(ForkJoinPool pool, ParallelLoop loop, double[] matrixA, double[] matrixB, double[] matrixC, int n)
+    {
+        if (loop == ParallelLoop.OUTER)
+        {
+            parallelFor(pool, 0, n, i -> {
+                for (int j = 0; j < n; j++)
+                {
+                    double temp = 0;
+                    for (int k = 0; k < n; k++)
+                    {
+                        temp += matrixA[i * n + k] * matrixB[k * n + j];
+                    }
+                    matrixC[i * n + j] = temp;
+                }
+            });
+            return;
+        }
+
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                final int row = i, col = j;
+                matrixC[i * n + j] = parallelSum(pool, 0, n, k -> matrixA[row * n + k] * matrixB[k * n + col]);
+            }
+        }
+    }
+
+
+    // 2.2 - Parallel line multiplication, splitting either the row loop or the line update loop
+    static void multLineParallel(ForkJoinPool pool, ParallelLoop loop, double[] matrixA, double[] matrixB, double[] matrixC, int n)
+    {
+        if (loop == ParallelLoop.OUTER)
+        {
+            parallelFor(pool, 0, n, i -> {
+                for (int j = 0; j < n; j++)
+                {
+                    double temp = matrixA[i * n + j];
+                    for (int k = 0; k < n; k++)
+                    {
+                        matrixC[i * n + k] += temp * matrixB[j * n + k];
+                    }
+                }
+            });
+            return;
+        }
+
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                final int row = i, line = j;
+                final double temp = matrixA[i * n + j];
+                parallelFor(pool, 0, n, k -> matrixC[row * n + k] += temp * matrixB[line * n + k]);
+            }
+        }
+    }
+
+
+    // 2.3 - Parallel block multiplication, splitting either the row blocks or the rows inside each block
+    static void multBlockParallel(ForkJoinPool pool, ParallelLoop loop, double[] matrixA, double[] matrixB, double[] matrixC, int n, int bkSize)
+    {
+        if (loop == ParallelLoop.OUTER)
+        {
+            // every task owns a band of rows of C, so no two tasks write the same element
+            parallelFor(pool, 0, (n + bkSize - 1) / bkSize, block -> {
+                int bi = block * bkSize;
+                multBlockRows(matrixA, matrixB, matrixC, n, bkSize, bi, Math.min(bi + bkSize, n));
+            });
+            return;
+        }
+
+        for (int bi = 0; bi < n; bi = bi + bkSize)
+        {
+            for (int bj = 0; bj < n; bj = bj + bkSize)
+            {
+                for (int bk = 0; bk < n; bk = bk + bkSize)
+                {
+                    final int fromJ = bj, fromK = bk;
+                    final int minValueJ = Math.min(bj + bkSize, n);
+                    final int minValueK = Math.min(bk + bkSize, n);
+
+                    parallelFor(pool, bi, Math.min(bi + bkSize, n), i -> {
+                        for (int j = fromJ; j < minValueJ; j++)
+                        {
+                            double temp = 0;
+                            for (int k = fromK; k < minValueK; k++)
+                            {
+                                temp += matrixA[i * n + k] * matrixB[k * n + j];
+                            }
+                            matrixC[i * n + j] += temp;
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+
+    // 2.4 - Parallel block multiplication with inline multiplication
+    static void multBlockLineParallel(ForkJoinPool pool, ParallelLoop loop, double[] matrixA, double[] matrixB, double[] matrixC, int n, int bkSize)
+    {
+        if (loop == ParallelLoop.OUTER)
+        {
+            parallelFor(pool, 0, (n + bkSize - 1) / bkSize, block -> {
+                int bi = block * bkSize;
+                multBlockLineRows(matrixA, matrixB, matrixC, n, bkSize, bi, Math.min(bi + bkSize, n));
+            });
+            return;
+        }
+
+        for (int bi = 0; bi < n; bi = bi + bkSize)
+        {
+            for (int bj = 0; bj < n; bj = bj + bkSize)
+            {
+                for (int bk = 0; bk < n; bk = bk + bkSize)
+                {
+                    final int fromJ = bj, fromK = bk;
+                    final int minValueJ = Math.min(bj + bkSize, n);
+                    final int minValueK = Math.min(bk + bkSize, n);
+
+                    parallelFor(pool, bi, Math.min(bi + bkSize, n), i -> {
+                        for (int j = fromJ; j < minValueJ; j++)
+                        {
+                            double sum_value = matrixA[j + i * n];
+                            for (int k = fromK; k < minValueK; k++)
+                            {
+                                matrixC[k + i * n] += sum_value * matrixB[k + j * n];
+                            }
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+
+    // 3.1 - Line multiplication with an explicit SIMD inner loop
+    static void multLineSimd(double[] matrixA, double[] matrixB, double[] matrixC, int n)
+    {
+        if (!SIMD_AVAILABLE)
+        {
+            multLine(matrixA, matrixB, matrixC, n);
+            return;
+        }
+        VectorKernels.multLineRows(matrixA, matrixB, matrixC, n, 0, n);
+    }
+
+
+    // 3.2 - Block multiplication with an explicit SIMD inline multiplication
+    static void multBlockLineSimd(double[] matrixA, double[] matrixB, double[] matrixC, int n, int bkSize)
+    {
+        if (!SIMD_AVAILABLE)
+        {
+            multBlockLine(matrixA, matrixB, matrixC, n, bkSize);
+            return;
+        }
+        VectorKernels.multBlockLineRows(matrixA, matrixB, matrixC, n, bkSize, 0, n);
+    }
+
+
+    // 3.3 - Outer loop parallel version of multLineSimd
+    static void multLineSimdParallel(ForkJoinPool pool, double[] matrixA, double[] matrixB, double[] matrixC, int n)
+    {
+        if (!SIMD_AVAILABLE)
+        {
+            multLineParallel(pool, ParallelLoop.OUTER, matrixA, matrixB, matrixC, n);
+            return;
+        }
+        parallelFor(pool, 0, n, i -> VectorKernels.multLineRows(matrixA, matrixB, matrixC, n, i, i + 1));
+    }
+
+
+    // 3.4 - Outer loop parallel version of multBlockLineSimd
+    static void multBlockLineSimdParallel(ForkJoinPool pool, double[] matrixA, double[] matrixB, double[] matrixC, int n, int bkSize)
+    {
+        if (!SIMD_AVAILABLE)
+        {
+            multBlockLineParallel(pool, ParallelLoop.OUTER, matrixA, matrixB, matrixC, n, bkSize);
+            return;
+        }
+        parallelFor(pool, 0, (n + bkSize - 1) / bkSize, block -> {
+            int bi = block * bkSize;
+            VectorKernels.multBlockLineRows(matrixA, matrixB, matrixC, n, bkSize, bi, Math.min(bi + bkSize, n));
+        });
+    }
+
+
+    // Block multiplication restricted to the rows [bi, minValueI) of C
+    private static void multBlockRows(double[] matrixA, double[] matrixB, double[] matrixC, int n, int bkSize, int bi, int minValueI)
+    {
+        double temp;
+
+        for (int bj = 0; bj < n; bj = bj + bkSize)
+        {
+            for (int bk = 0; bk < n; bk = bk + bkSize)
+            {
+                int minValueJ = Math.min(bj + bkSize, n);
+                int minValueK = Math.min(bk + bkSize, n);
+
+                for (int i = bi; i < minValueI; i++)
+                {
+                    for (int j = bj; j < minValueJ; j++)
+                    {
+                        temp = 0;
+                        for (int k = bk; k < minValueK; k++)
+                        {
+                            temp += matrixA[i * n + k] * matrixB[k * n + j];
+                        }
+                        matrixC[i * n + j] += temp;
+                    }
+                }
+            }
+        }
+    }
+
+
+    // Inline block multiplication restricted to the rows [bi, minValueI) of C
+    static void multBlockLineRows(double[] matrixA, double[] matrixB, double[] matrixC, int n, int bkSize, int bi, int minValueI)
+    {
+        for (int bj = 0; bj < n; bj = bj + bkSize)
+        {
+            for (int bk = 0; bk < n; bk = bk + bkSize)
+            {
+                int minValueJ = Math.min(bj + bkSize, n);
+                int minValueK = Math.min(bk + bkSize, n);
+
+                for (int i = bi; i < minValueI; i++)
+                {
+                    for (int j = bj; j < minValueJ; j++)
+                    {
+                        double sum_value = matrixA[j + i * n];
+
+                        for (int k = bk; k < minValueK; k++)
+                        {
+                            matrixC[k + i * n] += sum_value * matrixB[k + j * n];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+
+    // Runs body(from..to-1) on the given pool, the Java equivalent of "#pragma omp parallel for"
+    static void parallelFor(ForkJoinPool pool, int from, int to, IntConsumer body)
+    {
+        pool.submit(() -> IntStream.range(from, to).parallel().forEach(body)).join();
+    }
+
+    // Parallel sum of body(from..to-1), the equivalent of "#pragma omp parallel for reduction(+:temp)"
+    static double parallelSum(ForkJoinPool pool, int from, int to, IntToDoubleFunction body)
+    {
+        return pool.submit(() -> IntStream.range(from, to).parallel().mapToDouble(body).sum()).join();
+    }
+}
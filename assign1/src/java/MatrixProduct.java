@@ -1,16 +1,82 @@
 import java.io.FileWriter;
 import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 public class MatrixProduct {
+
+    private static final String DATA_HEADER = "functionType,MatrixSize,Real Time\n";
+
+    private static final String COUNTERS_HEADER = "functionType,MatrixSize,Real Time,MFLOPS,Cycles,Instructions,L1 DCM,L2 DCM,LLC Misses,Init Time\n";
+
+    private static final String ROOFLINE_HEADER = "functionType,MatrixSize,Real Time,GFLOPS,Arithmetic Intensity,Traffic,Attainable GFLOPS,Percent of Roofline\n";
+
+    private static final String DISTRIBUTED_HEADER = "functionType,MatrixSize,Real Time,Compute Time,Communication Time,Shift Time\n";
+
+    private static final String ACCURACY_HEADER = "functionType,MatrixSize,Max Relative Error\n";
+
+    // Roofline of this machine and docs/roofline_java.csv while the test cases run, null otherwise
+    private static Roofline.Machine roofline;
+    private static FileWriter rooflineFile;
+
+    // functionType of the single/mixed precision menu options 1-8
+    private static final String[] FLOAT_FUNCTION_TYPES = {
+            "Float Normal Mult", "Float Inline Mult", "Float Block Mult", "Float Inline Block Mult",
+            "Float SIMD Inline Mult", "Float SIMD Inline Block Mult", "Mixed Block Mult", "Mixed SIMD Inline Block Mult"
+    };
+
     public static void main(String[] args) {
 
         Scanner scanner = new Scanner(System.in);
 
+        // verify=R, anywhere: check every product with R rounds of Freivalds' algorithm
+        List<String> modeArgs = new ArrayList<>();
+        for (String arg : args)
+        {
+            if (arg.startsWith("verify="))
+                verifyRounds = Integer.parseInt(arg.substring("verify=".length()));
+            else
+                modeArgs.add(arg);
+        }
+        args = modeArgs.toArray(new String[0]);
+
         if (args.length > 0) {
             if (args[0].equals("test"))
             {
-                handleTestCases();
+                handleTestCases(Arrays.copyOfRange(args, 1, args.length));
+                return;
+            }
+            if (args[0].equals("autotune"))
+            {
+                handleAutotuneOption();
+                return;
+            }
+            if (args[0].equals("roofline"))
+            {
+                handleRooflineOption();
+                return;
+            }
+            if (args[0].equals("scaling"))
+            {
+                handleScalingOption(Arrays.copyOfRange(args, 1, args.length));
+                return;
+            }
+            // started by the distributed multiplication (menu option 15), not by hand
+            if (args[0].equals("worker"))
+            {
+                runWorker(Integer.parseInt(args[1]));
                 return;
             }
         } else {
@@ -22,6 +88,23 @@ public class MatrixProduct {
             System.out.println("1. Multiplication");
             System.out.println("2. Line Multiplication");
             System.out.println("3. Block Multiplication");
+            System.out.println("4. Parallelization");
+            System.out.println("5. SIMD Multiplication");
+            System.out.println("6. Packed Panel Multiplication");
+            System.out.println("7. Strassen Multiplication");
+            System.out.println("8. Off-heap Multiplication");
+            System.out.println("9. Out-of-core Multiplication");
+            System.out.println("10. Autotune Block Size");
+            System.out.println("11. Single/Mixed Precision Multiplication");
+            System.out.println("12. General Matrix Multiplication (GEMM)");
+            System.out.println("13. Batched Small Matrix Multiplication");
+            System.out.println("14. Sparse Matrix Multiplication");
+            System.out.println("15. Distributed Multiplication (worker processes)");
+            System.out.println("16. Morton Order (Cache-Oblivious) Multiplication");
+            System.out.println("17. Roofline (Memory Bandwidth and Peak FLOPS)");
+            System.out.println("18. Matrix Chain Multiplication");
+            System.out.println("19. LU Factorization and Linear Solver");
+            System.out.println("20. Native BLAS Multiplication (dgemm)");
             System.out.println("0. Exit Program");
             System.out.println("Selection?: ");
 
@@ -29,6 +112,22 @@ public class MatrixProduct {
 
             if (op == 0) break;
 
+            if (op == 10)
+            {
+                handleAutotuneOption();
+                continue;
+            }
+            if (op == 17)
+            {
+                handleRooflineOption();
+                continue;
+            }
+            if (op == 18)
+            {
+                handleChainOption();
+                continue;
+            }
+
             System.out.println("Dimension: lins=cols ? ");
 
             Integer dimensions = scanner.nextInt();
@@ -42,335 +141,2369 @@ public class MatrixProduct {
                     OnMultLine(dimensions);
                     break;
                 case 3:
-                    System.out.println("Block Size? ");
+                    System.out.println("Block Size? (0 for the autotuned size) ");
                     Integer bkSize = scanner.nextInt();
+                    if (bkSize == 0)
+                        bkSize = tunedBlockSize(dimensions);
                     chooseBlockFunction(dimensions, bkSize);
                     break;
+                case 4:
+                    handleParallelizationOption(dimensions);
+                    break;
+                case 5:
+                    handleSimdOption(dimensions);
+                    break;
+                case 6:
+                    handlePackedOption(dimensions);
+                    break;
+                case 7:
+                    handleStrassenOption(dimensions);
+                    break;
+                case 8:
+                    handleOffHeapOption(dimensions);
+                    break;
+                case 9:
+                    handleOutOfCoreOption(dimensions);
+                    break;
+                case 11:
+                    handleFloatOption(dimensions);
+                    break;
+                case 12:
+                    handleGemmOption(dimensions);
+                    break;
+                case 13:
+                    handleBatchedOption(dimensions);
+                    break;
+                case 14:
+                    handleSparseOption(dimensions);
+                    break;
+                case 15:
+                    handleDistributedOption(dimensions);
+                    break;
+                case 16:
+                    handleMortonOption(dimensions);
+                    break;
+                case 19:
+                    handleLUOption(dimensions);
+                    break;
+                case 20:
+                    handleNativeBlasOption(dimensions);
+                    break;
             }
         }
     }
 
-    private static void chooseBlockFunction(Integer dimensions, Integer bkSize)
+    // C = alpha * op(A) * op(B) + beta * C with dimensions as M
+    private static void handleGemmOption(Integer dimensions)
     {
         Scanner scanner = new Scanner(System.in);
 
-        System.out.println("1. Normal Block Matrix Multiplication");
-        System.out.println("2. Block Matrix Multiplication with Inline Multiplication");
-        System.out.println("Selection?: ");
+        System.out.println("N (columns of C)? ");
+        int n = scanner.nextInt();
 
-        int op = scanner.nextInt();
+        System.out.println("K (inner dimension)? ");
+        int k = scanner.nextInt();
 
-        switch (op)
-        {
-            case 1:
-                OnMultBlock(dimensions, bkSize);
-                break;
-            case 2:
-                OnMultBlockLine(dimensions, bkSize);
-                break;
-            default:
-                System.out.println("Invalid Input");
-        }
+        System.out.println("Transpose A? (0/1) ");
+        boolean transA = scanner.nextInt() == 1;
+
+        System.out.println("Transpose B? (0/1) ");
+        boolean transB = scanner.nextInt() == 1;
+
+        System.out.println("Alpha? ");
+        double alpha = scanner.nextDouble();
+
+        System.out.println("Beta? ");
+        double beta = scanner.nextDouble();
+
+        System.out.println("Block Size? ");
+        int bkSize = scanner.nextInt();
+
+        System.out.println("Number of threads? (1 for serial) ");
+        int numThreads = scanner.nextInt();
+
+        double time = OnMultGemm(dimensions, n, k, transA, transB, alpha, beta, bkSize, numThreads);
 
+        System.out.println("Time: " + time + " seconds");
+        System.out.println("MFLOPS: " + 2.0 * dimensions * n * k / time / 1e6);
     }
 
-    private static double OnMult(Integer dimensions)
+    // dimensions is the size of each small matrix
+    private static void handleBatchedOption(Integer dimensions)
     {
-        double[] matrixA = new double[dimensions * dimensions];
-        double[] matrixB = new double[dimensions * dimensions];
-        double[] matrixC = new double[dimensions * dimensions];
+        Scanner scanner = new Scanner(System.in);
 
-        for (int i = 0; i < dimensions; i++)
-        {
-            for (int j = 0; j < dimensions; j++)
-            {
-                matrixA[i * dimensions + j] = 1.0;
-                matrixB[i * dimensions + j] = (double) i + 1.0;
-            }
-        }
+        System.out.println("Number of matrices? ");
+        int count = scanner.nextInt();
 
-        long start = System.nanoTime();
+        System.out.println("Number of threads? (1 for serial) ");
+        int numThreads = scanner.nextInt();
 
-        double temp;
+        double time = OnMultBatched(dimensions, count, numThreads);
 
-        for (int i = 0; i < dimensions; i++)
-        {
-            for (int j = 0; j < dimensions; j++)
-            {
-                temp = 0;
-                for (int k = 0; k < dimensions; k++)
-                {
-                    temp += matrixA[i * dimensions + k] * matrixB[k * dimensions + j];
-                }
-                matrixC[i * dimensions + j] = temp;
-            }
-        }
+        System.out.println("Time: " + time + " seconds");
+        System.out.println("MFLOPS: " + 2.0 * dimensions * dimensions * dimensions * count / time / 1e6);
+    }
 
-        long end = System.nanoTime();
+    private static void handleSparseOption(Integer dimensions)
+    {
+        Scanner scanner = new Scanner(System.in);
 
-        double time = (end - start) / 1e9;
+        System.out.println("1. Sparse x Dense Multiplication (SpMM)");
+        System.out.println("2. Sparse x Sparse Multiplication (SpGEMM)");
+        System.out.println("Selection?: ");
+        int op = scanner.nextInt();
 
+        System.out.println("Density? (fraction of non-zeros, e.g. 0.01) ");
+        double density = scanner.nextDouble();
 
+        System.out.println("Number of threads? (1 for serial) ");
+        int numThreads = scanner.nextInt();
 
-        return time;
-    }
+        double time = OnMultSparse(dimensions, density, op == 2, numThreads);
 
+        if (lastSparseNonZeros >= 0)
+            System.out.println("Non-zeros of C: " + lastSparseNonZeros + " (density " + (double) lastSparseNonZeros / dimensions / dimensions + ")");
 
-    private static double OnMultLine(Integer dimensions)
+        System.out.println("Time: " + time + " seconds");
+        // as if the zeros had been multiplied, comparable with the dense kernels
+        System.out.println("Dense equivalent MFLOPS: " + 2.0 * dimensions * dimensions * dimensions / time / 1e6);
+    }
+
+    // Chains have a shape per matrix instead of one dimension
+    private static void handleChainOption()
     {
+        Scanner scanner = new Scanner(System.in);
 
-        double[] matrixA = new double[dimensions * dimensions];
-        double[] matrixB = new double[dimensions * dimensions];
-        double[] matrixC = new double[dimensions * dimensions];
+        System.out.println("Number of matrices? ");
+        int length = scanner.nextInt();
 
-        for (int i = 0; i < dimensions; i++)
+        System.out.println("Dimensions? (" + (length + 1) + " numbers, or 0 for random ones between 100 and 1000) ");
+        int first = scanner.nextInt();
+
+        int[] dims;
+        if (first == 0)
         {
-            for (int j = 0; j < dimensions; j++)
-            {
-                matrixA[i * dimensions + j] = 1.0;
-                matrixB[i * dimensions + j] = (double) i + 1.0;
-                matrixC[i * dimensions + j] = 0.0;
-            }
+            dims = chainDimensions(length, System.nanoTime());
+        }
+        else
+        {
+            dims = new int[length + 1];
+            dims[0] = first;
+            for (int i = 1; i <= length; i++)
+                dims[i] = scanner.nextInt();
         }
 
-        long start = System.nanoTime();
+        System.out.println("Block Size? ");
+        int bkSize = scanner.nextInt();
 
-        double temp;
+        System.out.println("Number of threads? (1 for serial) ");
+        int numThreads = scanner.nextInt();
 
-        for (int i = 0; i < dimensions; i++)
-        {
-            for (int j = 0; j < dimensions; j++)
-            {
-                temp = matrixA[i * dimensions + j];
-                for (int k = 0; k < dimensions; k++)
-                {
-                    matrixC[i * dimensions + k] += temp * matrixB[j * dimensions + k];
-                }
-            }
-        }
+        MatrixChain.Plan plan = MatrixChain.plan(dims);
+        MatrixChain.Plan leftToRight = MatrixChain.leftToRight(dims);
 
-        long end = System.nanoTime();
+        System.out.println("Dimensions: " + Arrays.toString(dims));
+        System.out.println("Best order: " + plan);
+        System.out.printf("FLOPs: %.4g best order, %.4g left to right%n", plan.flops(), leftToRight.flops());
 
-        double time = (end - start) / 1e9;
+        double time = OnMultChain(dims, bkSize, numThreads, true);
+        double leftToRightTime = OnMultChain(dims, bkSize, numThreads, false);
 
-        /*
+        System.out.println("Time: " + time + " seconds (left to right: " + leftToRightTime + " seconds)");
+        System.out.println("MFLOPS: " + plan.flops() / time / 1e6 + " (left to right: " + leftToRight.flops() / leftToRightTime / 1e6 + ")");
+    }
 
-        System.out.println("Time: " + time + " seconds");
+    // length + 1 dimensions between 100 and 1000
+    private static int[] chainDimensions(int length, long seed)
+    {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] dims = new int[length + 1];
+        for (int i = 0; i <= length; i++)
+            dims[i] = random.nextInt(100, 1001);
+        return dims;
+    }
 
-        System.out.println("Result Matrix: ");
-        for (int i = 0; i < 1; i++)
+    // Strong and weak scaling sweep, "MatrixProduct scaling [key=value ...]" (see ScalingSweep)
+    private static void handleScalingOption(String[] args)
+    {
+        Map<String, ScalingSweep.Target> targets = new LinkedHashMap<>();
+        targets.put("INLINE", new ScalingSweep.Target("Parallelized Inline Mult", false,
+                (n, threads, bkSize) -> threads == 1 ? OnMultLine(n) : OnMultLineParallel(n, threads, ParallelLoop.OUTER)));
+        targets.put("INLINE_BLOCK", new ScalingSweep.Target("Parallelized Inline Block Mult", true,
+                (n, threads, bkSize) -> threads == 1 ? OnMultBlockLine(n, bkSize) : OnMultBlockLineParallel(n, bkSize, threads, ParallelLoop.OUTER)));
+        targets.put("SIMD_INLINE_BLOCK", new ScalingSweep.Target("Parallelized SIMD Inline Block Mult", true,
+                (n, threads, bkSize) -> OnMultBlockLineSimd(n, bkSize, threads)));
+        targets.put("SPECIALIZED_INLINE_BLOCK", new ScalingSweep.Target("Parallelized Specialized Inline Block Mult", true,
+                (n, threads, bkSize) -> OnMultBlockLineSpecialized(n, bkSize, KernelFactory.defaultUnroll(bkSize), threads)));
+        targets.put("MORTON", new ScalingSweep.Target("Morton Mult", false,
+                (n, threads, bkSize) -> OnMultMorton(n, threads)));
+        if (NativeBlas.available())
+            targets.put("NATIVE_BLAS", new ScalingSweep.Target("Native BLAS Mult", false,
+                    (n, threads, bkSize) -> OnMultNativeBlas(n, threads)));
+
+        try
         {
-            for (int j = 0; j < Math.min(10, dimensions); j++)
-                System.out.println(matrixC[j]);
+            ScalingSweep.run(targets, args);
+        }
+        catch (IOException | IllegalArgumentException e)
+        {
+            System.out.println("Scaling sweep failed: " + e.getMessage());
         }
-         */
-
-        return time;
     }
 
-
-    private static double OnMultBlock(Integer dimensions, Integer bkSize)
+    private static void handleLUOption(Integer dimensions)
     {
+        Scanner scanner = new Scanner(System.in);
 
-        double[] matrixA = new double[dimensions * dimensions];
-        double[] matrixB = new double[dimensions * dimensions];
-        double[] matrixC = new double[dimensions * dimensions];
+        System.out.println("Block Size? ");
+        int bkSize = scanner.nextInt();
 
-        for (int i = 0; i < dimensions; i++)
-        {
-            for (int j = 0; j < dimensions; j++)
-            {
-                matrixA[i * dimensions + j] = 1.0;
-                matrixB[i * dimensions + j] = (double) i + 1.0;
-                matrixC[i * dimensions + j] = 0.0;
-            }
-        }
+        System.out.println("Number of threads? (1 for serial) ");
+        int numThreads = scanner.nextInt();
 
-        long start = System.nanoTime();
+        double time = OnLUFactorization(dimensions, bkSize, numThreads);
 
-        double temp;
+        System.out.println("Time: " + time + " seconds");
+        System.out.println("GFLOPS: " + BlockedLU.flops(dimensions) / time / 1e9);
+    }
 
-        for (int bi = 0; bi < dimensions; bi = bi + bkSize)
+    private static void handleNativeBlasOption(Integer dimensions)
+    {
+        if (!NativeBlas.available())
         {
-            for (int bj = 0; bj < dimensions; bj = bj + bkSize)
-            {
-                for (int bk = 0; bk < dimensions; bk = bk + bkSize)
-                {
-                    int minValueI = Math.min(bi + bkSize, dimensions);
-                    int minValueJ = Math.min(bj + bkSize, dimensions);
-                    int minValueK = Math.min(bk + bkSize, dimensions);
-
-                    for (int i = bi; i < minValueI; i++)
-                    {
-                        for (int j = bj; j < minValueJ; j++)
-                        {
-                            temp = 0;
-                            for (int k = bk; k < minValueK; k++)
-                            {
-                                temp += matrixA[i * dimensions + k] * matrixB[k * dimensions + j];
-                            }
-                            matrixC[i * dimensions + j] += temp;
-                        }
-                    }
-                }
-            }
+            System.out.println("No BLAS library with cblas_dgemm found (set -Dblas.library=<name or path>)");
+            return;
         }
 
-        long end = System.nanoTime();
+        Scanner scanner = new Scanner(System.in);
 
-        double time = (end - start) / 1e9;
+        System.out.println("Number of threads? ");
+        int numThreads = scanner.nextInt();
+
+        double time = OnMultNativeBlas(dimensions, numThreads);
 
+        System.out.println("Library: " + NativeBlas.library());
         System.out.println("Time: " + time + " seconds");
+        System.out.println("GFLOPS: " + 2.0 * dimensions * dimensions * dimensions / time / 1e9);
+    }
 
-        System.out.println("Result Matrix: ");
-        for (int i = 0; i < 1; i++)
-        {
-            for (int j = 0; j < Math.min(10, dimensions); j++)
-                System.out.println(matrixC[j]);
-        }
+    private static void handleMortonOption(Integer dimensions)
+    {
+        Scanner scanner = new Scanner(System.in);
 
-        return time;
-    }
+        System.out.println("Number of threads? (1 for serial) ");
+        int numThreads = scanner.nextInt();
 
+        System.out.println("Time: " + OnMultMorton(dimensions, numThreads) + " seconds");
+        System.out.printf("Conversions: %.3f seconds%n", lastMortonConversionTime);
+        System.out.println("Initialization time: " + lastInitTime + " seconds");
+    }
 
-    private static double OnMultBlockLine(Integer dimensions, Integer bkSize)
+    private static void handleDistributedOption(Integer dimensions)
     {
+        Scanner scanner = new Scanner(System.in);
 
-        double[] matrixA = new double[dimensions * dimensions];
-        double[] matrixB = new double[dimensions * dimensions];
-        double[] matrixC = new double[dimensions * dimensions];
+        System.out.println("Grid size? (q for q x q worker processes) ");
+        int gridSize = scanner.nextInt();
 
-        for (int i = 0; i < dimensions; i++)
+        System.out.println("Block Size? ");
+        int bkSize = scanner.nextInt();
+
+        System.out.println("Bind workers to NUMA nodes with numactl? (0/1) ");
+        boolean bindNodes = scanner.nextInt() == 1;
+
+        try
         {
-            for (int j = 0; j < dimensions; j++)
-            {
-                matrixA[i * dimensions + j] = 1.0;
-                matrixB[i * dimensions + j] = (double) i + 1.0;
-                matrixC[i * dimensions + j] = 0.0;
-            }
+            Distributed.Stats stats = OnMultDistributed(dimensions, gridSize, bkSize, bindNodes);
+            System.out.println("Time: " + stats.totalTime + " seconds");
         }
+        catch (IOException e)
+        {
+            System.out.println("Distributed multiplication failed: " + e.getMessage());
+        }
+    }
 
-        long start = System.nanoTime();
-
-        for (int bi = 0; bi < dimensions; bi = bi + bkSize)
+    private static void runWorker(int coordinatorPort)
+    {
+        try
         {
-            for (int bj = 0; bj < dimensions; bj = bj + bkSize)
-            {
-                for (int bk = 0; bk < dimensions; bk = bk + bkSize)
-                {
-                    int minValueI = Math.min(bi + bkSize, dimensions);
-                    int minValueJ = Math.min(bj + bkSize, dimensions);
-                    int minValueK = Math.min(bk + bkSize, dimensions);
+            Distributed.worker(coordinatorPort);
+        }
+        catch (IOException e)
+        {
+            System.out.println("Worker failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
 
-                    for (int i = bi; i < minValueI; i++)
-                    {
-                        for (int j = bj; j < minValueJ; j++)
-                        {
-                            double sum_value = matrixA[j + i * dimensions];
+    private static void handleFloatOption(Integer dimensions)
+    {
+        Scanner scanner = new Scanner(System.in);
 
-                            for (int k = bk; k < minValueK; k++)
-                            {
-                                matrixC[k + i * dimensions] += sum_value * matrixB[k + j * dimensions];
-                            }
-                        }
-                    }
-                }
-            }
-        }
+        System.out.println("1. Float Multiplication");
+        System.out.println("2. Float Line Multiplication");
+        System.out.println("3. Float Block Multiplication");
+        System.out.println("4. Float Block Matrix Multiplication with Inline Multiplication");
+        System.out.println("5. Float SIMD Line Multiplication");
+        System.out.println("6. Float SIMD Block Matrix Multiplication with Inline Multiplication");
+        System.out.println("7. Mixed Precision Block Multiplication");
+        System.out.println("8. Mixed Precision SIMD Block Matrix Multiplication with Inline Multiplication");
+        System.out.println("Selection?: ");
 
-        long end = System.nanoTime();
+        int op = scanner.nextInt();
 
-        double time = (end - start) / 1e9;
+        int bkSize = 0;
+        if (op == 3 || op == 4 || op >= 6)
+        {
+            System.out.println("Block Size? ");
+            bkSize = scanner.nextInt();
+        }
 
-        System.out.println("Time: " + time + " seconds");
+        System.out.println("Number of threads? (1 for serial) ");
+        int numThreads = scanner.nextInt();
 
-        System.out.println("Result Matrix: ");
-        for (int i = 0; i < 1; i++)
+        ParallelLoop loop = ParallelLoop.OUTER;
+        if (numThreads > 1 && op <= 4)
         {
-            for (int j = 0; j < Math.min(10, dimensions); j++)
-                System.out.println(matrixC[j]);
+            System.out.println("1. Outer Loop Parallelization");
+            System.out.println("2. InnerMost Loop Parallelization");
+            System.out.println("Selection?: ");
+            loop = scanner.nextInt() == 2 ? ParallelLoop.INNER_MOST : ParallelLoop.OUTER;
         }
 
-        return time;
-    }
+        double[] result = runFloat(dimensions, op, bkSize, numThreads, loop, true);
 
-    private static void handleTestCases(){
+        System.out.println("Time: " + result[0] + " seconds");
+        System.out.println("Max relative error: " + result[1]);
+    }
 
-        try{
-            FileWriter file = new FileWriter("docs/data_java.csv", true);
+    // Searches block size, loop order and thread count for this machine and saves the
+    // result to Autotuner.DEFAULT_PROFILE, where the menu and the test cases pick it up
+    private static void handleAutotuneOption()
+    {
+        Autotuner.Profile profile = Autotuner.tune();
 
-            
-            System.out.print("== Normal multiplication tests ==");
+        try
+        {
+            Autotuner.save(profile, Autotuner.DEFAULT_PROFILE);
+            System.out.println("Profile saved to " + Autotuner.DEFAULT_PROFILE);
+        }
+        catch (IOException e)
+        {
+            System.out.println("Could not save the profile: " + e.getMessage());
+        }
+    }
 
-            for (int n = 600; n<=3000; n+=400)
-            {
-                double totalTime = 0;
-                double time;
-                for(int i=0; i<=30; i++){
-                    time = OnMult(n);
-                    totalTime += time;
-                    file.write("Normal Mult " + n + " " + time + "\n");
-                }
-                file.write("Normal Mult " + n + " AVG: " + totalTime/30 + "\n");
-            }
+    private static void handleRooflineOption()
+    {
+        Roofline.Machine machine = Roofline.measure(Runtime.getRuntime().availableProcessors());
 
-            System.out.println("Complete");
-            
+        try
+        {
+            Roofline.save(machine, Roofline.DEFAULT_PROFILE);
+            System.out.println("Roofline saved to " + Roofline.DEFAULT_PROFILE);
+        }
+        catch (IOException e)
+        {
+            System.out.println("Could not save the roofline: " + e.getMessage());
+        }
+    }
 
-            System.out.print("== Inline multiplication tests ==");
+    // Autotuned configuration for this size, null when no profile has been saved
+    private static Autotuner.Config tunedConfig(Integer dimensions)
+    {
+        try
+        {
+            Autotuner.Profile profile = Autotuner.load(Autotuner.DEFAULT_PROFILE);
+            return profile == null ? null : profile.lookup(dimensions);
+        }
+        catch (IOException e)
+        {
+            System.out.println("Could not load the profile: " + e.getMessage());
+            return null;
+        }
+    }
 
-            for (int n = 600; n<=3000; n+=400)
-            {
-                double totalTime = 0;
-                double time;
-                for(int i=0; i<=30; i++){
-                    time = OnMultLine(n);
-                    totalTime += time;
-                    file.write("Inline Mult " + n + " " + time + "\n");
+    private static int tunedBlockSize(Integer dimensions)
+    {
+        Autotuner.Config config = tunedConfig(dimensions);
+        if (config == null)
+        {
+            System.out.println("No autotune profile found (option 10), using block size 128");
+            return 128;
+        }
 
-                }
-                file.write("Inline Mult " + n + " " + totalTime/30 + "\n");
+        System.out.println("Autotuned block size: " + config.bkSize);
+        return config.bkSize;
+    }
 
-            }
+    private static void chooseBlockFunction(Integer dimensions, Integer bkSize)
+    {
+        Scanner scanner = new Scanner(System.in);
 
-            System.out.println("Complete");
+        System.out.println("1. Normal Block Matrix Multiplication");
+        System.out.println("2. Block Matrix Multiplication with Inline Multiplication");
+        System.out.println("3. Specialized Block Matrix Multiplication with Inline Multiplication");
+        System.out.println("Selection?: ");
 
-            
-            System.out.print("== Block multiplication tests ==");
+        int op = scanner.nextInt();
 
-            for (int n = 4096; n<=10240; n+=2048)
+        switch (op)
+        {
+            case 1:
+                System.out.println("Time: " + OnMultBlock(dimensions, bkSize) + " seconds");
+                printResultRow(dimensions);
+                break;
+            case 2:
+                System.out.println("Time: " + OnMultBlockLine(dimensions, bkSize) + " seconds");
+                printResultRow(dimensions);
+                break;
+            case 3:
+                System.out.println("Unroll factor? (1, 2, 4 or 8, dividing the block size; 0 for the largest) ");
+                int unroll = scanner.nextInt();
+                if (unroll == 0)
+                    unroll = KernelFactory.defaultUnroll(bkSize);
+                System.out.println("Time: " + OnMultBlockLineSpecialized(dimensions, bkSize, unroll, 1) + " seconds");
+                break;
+            default:
+                System.out.println("Invalid Input");
+        }
+
+    }
+
+    private static void handleParallelizationOption(Integer dimensions)
+    {
+        Scanner scanner = new Scanner(System.in);
+
+        System.out.println("1. Parallel Multiplication");
+        System.out.println("2. Parallel Line Multiplication");
+        System.out.println("3. Parallel Block Multiplication");
+        System.out.println("4. Parallel Block Matrix Multiplication with Inline Multiplication");
+        System.out.println("Selection?: ");
+
+        int op = scanner.nextInt();
+
+        System.out.println("Number of threads? ");
+        int numThreads = scanner.nextInt();
+
+        System.out.println("1. Outer Loop Parallelization");
+        System.out.println("2. InnerMost Loop Parallelization");
+        System.out.println("Selection?: ");
+
+        ParallelLoop loop = scanner.nextInt() == 2 ? ParallelLoop.INNER_MOST : ParallelLoop.OUTER;
+
+        double time;
+
+        switch (op)
+        {
+            case 1:
+                time = OnMultParallel(dimensions, numThreads, loop);
+                break;
+            case 2:
+                time = OnMultLineParallel(dimensions, numThreads, loop);
+                break;
+            case 3:
+                System.out.println("Block Size? ");
+                time = OnMultBlockParallel(dimensions, scanner.nextInt(), numThreads, loop);
+                break;
+            case 4:
+                System.out.println("Block Size? ");
+                time = OnMultBlockLineParallel(dimensions, scanner.nextInt(), numThreads, loop);
+                break;
+            default:
+                System.out.println("Invalid Input");
+                return;
+        }
+
+        System.out.println("Initialization time: " + lastInitTime + " seconds");
+        System.out.println("Time: " + time + " seconds");
+    }
+
+    private static void handleSimdOption(Integer dimensions)
+    {
+        Scanner scanner = new Scanner(System.in);
+
+        if (!MatrixKernels.SIMD_AVAILABLE)
+            System.out.println("Vector API not available (run with --add-modules jdk.incubator.vector), using the scalar kernels");
+
+        System.out.println("1. SIMD Line Multiplication");
+        System.out.println("2. SIMD Block Matrix Multiplication with Inline Multiplication");
+        System.out.println("Selection?: ");
+
+        int op = scanner.nextInt();
+
+        System.out.println("Number of threads? (1 for serial) ");
+        int numThreads = scanner.nextInt();
+
+        double time;
+
+        switch (op)
+        {
+            case 1:
+                time = OnMultLineSimd(dimensions, numThreads);
+                break;
+            case 2:
+                System.out.println("Block Size? ");
+                time = OnMultBlockLineSimd(dimensions, scanner.nextInt(), numThreads);
+                break;
+            default:
+                System.out.println("Invalid Input");
+                return;
+        }
+
+        System.out.println("Initialization time: " + lastInitTime + " seconds");
+        System.out.println("Time: " + time + " seconds");
+    }
+
+    private static void handlePackedOption(Integer dimensions)
+    {
+        Scanner scanner = new Scanner(System.in);
+
+        System.out.println("MC KC NC? (0 0 0 for " + PackedGemm.DEFAULT_MC + " " + PackedGemm.DEFAULT_KC + " " + PackedGemm.DEFAULT_NC + ")");
+        int mc = scanner.nextInt();
+        int kc = scanner.nextInt();
+        int nc = scanner.nextInt();
+
+        if (mc <= 0 || kc <= 0 || nc <= 0)
+        {
+            mc = PackedGemm.DEFAULT_MC;
+            kc = PackedGemm.DEFAULT_KC;
+            nc = PackedGemm.DEFAULT_NC;
+        }
+
+        System.out.println("Number of threads? (1 for serial) ");
+        int numThreads = scanner.nextInt();
+
+        ParallelLoop loop = ParallelLoop.INNER_MOST;
+        if (numThreads > 1)
+        {
+            System.out.println("1. NC Loop Parallelization");
+            System.out.println("2. MC Loop Parallelization");
+            System.out.println("Selection?: ");
+            loop = scanner.nextInt() == 1 ? ParallelLoop.OUTER : ParallelLoop.INNER_MOST;
+        }
+
+        System.out.println("Time: " + OnMultPacked(dimensions, mc, kc, nc, numThreads, loop) + " seconds");
+    }
+
+    private static void handleStrassenOption(Integer dimensions)
+    {
+        Scanner scanner = new Scanner(System.in);
+
+        System.out.println("Cutoff? (0 for " + Strassen.DEFAULT_CUTOFF + ")");
+        int cutoff = scanner.nextInt();
+        if (cutoff <= 0)
+            cutoff = Strassen.DEFAULT_CUTOFF;
+
+        System.out.println("Block Size? ");
+        int bkSize = scanner.nextInt();
+
+        System.out.println("Number of threads? (1 for serial) ");
+        int numThreads = scanner.nextInt();
+
+        System.out.println("Time: " + OnMultStrassen(dimensions, cutoff, bkSize, numThreads) + " seconds");
+    }
+
+    private static void handleOffHeapOption(Integer dimensions)
+    {
+        Scanner scanner = new Scanner(System.in);
+
+        System.out.println("1. Multiplication");
+        System.out.println("2. Line Multiplication");
+        System.out.println("3. Block Multiplication");
+        System.out.println("4. Block Matrix Multiplication with Inline Multiplication");
+        System.out.println("5. SIMD Line Multiplication");
+        System.out.println("6. Packed Panel Multiplication");
+        System.out.println("7. SIMD Block Matrix Multiplication with Inline Multiplication");
+        System.out.println("Selection?: ");
+
+        int op = scanner.nextInt();
+
+        int bkSize = 0;
+        if (op == 3 || op == 4 || op == 7)
+        {
+            System.out.println("Block Size? ");
+            bkSize = scanner.nextInt();
+        }
+
+        System.out.println("Number of threads? (1 for serial) ");
+        int numThreads = scanner.nextInt();
+
+        ParallelLoop loop = ParallelLoop.OUTER;
+        if (numThreads > 1 && op <= 4)
+        {
+            System.out.println("1. Outer Loop Parallelization");
+            System.out.println("2. InnerMost Loop Parallelization");
+            System.out.println("Selection?: ");
+            loop = scanner.nextInt() == 2 ? ParallelLoop.INNER_MOST : ParallelLoop.OUTER;
+        }
+
+        System.out.println("Time: " + OnMultOffHeap(dimensions, op, bkSize, numThreads, loop) + " seconds");
+        System.out.println("Initialization time: " + lastInitTime + " seconds");
+    }
+
+    private static void handleOutOfCoreOption(Integer dimensions)
+    {
+        Scanner scanner = new Scanner(System.in);
+
+        System.out.println("1. Row-major Files");
+        System.out.println("2. Tiled Files");
+        System.out.println("Selection?: ");
+
+        boolean tiled = scanner.nextInt() == 2;
+
+        System.out.println("Tile Size? ");
+        int tileSize = scanner.nextInt();
+
+        System.out.println("Block Size? ");
+        int bkSize = scanner.nextInt();
+
+        System.out.println("Directory? (. for the current one) ");
+        Path directory = Path.of(scanner.next());
+
+        try
+        {
+            System.out.println("Time: " + OnMultOutOfCore(dimensions, tileSize, bkSize, tiled, directory) + " seconds");
+        }
+        catch (IOException e)
+        {
+            System.out.println("Out-of-core multiplication failed: " + e.getMessage());
+        }
+    }
+
+    private static double OnMult(Integer dimensions)
+    {
+        double[][] matrices = reusableMatrices(dimensions);
+        double[] matrixA = matrices[0];
+        double[] matrixB = matrices[1];
+        double[] matrixC = matrices[2];
+
+        MatrixKernels.initMatrices(matrixA, matrixB, matrixC, dimensions);
+
+        long start = startTimer();
+
+        MatrixKernels.mult(matrixA, matrixB, matrixC, dimensions);
+
+        long end = stopTimer();
+
+        verify(null, matrixA, matrixB, matrixC, dimensions);
+
+        double time = (end - start) / 1e9;
+
+
+
+        return time;
+    }
+
+
+    private static double OnMultLine(Integer dimensions)
+    {
+
+        double[][] matrices = reusableMatrices(dimensions);
+        double[] matrixA = matrices[0];
+        double[] matrixB = matrices[1];
+        double[] matrixC = matrices[2];
+
+        MatrixKernels.initMatrices(matrixA, matrixB, matrixC, dimensions);
+
+        long start = startTimer();
+
+        MatrixKernels.multLine(matrixA, matrixB, matrixC, dimensions);
+
+        long end = stopTimer();
+
+        verify(null, matrixA, matrixB, matrixC, dimensions);
+
+        double time = (end - start) / 1e9;
+
+        /*
+
+        System.out.println("Time: " + time + " seconds");
+
+        System.out.println("Result Matrix: ");
+        for (int i = 0; i < 1; i++)
+        {
+            for (int j = 0; j < Math.min(10, dimensions); j++)
+                System.out.println(matrixC[j]);
+        }
+         */
+
+        return time;
+    }
+
+
+    private static double OnMultBlock(Integer dimensions, Integer bkSize)
+    {
+
+        double[][] matrices = reusableMatrices(dimensions);
+        double[] matrixA = matrices[0];
+        double[] matrixB = matrices[1];
+        double[] matrixC = matrices[2];
+
+        MatrixKernels.initMatrices(matrixA, matrixB, matrixC, dimensions);
+
+        long start = startTimer();
+
+        MatrixKernels.multBlock(matrixA, matrixB, matrixC, dimensions, bkSize);
+
+        long end = stopTimer();
+
+        verify(null, matrixA, matrixB, matrixC, dimensions);
+
+        return (end - start) / 1e9;
+    }
+
+
+    private static double OnMultBlockLine(Integer dimensions, Integer bkSize)
+    {
+
+        double[][] matrices = reusableMatrices(dimensions);
+        double[] matrixA = matrices[0];
+        double[] matrixB = matrices[1];
+        double[] matrixC = matrices[2];
+
+        MatrixKernels.initMatrices(matrixA, matrixB, matrixC, dimensions);
+
+        long start = startTimer();
+
+        MatrixKernels.multBlockLine(matrixA, matrixB, matrixC, dimensions, bkSize);
+
+        long end = stopTimer();
+
+        verify(null, matrixA, matrixB, matrixC, dimensions);
+
+        return (end - start) / 1e9;
+    }
+
+
+    private static double OnMultParallel(Integer dimensions, Integer numThreads, ParallelLoop loop)
+    {
+        double[][] matrices = reusableMatrices(dimensions);
+        double[] matrixA = matrices[0];
+        double[] matrixB = matrices[1];
+        double[] matrixC = matrices[2];
+
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+
+        initMatrices(matrixA, matrixB, matrixC, dimensions);
+
+        long start = startTimer();
+
+        MatrixKernels.multParallel(pool, loop, matrixA, matrixB, matrixC, dimensions);
+
+        long end = stopTimer();
+
+        verify(pool, matrixA, matrixB, matrixC, dimensions);
+
+        shutdownPool(pool);
+
+        return (end - start) / 1e9;
+    }
+
+
+    private static double OnMultLineParallel(Integer dimensions, Integer numThreads, ParallelLoop loop)
+    {
+        double[][] matrices = reusableMatrices(dimensions);
+        double[] matrixA = matrices[0];
+        double[] matrixB = matrices[1];
+        double[] matrixC = matrices[2];
+
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+
+        initMatrices(matrixA, matrixB, matrixC, dimensions);
+
+        long start = startTimer();
+
+        MatrixKernels.multLineParallel(pool, loop, matrixA, matrixB, matrixC, dimensions);
+
+        long end = stopTimer();
+
+        verify(pool, matrixA, matrixB, matrixC, dimensions);
+
+        shutdownPool(pool);
+
+        return (end - start) / 1e9;
+    }
+
+
+    private static double OnMultBlockParallel(Integer dimensions, Integer bkSize, Integer numThreads, ParallelLoop loop)
+    {
+        double[][] matrices = reusableMatrices(dimensions);
+        double[] matrixA = matrices[0];
+        double[] matrixB = matrices[1];
+        double[] matrixC = matrices[2];
+
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+
+        initMatrices(matrixA, matrixB, matrixC, dimensions);
+
+        long start = startTimer();
+
+        MatrixKernels.multBlockParallel(pool, loop, matrixA, matrixB, matrixC, dimensions, bkSize);
+
+        long end = stopTimer();
+
+        verify(pool, matrixA, matrixB, matrixC, dimensions);
+
+        shutdownPool(pool);
+
+        return (end - start) / 1e9;
+    }
+
+
+    private static double OnMultBlockLineParallel(Integer dimensions, Integer bkSize, Integer numThreads, ParallelLoop loop)
+    {
+        double[][] matrices = reusableMatrices(dimensions);
+        double[] matrixA = matrices[0];
+        double[] matrixB = matrices[1];
+        double[] matrixC = matrices[2];
+
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+
+        initMatrices(matrixA, matrixB, matrixC, dimensions);
+
+        long start = startTimer();
+
+        MatrixKernels.multBlockLineParallel(pool, loop, matrixA, matrixB, matrixC, dimensions, bkSize);
+
+        long end = stopTimer();
+
+        verify(pool, matrixA, matrixB, matrixC, dimensions);
+
+        shutdownPool(pool);
+
+        return (end - start) / 1e9;
+    }
+
+    private static double OnMultLineSimd(Integer dimensions, Integer numThreads)
+    {
+        double[][] matrices = reusableMatrices(dimensions);
+        double[] matrixA = matrices[0];
+        double[] matrixB = matrices[1];
+        double[] matrixC = matrices[2];
+
+        ForkJoinPool pool = numThreads > 1 ? new ForkJoinPool(numThreads) : null;
+
+        initMatrices(matrixA, matrixB, matrixC, dimensions);
+
+        long start = startTimer();
+
+        if (pool == null)
+            MatrixKernels.multLineSimd(matrixA, matrixB, matrixC, dimensions);
+        else
+            MatrixKernels.multLineSimdParallel(pool, matrixA, matrixB, matrixC, dimensions);
+
+        long end = stopTimer();
+
+        verify(pool, matrixA, matrixB, matrixC, dimensions);
+
+        if (pool != null)
+            shutdownPool(pool);
+
+        return (end - start) / 1e9;
+    }
+
+
+    private static double OnMultBlockLineSimd(Integer dimensions, Integer bkSize, Integer numThreads)
+    {
+        double[][] matrices = reusableMatrices(dimensions);
+        double[] matrixA = matrices[0];
+        double[] matrixB = matrices[1];
+        double[] matrixC = matrices[2];
+
+        ForkJoinPool pool = numThreads > 1 ? new ForkJoinPool(numThreads) : null;
+
+        initMatrices(matrixA, matrixB, matrixC, dimensions);
+
+        long start = startTimer();
+
+        if (pool == null)
+            MatrixKernels.multBlockLineSimd(matrixA, matrixB, matrixC, dimensions, bkSize);
+        else
+            MatrixKernels.multBlockLineSimdParallel(pool, matrixA, matrixB, matrixC, dimensions, bkSize);
+
+        long end = stopTimer();
+
+        verify(pool, matrixA, matrixB, matrixC, dimensions);
+
+        if (pool != null)
+            shutdownPool(pool);
+
+        return (end - start) / 1e9;
+    }
+
+    // Inline block multiplication with the kernel KernelFactory compiled for bkSize and
+    // unroll; the first call for a configuration compiles it before the timer starts
+    private static double OnMultBlockLineSpecialized(Integer dimensions, Integer bkSize, Integer unroll, Integer numThreads)
+    {
+        double[][] matrices = reusableMatrices(dimensions);
+        double[] matrixA = matrices[0];
+        double[] matrixB = matrices[1];
+        double[] matrixC = matrices[2];
+
+        KernelFactory.BlockKernel kernel = KernelFactory.specialized(bkSize, unroll);
+
+        ForkJoinPool pool = numThreads > 1 ? new ForkJoinPool(numThreads) : null;
+
+        initMatrices(matrixA, matrixB, matrixC, dimensions);
+
+        long start = startTimer();
+
+        KernelFactory.multiply(pool, kernel, matrixA, matrixB, matrixC, dimensions, bkSize);
+
+        long end = stopTimer();
+
+        verify(pool, matrixA, matrixB, matrixC, dimensions);
+
+        if (pool != null)
+            shutdownPool(pool);
+
+        return (end - start) / 1e9;
+    }
+
+    private static double OnMultPacked(Integer dimensions, Integer mc, Integer kc, Integer nc, Integer numThreads, ParallelLoop loop)
+    {
+        double[][] matrices = reusableMatrices(dimensions);
+        double[] matrixA = matrices[0];
+        double[] matrixB = matrices[1];
+        double[] matrixC = matrices[2];
+
+        MatrixKernels.initMatrices(matrixA, matrixB, matrixC, dimensions);
+
+        ForkJoinPool pool = numThreads > 1 ? new ForkJoinPool(numThreads) : null;
+
+        long start = startTimer();
+
+        if (pool == null)
+            PackedGemm.multiply(matrixA, dimensions, matrixB, dimensions, matrixC, dimensions,
+                    dimensions, dimensions, dimensions, mc, kc, nc);
+        else
+            PackedGemm.multiplyParallel(pool, loop, matrixA, dimensions, matrixB, dimensions, matrixC, dimensions,
+                    dimensions, dimensions, dimensions, mc, kc, nc);
+
+        long end = stopTimer();
+
+        verify(pool, matrixA, matrixB, matrixC, dimensions);
+
+        if (pool != null)
+            shutdownPool(pool);
+
+        return (end - start) / 1e9;
+    }
+
+    private static double OnMultStrassen(Integer dimensions, Integer cutoff, Integer bkSize, Integer numThreads)
+    {
+        double[][] matrices = reusableMatrices(dimensions);
+        double[] matrixA = matrices[0];
+        double[] matrixB = matrices[1];
+        double[] matrixC = matrices[2];
+
+        MatrixKernels.initMatrices(matrixA, matrixB, matrixC, dimensions);
+
+        ForkJoinPool pool = numThreads > 1 ? new ForkJoinPool(numThreads) : null;
+
+        long start = startTimer();
+
+        Strassen.multiply(pool, matrixA, matrixB, matrixC, dimensions, cutoff, bkSize);
+
+        long end = stopTimer();
+
+        verify(pool, matrixA, matrixB, matrixC, dimensions);
+
+        if (pool != null)
+            shutdownPool(pool);
+
+        return (end - start) / 1e9;
+    }
+
+    // Runs kernel op of the off-heap menu on three 64-byte aligned segments of a shared arena,
+    // freed as soon as the run is over
+    private static double OnMultOffHeap(Integer dimensions, Integer op, Integer bkSize, Integer numThreads, ParallelLoop loop)
+    {
+        long n = dimensions;
+
+        try (Arena arena = Arena.ofShared())
+        {
+            MemorySegment matrixA = OffHeapKernels.allocate(arena, n);
+            MemorySegment matrixB = OffHeapKernels.allocate(arena, n);
+            MemorySegment matrixC = OffHeapKernels.allocate(arena, n);
+
+            ForkJoinPool pool = numThreads > 1 ? new ForkJoinPool(numThreads) : null;
+
+            // the first write to each page of the segments, so with a pool it lands on the
+            // NUMA node of the thread that computes that band
+            long initStart = System.nanoTime();
+            if (pool == null)
+                OffHeapKernels.initMatrices(matrixA, matrixB, matrixC, n);
+            else
+                OffHeapKernels.initMatricesParallel(pool, matrixA, matrixB, matrixC, n, op == 3 || op == 4 || op == 7 ? bkSize : 1);
+            lastInitTime = (System.nanoTime() - initStart) / 1e9;
+
+            long start = startTimer();
+
+            switch (op)
+            {
+                case 1:
+                    if (pool == null) OffHeapKernels.mult(matrixA, matrixB, matrixC, n);
+                    else OffHeapKernels.multParallel(pool, loop, matrixA, matrixB, matrixC, n);
+                    break;
+                case 2:
+                    if (pool == null) OffHeapKernels.multLine(matrixA, matrixB, matrixC, n);
+                    else OffHeapKernels.multLineParallel(pool, loop, matrixA, matrixB, matrixC, n);
+                    break;
+                case 3:
+                    if (pool == null) OffHeapKernels.multBlock(matrixA, matrixB, matrixC, n, bkSize);
+                    else OffHeapKernels.multBlockParallel(pool, loop, matrixA, matrixB, matrixC, n, bkSize);
+                    break;
+                case 4:
+                    if (pool == null) OffHeapKernels.multBlockLine(matrixA, matrixB, matrixC, n, bkSize);
+                    else OffHeapKernels.multBlockLineParallel(pool, loop, matrixA, matrixB, matrixC, n, bkSize);
+                    break;
+                case 5:
+                    if (pool == null) OffHeapKernels.multLineSimd(matrixA, matrixB, matrixC, n);
+                    else OffHeapKernels.multLineSimdParallel(pool, matrixA, matrixB, matrixC, n);
+                    break;
+                case 6:
+                    PackedGemm.multiply(pool, matrixA, matrixB, matrixC, n, PackedGemm.DEFAULT_MC, PackedGemm.DEFAULT_KC, PackedGemm.DEFAULT_NC);
+                    break;
+                case 7:
+                    if (pool == null) OffHeapKernels.multBlockLineSimd(matrixA, matrixB, matrixC, n, bkSize);
+                    else OffHeapKernels.multBlockLineSimdParallel(pool, matrixA, matrixB, matrixC, n, bkSize);
+                    break;
+                default:
+                    System.out.println("Invalid Input");
+                    if (pool != null)
+                        shutdownPool(pool);
+                    return 0;
+            }
+
+            long end = stopTimer();
+
+            verify(pool, matrixA, matrixB, matrixC, n);
+
+            if (pool != null)
+                shutdownPool(pool);
+
+            return (end - start) / 1e9;
+        }
+    }
+
+    // cblas_dgemm of the installed BLAS on the usual initial values, in off-heap segments as
+    // OnMultOffHeap. numThreads goes to the library's own thread pool; only the call is timed.
+    private static double OnMultNativeBlas(Integer dimensions, Integer numThreads)
+    {
+        long n = dimensions;
+
+        try (Arena arena = Arena.ofShared())
+        {
+            MemorySegment matrixA = OffHeapKernels.allocate(arena, n);
+            MemorySegment matrixB = OffHeapKernels.allocate(arena, n);
+            MemorySegment matrixC = OffHeapKernels.allocate(arena, n);
+
+            OffHeapKernels.initMatrices(matrixA, matrixB, matrixC, n);
+
+            NativeBlas.setThreads(numThreads);
+
+            long start = startTimer();
+
+            NativeBlas.dgemm(false, false, dimensions, dimensions, dimensions, 1.0, matrixA, dimensions,
+                    matrixB, dimensions, 0.0, matrixC, dimensions);
+
+            long end = stopTimer();
+
+            verify(null, matrixA, matrixB, matrixC, n);
+
+            return (end - start) / 1e9;
+        }
+    }
+
+    // GEMM on an M x K op(A) of ones and a K x N op(B) with rows p + 1, the rectangular
+    // version of the usual initial values, stored transposed when asked to. C starts at 1
+    // so beta has something to scale. The transposes are part of the timed region.
+    private static double OnMultGemm(Integer m, Integer n, Integer k, boolean transA, boolean transB,
+                                     double alpha, double beta, Integer bkSize, Integer numThreads)
+    {
+        double[] matrixA = new double[m * k];
+        double[] matrixB = new double[k * n];
+        double[] matrixC = new double[m * n];
+
+        Arrays.fill(matrixA, 1.0);
+        Arrays.fill(matrixC, 1.0);
+        for (int p = 0; p < k; p++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                matrixB[transB ? j * k + p : p * n + j] = (double) p + 1.0;
+            }
+        }
+
+        ForkJoinPool pool = numThreads > 1 ? new ForkJoinPool(numThreads) : null;
+
+        long start = startTimer();
+
+        Gemm.gemm(pool, transA, transB, m, n, k, alpha, matrixA, transA ? m : k, matrixB, transB ? k : n,
+                beta, matrixC, n, bkSize);
+
+        long end = stopTimer();
+
+        if (pool != null)
+            shutdownPool(pool);
+
+        return (end - start) / 1e9;
+    }
+
+    // Non-zeros of C of the last SpGEMM run, for the menu; -1 after an SpMM run
+    private static int lastSparseNonZeros = -1;
+
+    // A is a random CSR matrix with the given density; B is the usual dense B for SpMM, or
+    // another random CSR matrix for SpGEMM. Building the matrices is not timed.
+    private static double OnMultSparse(Integer dimensions, double density, boolean sparseB, Integer numThreads)
+    {
+        SparseKernels.Csr matrixA = SparseKernels.random(dimensions, dimensions, density, 1);
+
+        ForkJoinPool pool = numThreads > 1 ? new ForkJoinPool(numThreads) : null;
+        long start, end;
+        lastSparseNonZeros = -1;
+
+        if (sparseB)
+        {
+            SparseKernels.Csr matrixB = SparseKernels.random(dimensions, dimensions, density, 2);
+
+            start = startTimer();
+
+            SparseKernels.Csr matrixC = SparseKernels.spgemm(pool, matrixA, matrixB);
+
+            end = stopTimer();
+
+            lastSparseNonZeros = matrixC.nonZeros();
+        }
+        else
+        {
+            double[][] matrices = reusableMatrices(dimensions);
+            double[] matrixB = matrices[1];
+            double[] matrixC = matrices[2];
+
+            MatrixKernels.initMatrices(matrices[0], matrixB, matrixC, dimensions);
+
+            start = startTimer();
+
+            SparseKernels.spmm(pool, matrixA, matrixB, matrixC, dimensions);
+
+            end = stopTimer();
+        }
+
+        if (pool != null)
+            shutdownPool(pool);
+
+        return (end - start) / 1e9;
+    }
+
+    private static double OnMultFloat(Integer dimensions, Integer op, Integer bkSize, Integer numThreads, ParallelLoop loop)
+    {
+        return runFloat(dimensions, op, bkSize, numThreads, loop, false)[0];
+    }
+
+    // Runs kernel op of the single/mixed precision menu and returns {time, max relative error},
+    // the error against a double reference (FloatKernels.maxRelativeError) only when measured,
+    // NaN otherwise. Ops 1-6 keep every matrix in float; 7 and 8 multiply float A and B into a
+    // double C.
+    private static double[] runFloat(Integer dimensions, Integer op, Integer bkSize, Integer numThreads, ParallelLoop loop, boolean measureError)
+    {
+        float[] matrixA = new float[dimensions * dimensions];
+        float[] matrixB = new float[dimensions * dimensions];
+        float[] matrixC = new float[op >= 7 ? 0 : dimensions * dimensions];
+        double[] mixedC = new double[op >= 7 ? dimensions * dimensions : 0];
+
+        if (op >= 7)
+            FloatKernels.initInputs(matrixA, matrixB, dimensions);
+        else
+            FloatKernels.initMatrices(matrixA, matrixB, matrixC, dimensions);
+
+        ForkJoinPool pool = numThreads > 1 ? new ForkJoinPool(numThreads) : null;
+
+        long start = startTimer();
+
+        switch (op)
+        {
+            case 1:
+                if (pool == null) FloatKernels.mult(matrixA, matrixB, matrixC, dimensions);
+                else FloatKernels.multParallel(pool, loop, matrixA, matrixB, matrixC, dimensions);
+                break;
+            case 2:
+                if (pool == null) FloatKernels.multLine(matrixA, matrixB, matrixC, dimensions);
+                else FloatKernels.multLineParallel(pool, loop, matrixA, matrixB, matrixC, dimensions);
+                break;
+            case 3:
+                if (pool == null) FloatKernels.multBlock(matrixA, matrixB, matrixC, dimensions, bkSize);
+                else FloatKernels.multBlockParallel(pool, loop, matrixA, matrixB, matrixC, dimensions, bkSize);
+                break;
+            case 4:
+                if (pool == null) FloatKernels.multBlockLine(matrixA, matrixB, matrixC, dimensions, bkSize);
+                else FloatKernels.multBlockLineParallel(pool, loop, matrixA, matrixB, matrixC, dimensions, bkSize);
+                break;
+            case 5:
+                if (pool == null) FloatKernels.multLineSimd(matrixA, matrixB, matrixC, dimensions);
+                else FloatKernels.multLineSimdParallel(pool, matrixA, matrixB, matrixC, dimensions);
+                break;
+            case 6:
+                if (pool == null) FloatKernels.multBlockLineSimd(matrixA, matrixB, matrixC, dimensions, bkSize);
+                else FloatKernels.multBlockLineSimdParallel(pool, matrixA, matrixB, matrixC, dimensions, bkSize);
+                break;
+            case 7:
+                if (pool == null) FloatKernels.multBlockMixed(matrixA, matrixB, mixedC, dimensions, bkSize);
+                else FloatKernels.multBlockMixedParallel(pool, matrixA, matrixB, mixedC, dimensions, bkSize);
+                break;
+            case 8:
+                if (pool == null) FloatKernels.multBlockLineMixed(matrixA, matrixB, mixedC, dimensions, bkSize, true);
+                else FloatKernels.multBlockLineMixedParallel(pool, matrixA, matrixB, mixedC, dimensions, bkSize, true);
+                break;
+            default:
+                System.out.println("Invalid Input");
+        }
+
+        long end = stopTimer();
+
+        if (pool != null)
+            shutdownPool(pool);
+
+        double error = Double.NaN;
+        if (measureError)
+            error = op >= 7 ? FloatKernels.maxRelativeError(matrixA, matrixB, mixedC, dimensions)
+                    : FloatKernels.maxRelativeError(matrixA, matrixB, matrixC, dimensions);
+        return new double[] {(end - start) / 1e9, error};
+    }
+
+    // Runs the whole autotuned configuration (kernel, block size, threads and loop)
+    private static double OnMultTuned(Integer dimensions, Autotuner.Config config)
+    {
+        double[][] matrices = reusableMatrices(dimensions);
+        double[] matrixA = matrices[0];
+        double[] matrixB = matrices[1];
+        double[] matrixC = matrices[2];
+
+        ForkJoinPool pool = config.threads > 1 ? new ForkJoinPool(config.threads) : null;
+
+        initMatrices(matrixA, matrixB, matrixC, dimensions);
+
+        long start = startTimer();
+
+        config.run(pool, matrixA, matrixB, matrixC, dimensions);
+
+        long end = stopTimer();
+
+        verify(pool, matrixA, matrixB, matrixC, dimensions);
+
+        if (pool != null)
+            shutdownPool(pool);
+
+        return (end - start) / 1e9;
+    }
+
+    // Rounds of Freivalds' check after every kernel that leaves a row-major C, 0 for none
+    // (the verify=R argument)
+    private static int verifyRounds;
+    // Result of the check of the last run, null when it was not checked since startRun
+    private static Freivalds.Result lastVerification;
+    // functionType of every recorded run that failed the check
+    private static final List<String> failedVerifications = new ArrayList<>();
+
+    // Freivalds' check of C = A * B after the timer has stopped, on pool, or on the common
+    // pool for the serial kernels. A failure is printed here and counted by record.
+    private static void verify(ForkJoinPool pool, double[] matrixA, double[] matrixB, double[] matrixC, int n)
+    {
+        if (verifyRounds <= 0)
+            return;
+
+        lastVerification = Freivalds.verify(pool != null ? pool : ForkJoinPool.commonPool(),
+                matrixA, matrixB, matrixC, n, verifyRounds, System.nanoTime());
+
+        if (!lastVerification.passed)
+            System.out.printf("Verification FAILED: C != A * B for n = %d (relative residual %.3g in round %d)%n",
+                    n, lastVerification.maxRelativeResidual, lastVerification.rounds);
+    }
+
+    // verify of off-heap matrices, read in place
+    private static void verify(ForkJoinPool pool, MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n)
+    {
+        if (verifyRounds <= 0)
+            return;
+
+        lastVerification = Freivalds.verify(pool != null ? pool : ForkJoinPool.commonPool(),
+                matrixA, matrixB, matrixC, n, verifyRounds, System.nanoTime());
+
+        if (!lastVerification.passed)
+            System.out.printf("Verification FAILED: C != A * B for n = %d (relative residual %.3g in round %d)%n",
+                    n, lastVerification.maxRelativeResidual, lastVerification.rounds);
+    }
+
+    // Seconds the last initMatrices took, 0 when the run has not called it since startRun
+    private static double lastInitTime;
+
+    // MatrixKernels.initMatrices, timed into lastInitTime. The heap arrays are zeroed by the
+    // JVM on the allocating thread and then reused, so filling them from the pool would not
+    // decide where their pages live; the off-heap runs (OnMultOffHeap) are first-touched by
+    // their pool instead.
+    private static void initMatrices(double[] matrixA, double[] matrixB, double[] matrixC, int n)
+    {
+        long start = System.nanoTime();
+
+        MatrixKernels.initMatrices(matrixA, matrixB, matrixC, n);
+
+        lastInitTime = (System.nanoTime() - start) / 1e9;
+    }
+
+    // A, B and C of the last size, shared by the double OnMult* wrappers so the repeated runs of
+    // a configuration reuse three arrays instead of allocating three new n^2 ones each.
+    // Softly referenced, so the GC can still take them back for the float, off-heap and
+    // out-of-core runs.
+    private static SoftReference<double[][]> reusable = new SoftReference<>(null);
+
+    // the first values of C left by the last product in the reused matrices
+    private static void printResultRow(int dimensions)
+    {
+        double[][] matrices = reusable.get();
+        if (matrices == null || matrices[2].length != dimensions * dimensions)
+            return;
+
+        System.out.println("Result Matrix: ");
+        for (int j = 0; j < Math.min(10, dimensions); j++)
+            System.out.println(matrices[2][j]);
+    }
+
+    private static double[][] reusableMatrices(int dimensions)
+    {
+        double[][] matrices = reusable.get();
+        if (matrices != null && matrices[0].length == dimensions * dimensions)
+            return matrices;
+
+        // drop the old size before allocating the new one
+        reusable.clear();
+        matrices = new double[][] {new double[dimensions * dimensions], new double[dimensions * dimensions], new double[dimensions * dimensions]};
+        reusable = new SoftReference<>(matrices);
+        return matrices;
+    }
+
+    // count independent size x size products through GemmEngine.multiplyBatch
+    private static double OnMultBatched(Integer size, Integer count, Integer numThreads)
+    {
+        double[] matrixA = new double[count * size * size];
+        double[] matrixB = new double[count * size * size];
+        double[] matrixC = new double[count * size * size];
+
+        // the usual initial values in every matrix of the batch, C is already zero
+        for (int batch = 0; batch < count; batch++)
+        {
+            for (int i = 0; i < size; i++)
+            {
+                for (int j = 0; j < size; j++)
+                {
+                    matrixA[(batch * size + i) * size + j] = 1.0;
+                    matrixB[(batch * size + i) * size + j] = (double) i + 1.0;
+                }
+            }
+        }
+
+        ForkJoinPool pool = numThreads > 1 ? new ForkJoinPool(numThreads) : null;
+        GemmEngine engine = new GemmEngine(pool, size);
+
+        long start = startTimer();
+
+        engine.multiplyBatch(count, size, size, size, matrixA, size * size, matrixB, size * size, matrixC, size * size);
+
+        long end = stopTimer();
+
+        if (pool != null)
+            shutdownPool(pool);
+
+        return (end - start) / 1e9;
+    }
+
+    // Writes A and B to temporary files in directory, multiplies them tile by tile into a
+    // third file and deletes all three. Only the multiply is timed, the time the compute
+    // thread spent waiting for tiles is printed next to it. A and B are dropped from the
+    // page cache first, where they cannot be that wait is only the reads from memory.
+    private static double OnMultOutOfCore(Integer dimensions, Integer tileSize, Integer bkSize, boolean tiled, Path directory) throws IOException
+    {
+        int layout = tiled ? tileSize : 0;
+
+        Path pathA = Files.createTempFile(directory, "matrixA", ".bin");
+        Path pathB = Files.createTempFile(directory, "matrixB", ".bin");
+        Path pathC = Files.createTempFile(directory, "matrixC", ".bin");
+
+        try
+        {
+            OutOfCore.create(pathA, dimensions, layout, (i, j) -> 1.0);
+            OutOfCore.create(pathB, dimensions, layout, (i, j) -> (double) i + 1.0);
+
+            boolean cold = OutOfCore.dropCache(pathA) & OutOfCore.dropCache(pathB);
+
+            startTimer();
+            OutOfCore.Stats stats = OutOfCore.multiply(pathA, pathB, pathC, tileSize, bkSize);
+            stopTimer();
+
+            System.out.printf("Compute: %.3f seconds, I/O wait: %.3f seconds%s%n", stats.computeTime, stats.ioWaitTime,
+                    cold ? "" : " (inputs still in the page cache)");
+
+            return stats.totalTime;
+        }
+        finally
+        {
+            Files.deleteIfExists(pathA);
+            Files.deleteIfExists(pathB);
+            Files.deleteIfExists(pathC);
+        }
+    }
+
+    // Seconds of the last OnMultMorton spent converting to and from the Morton layout, for the menu
+    private static double lastMortonConversionTime;
+
+    // Row-major in and out like the other kernels, so the timed region includes the
+    // conversions to and from the Morton layout; their share is kept in lastMortonConversionTime.
+    private static double OnMultMorton(Integer dimensions, Integer numThreads)
+    {
+        double[][] matrices = reusableMatrices(dimensions);
+        double[] matrixA = matrices[0];
+        double[] matrixB = matrices[1];
+        double[] matrixC = matrices[2];
+
+        double[] mortonA = Morton.allocate(dimensions);
+        double[] mortonB = Morton.allocate(dimensions);
+        double[] mortonC = Morton.allocate(dimensions);
+
+        ForkJoinPool pool = numThreads > 1 ? new ForkJoinPool(numThreads) : null;
+
+        initMatrices(matrixA, matrixB, matrixC, dimensions);
+
+        long start = startTimer();
+
+        Morton.toMorton(pool, matrixA, mortonA, dimensions);
+        Morton.toMorton(pool, matrixB, mortonB, dimensions);
+
+        long multiplyStart = System.nanoTime();
+
+        Morton.multiply(pool, mortonA, mortonB, mortonC, dimensions);
+
+        long multiplyEnd = System.nanoTime();
+
+        Morton.fromMorton(pool, mortonC, matrixC, dimensions);
+
+        long end = stopTimer();
+
+        verify(pool, matrixA, matrixB, matrixC, dimensions);
+
+        if (pool != null)
+            shutdownPool(pool);
+
+        lastMortonConversionTime = ((multiplyStart - start) + (end - multiplyEnd)) / 1e9;
+
+        return (end - start) / 1e9;
+    }
+
+    // Blocked LU of a random n x n matrix. A x = b with b = A * (1, ..., 1) is solved after
+    // the timer stops and the error of x is printed next to the solve time.
+    private static double OnLUFactorization(Integer dimensions, Integer bkSize, Integer numThreads)
+    {
+        double[][] matrices = reusableMatrices(dimensions);
+        double[] matrixA = matrices[0];
+        double[] factors = matrices[1];
+
+        SplittableRandom random = new SplittableRandom(dimensions);
+        double[] b = new double[dimensions];
+        for (int i = 0; i < dimensions; i++)
+        {
+            for (int j = 0; j < dimensions; j++)
+            {
+                matrixA[i * dimensions + j] = random.nextDouble(-1.0, 1.0);
+                b[i] += matrixA[i * dimensions + j];
+            }
+        }
+        System.arraycopy(matrixA, 0, factors, 0, dimensions * dimensions);
+
+        ForkJoinPool pool = numThreads > 1 ? new ForkJoinPool(numThreads) : null;
+
+        long start = startTimer();
+
+        BlockedLU.Factorization lu = BlockedLU.factor(pool, factors, dimensions, bkSize);
+
+        long end = stopTimer();
+
+        if (pool != null)
+            shutdownPool(pool);
+
+        long solveStart = System.nanoTime();
+        double[] x = lu.solve(b);
+        long solveEnd = System.nanoTime();
+
+        double error = 0;
+        for (double value : x)
+            error = Math.max(error, Math.abs(value - 1.0));
+        System.out.printf("Solve: %.4f seconds, max |x - 1| = %.3g%n", (solveEnd - solveStart) / 1e9, error);
+
+        return (end - start) / 1e9;
+    }
+
+    // Chain of random matrices of shapes dims multiplied in the best order (MatrixChain.plan)
+    // or left to right. Filling the inputs and planning are not timed.
+    private static double OnMultChain(int[] dims, Integer bkSize, Integer numThreads, boolean bestOrder)
+    {
+        SplittableRandom random = new SplittableRandom(dims.length);
+        double[][] matrices = new double[dims.length - 1][];
+        for (int i = 0; i < matrices.length; i++)
+        {
+            matrices[i] = new double[dims[i] * dims[i + 1]];
+            for (int e = 0; e < matrices[i].length; e++)
+                matrices[i][e] = random.nextDouble();
+        }
+
+        MatrixChain.Plan plan = bestOrder ? MatrixChain.plan(dims) : MatrixChain.leftToRight(dims);
+
+        ForkJoinPool pool = numThreads > 1 ? new ForkJoinPool(numThreads) : null;
+        MatrixChain chain = new MatrixChain(pool, bkSize);
+
+        long start = startTimer();
+
+        chain.multiply(plan, matrices);
+
+        long end = stopTimer();
+
+        if (pool != null)
+            shutdownPool(pool);
+
+        return (end - start) / 1e9;
+    }
+
+    // Cannon's algorithm on gridSize x gridSize worker JVMs. The time of the workers'
+    // kernels and of the communication around them is printed next to the total.
+    private static Distributed.Stats OnMultDistributed(Integer dimensions, Integer gridSize, Integer bkSize, boolean bindNodes) throws IOException
+    {
+        double[][] matrices = reusableMatrices(dimensions);
+        double[] matrixA = matrices[0];
+        double[] matrixB = matrices[1];
+        double[] matrixC = matrices[2];
+
+        MatrixKernels.initMatrices(matrixA, matrixB, matrixC, dimensions);
+
+        startTimer();
+        Distributed.Stats stats = Distributed.multiply(matrixA, matrixB, matrixC, dimensions, gridSize, bkSize, bindNodes);
+        stopTimer();
+
+        verify(null, matrixA, matrixB, matrixC, dimensions);
+
+        System.out.printf("Compute: %.3f seconds, communication: %.3f seconds (shifts %.3f)%n",
+                stats.computeTime, stats.commTime, stats.shiftTime);
+
+        return stats;
+    }
+
+    // functionType column of docs/data_java.csv. Serial runs keep the plain C++ names
+    // ("Normal Mult", "Inline Mult", ...) so the graphic_data_scripts filters still match,
+    // block size and thread count are appended only when they apply.
+    static String functionType(String name, int blockSize, int numThreads)
+    {
+        if (blockSize > 0 && numThreads > 0)
+            return name + " (bk " + blockSize + ", " + numThreads + " threads)";
+        if (blockSize > 0)
+            return name + " (bk " + blockSize + ")";
+        if (numThreads > 0)
+            return name + " (" + numThreads + " threads)";
+        return name;
+    }
+
+    // Hardware counters and the JFR event of one recorded run, opened before the OnMult* call
+    // so the threads of its pool inherit the counters
+    private static final class Run
+    {
+        final PerfCounters counters = PerfCounters.open();
+        final KernelRunEvent event = new KernelRunEvent();
+    }
+
+    // The recorded run between startRun and record, null outside the test cases
+    private static Run currentRun;
+
+    private static Run startRun()
+    {
+        lastInitTime = 0;
+        lastVerification = null;
+
+        currentRun = new Run();
+        return currentRun;
+    }
+
+    // Start and end of the timed region of every OnMult*: the counters and the JFR event of
+    // the recorded run cover the same region as the time, not the allocation, the
+    // initialisation or the check around it. Return System.nanoTime().
+    private static long startTimer()
+    {
+        if (currentRun != null)
+        {
+            currentRun.event.begin();
+            currentRun.counters.start();
+        }
+        return System.nanoTime();
+    }
+
+    private static long stopTimer()
+    {
+        long end = System.nanoTime();
+        if (currentRun != null)
+        {
+            currentRun.counters.pause();
+            currentRun.event.end();
+        }
+        return end;
+    }
+
+    // Instrumentation around the OnMult* calls of the test cases, called as
+    //     point.add(record(file, countersFile, startRun(), name, blockSize, numThreads, n, OnMultX(...)))
+    // Arguments are evaluated left to right, so the counters are open before the kernel
+    // creates its pool; they count between its startTimer and stopTimer and are read here,
+    // after the pool has terminated. Writes the time to
+    // docs/data_java.csv, time, MFLOPS and counters to docs/counters_java.csv (-1 for the
+    // counters this machine does not have) and commits one KernelRunEvent. Returns realTime.
+    private static double record(FileWriter file, FileWriter countersFile, Run run, String name, int blockSize, int numThreads,
+                                 int matrixSize, double realTime) throws IOException
+    {
+        return record(file, countersFile, run, name, blockSize, numThreads, matrixSize, 2.0 * matrixSize * matrixSize * matrixSize, realTime);
+    }
+
+    // Same, for the rectangular runs whose operation count is not 2 n^3
+    private static double record(FileWriter file, FileWriter countersFile, Run run, String name, int blockSize, int numThreads,
+                                 int matrixSize, double flops, double realTime) throws IOException
+    {
+        long[] counts = run.counters.stop();
+        run.counters.close();
+        currentRun = null;
+
+        String functionType = functionType(name, blockSize, numThreads);
+        double mflops = flops / realTime / 1e6;
+
+        writeToCSVFile(file, functionType, matrixSize, realTime);
+
+        if (lastVerification != null && !lastVerification.passed)
+            failedVerifications.add(functionType + " n=" + matrixSize);
+
+        StringBuilder row = new StringBuilder(functionType + "," + matrixSize + "," + realTime + "," + mflops);
+        for (long count : counts)
+            row.append(",").append(count);
+        row.append(",").append(lastInitTime);
+        countersFile.write(row + "\n");
+        countersFile.flush();
+
+        if (roofline != null)
+        {
+            // LLC misses are lines brought from memory; without the counter, the cache model
+            long llcMisses = counts[PerfCounters.Event.LLC_MISSES.ordinal()];
+            double bytes = llcMisses > 0 ? llcMisses * 64.0 : Roofline.trafficModel(name, matrixSize, blockSize, roofline.llcBytes);
+            double intensity = flops / bytes;
+            double gflops = flops / realTime / 1e9;
+            double attainable = roofline.attainable(intensity, numThreads);
+
+            rooflineFile.write(functionType + "," + matrixSize + "," + realTime + "," + gflops + "," + intensity + ","
+                    + (llcMisses > 0 ? "measured" : "model") + "," + attainable + "," + 100 * gflops / attainable + "\n");
+            rooflineFile.flush();
+        }
+
+        if (run.event.shouldCommit())
+        {
+            run.event.functionType = functionType;
+            run.event.matrixSize = matrixSize;
+            run.event.blockSize = blockSize;
+            run.event.numThreads = numThreads;
+            run.event.realTime = realTime;
+            run.event.mflops = mflops;
+            run.event.cycles = counts[PerfCounters.Event.CYCLES.ordinal()];
+            run.event.instructions = counts[PerfCounters.Event.INSTRUCTIONS.ordinal()];
+            run.event.l1Misses = counts[PerfCounters.Event.L1_DCM.ordinal()];
+            run.event.l2Misses = counts[PerfCounters.Event.L2_DCM.ordinal()];
+            run.event.llcMisses = counts[PerfCounters.Event.LLC_MISSES.ordinal()];
+            run.event.initTime = lastInitTime;
+            run.event.commit();
+        }
+
+        return realTime;
+    }
+
+    // Waits for the workers to exit as well, so their hardware counts have been added to
+    // the thread that started them when record reads the counters
+    private static void shutdownPool(ForkJoinPool pool)
+    {
+        pool.shutdown();
+        try
+        {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Auxiliary function to write one row of docs/data_java.csv (functionType,MatrixSize,Real Time),
+    // also used for docs/accuracy_java.csv (functionType,MatrixSize,Max Relative Error)
+    static void writeToCSVFile(FileWriter file, String functionType, int matrixSize, double realTime) throws IOException
+    {
+        file.write(functionType + "," + matrixSize + "," + realTime + "\n");
+        file.flush();
+    }
+
+    // "MatrixProduct test [precision=0.02] [minRuns=5] [maxRuns=30] [checkpoint=...]"
+    private static void handleTestCases(String[] args){
+
+        // Every configuration runs once untimed so the JIT has compiled the kernel, then
+        // repeats until its confidence interval is tight (see SweepRunner). A killed sweep
+        // resumes from docs/checkpoint_java.tsv. For statistically sound numbers use the
+        // JMH harness in bench/ (make bench_java).
+        try{
+            SweepRunner sweep;
+            try
+            {
+                Map<Path, String> outputs = new LinkedHashMap<>();
+                outputs.put(Path.of("docs/data_java.csv"), DATA_HEADER);
+                outputs.put(Path.of("docs/counters_java.csv"), COUNTERS_HEADER);
+                outputs.put(Path.of("docs/roofline_java.csv"), ROOFLINE_HEADER);
+                outputs.put(Path.of("docs/distributed_java.csv"), DISTRIBUTED_HEADER);
+                outputs.put(Path.of("docs/accuracy_java.csv"), ACCURACY_HEADER);
+                sweep = new SweepRunner(outputs, args);
+            }
+            catch (IllegalArgumentException | IllegalStateException e)
+            {
+                System.out.println("Test cases not started: " + e.getMessage());
+                return;
+            }
+            if (sweep.resumed() > 0)
+                System.out.println("Resuming the test cases, " + sweep.resumed() + " points already done");
+
+            FileWriter file = new FileWriter("docs/data_java.csv", true);
+
+            FileWriter countersFile = new FileWriter("docs/counters_java.csv", true);
+
+            // every run is also placed on the roofline, measured first if it never was
+            roofline = Roofline.load(Roofline.DEFAULT_PROFILE);
+            if (roofline == null)
+            {
+                roofline = Roofline.measure(Runtime.getRuntime().availableProcessors());
+                Roofline.save(roofline, Roofline.DEFAULT_PROFILE);
+            }
+            rooflineFile = new FileWriter("docs/roofline_java.csv", true);
+
+            
+            if (sweep.includes("normal"))
+            {
+                System.out.print("== Normal multiplication tests ==");
+
+                for (int n = 600; n<=3000; n+=400)
+                {
+                    SweepRunner.Point point = sweep.point(functionType("Normal Mult", -1, -1), n);
+                    if (point.pending())
+                        OnMult(n);
+                    while (point.repeat()) {
+                        point.add(record(file, countersFile, startRun(), "Normal Mult", -1, -1, n, OnMult(n)));
+                    }
+                }
+
+                System.out.println("Complete");
+            }
+            
+
+            if (sweep.includes("inline"))
+            {
+                System.out.print("== Inline multiplication tests ==");
+
+                for (int n = 600; n<=3000; n+=400)
+                {
+                    SweepRunner.Point point = sweep.point(functionType("Inline Mult", -1, -1), n);
+                    if (point.pending())
+                        OnMultLine(n);
+                    while (point.repeat()) {
+                        point.add(record(file, countersFile, startRun(), "Inline Mult", -1, -1, n, OnMultLine(n)));
+                    }
+                }
+
+                System.out.println("Complete");
+            }
+
+            
+            if (sweep.includes("block"))
+            {
+                System.out.print("== Block multiplication tests ==");
+
+                for (int n = 4096; n<=10240; n+=2048)
+                {
+                    for (int bksize = 128; bksize<=512; bksize+= bksize)
+                    {
+                        SweepRunner.Point point = sweep.point(functionType("Block Mult", bksize, -1), n);
+                        if (point.pending())
+                            OnMultBlock(n, bksize);
+                        while (point.repeat()) {
+                            point.add(record(file, countersFile, startRun(), "Block Mult", bksize, -1, n, OnMultBlock(n, bksize)));
+                        }
+                    }
+                }
+
+                System.out.println("Complete");
+            }
+
+            if (sweep.includes("blockLine"))
+            {
+                System.out.print("== Block Line multiplication tests ==");
+
+                for (int n = 4096; n<=10240; n+=2048)
+                {
+                    for (int bksize = 128; bksize<=512; bksize+= bksize)
+                    {
+                        SweepRunner.Point point = sweep.point(functionType("Inline Block Mult", bksize, -1), n);
+                        if (point.pending())
+                            OnMultBlockLine(n, bksize);
+                        while (point.repeat()) {
+                            point.add(record(file, countersFile, startRun(), "Inline Block Mult", bksize, -1, n, OnMultBlockLine(n, bksize)));
+                        }
+                    }
+                }
+
+                System.out.println("Complete");
+            }
+
+            if (sweep.includes("specialized") && KernelFactory.available())
+            {
+                System.out.print("== Specialized Block Line multiplication tests ==");
+
+                for (int n = 4096; n<=10240; n+=2048)
+                {
+                    for (int bksize = 128; bksize<=512; bksize+= bksize)
+                    {
+                        for (int unroll : KernelFactory.UNROLL_FACTORS)
+                        {
+                            String name = "Specialized Inline Block Mult unroll " + unroll;
+
+                            SweepRunner.Point point = sweep.point(functionType(name, bksize, -1), n);
+                            if (point.pending())
+                                OnMultBlockLineSpecialized(n, bksize, unroll, 1);
+                            while (point.repeat()) {
+                                point.add(record(file, countersFile, startRun(), name, bksize, -1, n, OnMultBlockLineSpecialized(n, bksize, unroll, 1)));
+                            }
+                        }
+                    }
+                }
+
+                System.out.println("Complete");
+            }
+
+            if (sweep.includes("simd") && MatrixKernels.SIMD_AVAILABLE)
+            {
+                System.out.print("== SIMD multiplication tests ==");
+
+                for (int n = 600; n<=3000; n+=400)
+                {
+                    SweepRunner.Point point = sweep.point(functionType("SIMD Inline Mult", -1, -1), n);
+                    if (point.pending())
+                        OnMultLineSimd(n, 1);
+                    while (point.repeat()) {
+                        point.add(record(file, countersFile, startRun(), "SIMD Inline Mult", -1, -1, n, OnMultLineSimd(n, 1)));
+                    }
+                }
+
+                for (int n = 4096; n<=10240; n+=2048)
+                {
+                    for (int bksize = 128; bksize<=512; bksize+= bksize)
+                    {
+                        SweepRunner.Point point = sweep.point(functionType("SIMD Inline Block Mult", bksize, -1), n);
+                        if (point.pending())
+                            OnMultBlockLineSimd(n, bksize, 1);
+                        while (point.repeat()) {
+                            point.add(record(file, countersFile, startRun(), "SIMD Inline Block Mult", bksize, -1, n, OnMultBlockLineSimd(n, bksize, 1)));
+                        }
+                    }
+                }
+
+                System.out.println("Complete");
+            }
+
+            if (sweep.includes("packed"))
+            {
+                System.out.print("== Packed panel multiplication tests ==");
+
+                for (int n = 4096; n<=10240; n+=2048)
+                {
+                    SweepRunner.Point point = sweep.point(functionType("Packed Mult", -1, -1), n);
+                    if (point.pending())
+                        OnMultPacked(n, PackedGemm.DEFAULT_MC, PackedGemm.DEFAULT_KC, PackedGemm.DEFAULT_NC, 1, ParallelLoop.INNER_MOST);
+                    while (point.repeat()) {
+                        point.add(record(file, countersFile, startRun(), "Packed Mult", -1, -1, n,
+                                OnMultPacked(n, PackedGemm.DEFAULT_MC, PackedGemm.DEFAULT_KC, PackedGemm.DEFAULT_NC, 1, ParallelLoop.INNER_MOST)));
+                    }
+                }
+
+                System.out.println("Complete");
+            }
+
+            if (sweep.includes("strassen"))
+            {
+                System.out.print("== Strassen multiplication tests ==");
+
+                for (int n = 4096; n<=10240; n+=2048)
+                {
+                    for (int bksize = 128; bksize<=512; bksize+= bksize)
+                    {
+                        SweepRunner.Point point = sweep.point(functionType("Strassen Mult", bksize, -1), n);
+                        if (point.pending())
+                            OnMultStrassen(n, Strassen.DEFAULT_CUTOFF, bksize, 1);
+                        while (point.repeat()) {
+                            point.add(record(file, countersFile, startRun(), "Strassen Mult", bksize, -1, n, OnMultStrassen(n, Strassen.DEFAULT_CUTOFF, bksize, 1)));
+                        }
+                    }
+                }
+
+                System.out.println("Complete");
+            }
+
+            if (sweep.includes("offHeap"))
+            {
+                System.out.print("== Off-heap multiplication tests ==");
+
+                for (int n = 4096; n<=10240; n+=2048)
+                {
+                    for (int bksize = 128; bksize<=512; bksize+= bksize)
+                    {
+                        SweepRunner.Point point = sweep.point(functionType("Off-heap Inline Block Mult", bksize, -1), n);
+                        if (point.pending())
+                            OnMultOffHeap(n, 4, bksize, 1, ParallelLoop.OUTER);
+                        while (point.repeat()) {
+                            point.add(record(file, countersFile, startRun(), "Off-heap Inline Block Mult", bksize, -1, n, OnMultOffHeap(n, 4, bksize, 1, ParallelLoop.OUTER)));
+                        }
+                    }
+                }
+
+                System.out.println("Complete");
+            }
+
+            if (sweep.includes("gemm"))
+            {
+                System.out.print("== GEMM tests ==");
+
+                // the conventional algorithm with B transposed first, so the dot products run with unit stride
+                for (int n = 600; n<=3000; n+=400)
+                {
+                    SweepRunner.Point point = sweep.point(functionType("Transposed Normal Mult", -1, -1), n);
+                    if (point.pending())
+                        OnMultGemm(n, n, n, false, false, 1.0, 0.0, n, 1);
+                    while (point.repeat()) {
+                        point.add(record(file, countersFile, startRun(), "Transposed Normal Mult", -1, -1, n, OnMultGemm(n, n, n, false, false, 1.0, 0.0, n, 1)));
+                    }
+                }
+
+                // rank-256 update (K = 256) and a thin C (N = 256), MatrixSize is the other two dimensions
+                for (int n = 4096; n<=10240; n+=2048)
+                {
+                    SweepRunner.Point point = sweep.point(functionType("GEMM K 256", Gemm.DEFAULT_BLOCK_SIZE, -1), n);
+                    if (point.pending())
+                    {
+                        OnMultGemm(n, n, 256, false, false, 1.0, 1.0, Gemm.DEFAULT_BLOCK_SIZE, 1);
+                        OnMultGemm(n, 256, n, false, false, 1.0, 1.0, Gemm.DEFAULT_BLOCK_SIZE, 1);
+                    }
+                    while (point.repeat()) {
+                        point.add(record(file, countersFile, startRun(), "GEMM K 256", Gemm.DEFAULT_BLOCK_SIZE, -1, n, 2.0 * n * n * 256,
+                                OnMultGemm(n, n, 256, false, false, 1.0, 1.0, Gemm.DEFAULT_BLOCK_SIZE, 1)));
+                        point.add(record(file, countersFile, startRun(), "GEMM N 256", Gemm.DEFAULT_BLOCK_SIZE, -1, n, 2.0 * n * 256 * n,
+                                OnMultGemm(n, 256, n, false, false, 1.0, 1.0, Gemm.DEFAULT_BLOCK_SIZE, 1)));
+                    }
+                }
+
+                System.out.println("Complete");
+            }
+
+            // serial and the thread counts of the parallel tests
+            int[] sweepThreads = {1, 4, 8, 12, 24};
+
+            if (sweep.includes("batched"))
+            {
+                System.out.print("== Batched multiplication tests ==");
+
+                // 4096 independent small products, MatrixSize is the size of each one
+
+                for (int n = 8; n<=64; n+=n)
+                {
+                    for (int threads : sweepThreads)
+                    {
+                        SweepRunner.Point point = sweep.point(functionType("Batched Mult", -1, threads == 1 ? -1 : threads), n);
+                        if (point.pending())
+                            OnMultBatched(n, 4096, threads);
+                        while (point.repeat()) {
+                            point.add(record(file, countersFile, startRun(), "Batched Mult", -1, threads == 1 ? -1 : threads, n, 2.0 * n * n * n * 4096,
+                                    OnMultBatched(n, 4096, threads)));
+                        }
+                    }
+                }
+
+                System.out.println("Complete");
+            }
+
+            if (sweep.includes("sparse"))
+            {
+                System.out.print("== Sparse multiplication tests ==");
+
+                // same sizes as the Normal/Inline tests, to find the density where sparse overtakes dense
+                double[] densities = {0.001, 0.01, 0.05, 0.2};
+
+                for (int n = 600; n<=3000; n+=400)
+                {
+                    for (double density : densities)
+                    {
+                        for (int threads : sweepThreads)
+                        {
+                            SweepRunner.Point point = sweep.point(functionType("SpMM Mult density " + density, -1, threads == 1 ? -1 : threads), n);
+                            if (point.pending())
+                            {
+                                OnMultSparse(n, density, false, threads);
+                                OnMultSparse(n, density, true, threads);
+                            }
+                            while (point.repeat()) {
+                                point.add(record(file, countersFile, startRun(), "SpMM Mult density " + density, -1, threads == 1 ? -1 : threads, n,
+                                        OnMultSparse(n, density, false, threads)));
+                                point.add(record(file, countersFile, startRun(), "SpGEMM Mult density " + density, -1, threads == 1 ? -1 : threads, n,
+                                        OnMultSparse(n, density, true, threads)));
+                            }
+                        }
+                    }
+                }
+
+                System.out.println("Complete");
+            }
+
+            if (sweep.includes("morton"))
+            {
+                System.out.print("== Morton order multiplication tests ==");
+
+                // no block size: the same runs as the Block tests without a bksize to tune
+                for (int n = 4096; n<=10240; n+=2048)
+                {
+                    for (int threads : sweepThreads)
+                    {
+                        SweepRunner.Point point = sweep.point(functionType("Morton Mult", -1, threads == 1 ? -1 : threads), n);
+                        if (point.pending())
+                            OnMultMorton(n, threads);
+                        while (point.repeat()) {
+                            point.add(record(file, countersFile, startRun(), "Morton Mult", -1, threads == 1 ? -1 : threads, n, OnMultMorton(n, threads)));
+                        }
+                    }
+                }
+
+                System.out.println("Complete");
+            }
+
+            if (sweep.includes("nativeBlas"))
+            {
+                System.out.print("== Native BLAS multiplication tests ==");
+
+                // the vendor dgemm under the same schema, skipped when no library is installed
+                if (NativeBlas.available())
+                {
+                    for (int n = 4096; n<=10240; n+=2048)
+                    {
+                        for (int threads : sweepThreads)
+                        {
+                            SweepRunner.Point point = sweep.point(functionType("Native BLAS Mult", -1, threads == 1 ? -1 : threads), n);
+                            if (point.pending())
+                                OnMultNativeBlas(n, threads);
+                            while (point.repeat()) {
+                                point.add(record(file, countersFile, startRun(), "Native BLAS Mult", -1, threads == 1 ? -1 : threads, n, OnMultNativeBlas(n, threads)));
+                            }
+                        }
+                    }
+
+                    System.out.println("Complete");
+                }
+                else
+                {
+                    System.out.println("Skipped (no BLAS library)");
+                }
+            }
+
+            if (sweep.includes("chain"))
+            {
+                System.out.print("== Matrix chain multiplication tests ==");
+
+                // MatrixSize is the number of matrices, random shapes between 100 and 1000
+                for (int length : new int[] {5, 10, 20})
+                {
+                    int[] dims = chainDimensions(length, length);
+                    double bestFlops = MatrixChain.plan(dims).flops();
+                    double leftToRightFlops = MatrixChain.leftToRight(dims).flops();
+
+                    for (int threads : sweepThreads)
+                    {
+                        int recordThreads = threads == 1 ? -1 : threads;
+
+                        SweepRunner.Point point = sweep.point(functionType("Chain Mult best order", 128, recordThreads), length);
+                        if (point.pending())
+                        {
+                            OnMultChain(dims, 128, threads, true);
+                            OnMultChain(dims, 128, threads, false);
+                        }
+                        while (point.repeat()) {
+                            point.add(record(file, countersFile, startRun(), "Chain Mult best order", 128, recordThreads, length, bestFlops,
+                                    OnMultChain(dims, 128, threads, true)));
+                            point.add(record(file, countersFile, startRun(), "Chain Mult left to right", 128, recordThreads, length, leftToRightFlops,
+                                    OnMultChain(dims, 128, threads, false)));
+                        }
+                    }
+                }
+
+                System.out.println("Complete");
+            }
+
+            if (sweep.includes("lu"))
+            {
+                System.out.print("== LU factorization tests ==");
+
+                // MFLOPS over the 2/3 n^3 of the factorisation
+                for (int n = 4096; n<=10240; n+=2048)
+                {
+                    for (int threads : sweepThreads)
+                    {
+                        int recordThreads = threads == 1 ? -1 : threads;
+
+                        SweepRunner.Point point = sweep.point(functionType("LU Factorization", 128, recordThreads), n);
+                        if (point.pending())
+                            OnLUFactorization(n, 128, threads);
+                        while (point.repeat()) {
+                            point.add(record(file, countersFile, startRun(), "LU Factorization", 128, recordThreads, n, BlockedLU.flops(n),
+                                    OnLUFactorization(n, 128, threads)));
+                        }
+                    }
+                }
+
+                System.out.println("Complete");
+            }
+
+            if (sweep.includes("outOfCore"))
+            {
+                System.out.print("== Out-of-core multiplication tests ==");
+
+                Path directory = Path.of("docs");
+
+                for (int n = 4096; n<=10240; n+=2048)
+                {
+                    for (int bksize = 128; bksize<=512; bksize+= bksize)
+                    {
+                        SweepRunner.Point point = sweep.point(functionType("Out-of-core Inline Block Mult", bksize, -1), n);
+                        if (point.pending())
+                            OnMultOutOfCore(n, 2048, bksize, true, directory);
+                        while (point.repeat()) {
+                            point.add(record(file, countersFile, startRun(), "Out-of-core Inline Block Mult", bksize, -1, n, OnMultOutOfCore(n, 2048, bksize, true, directory)));
+                        }
+                    }
+                }
+
+                System.out.println("Complete");
+            }
+
+            if (sweep.includes("distributed"))
+            {
+                System.out.print("== Distributed multiplication tests ==");
+
+                // 1, 4 and 9 worker processes; the split of every run goes to docs/distributed_java.csv
+                FileWriter distributedFile = new FileWriter("docs/distributed_java.csv", true);
+
+                for (int n = 4096; n<=10240; n+=2048)
+                {
+                    for (int grid = 1; grid <= 3; grid++)
+                    {
+                        String name = "Distributed Cannon Mult " + grid * grid + " workers";
+
+                        SweepRunner.Point point = sweep.point(functionType(name, 256, -1), n);
+                        if (point.pending())
+                            OnMultDistributed(n, grid, 256, false);
+                        while (point.repeat()) {
+                            Run run = startRun();
+                            Distributed.Stats stats = OnMultDistributed(n, grid, 256, false);
+                            point.add(record(file, countersFile, run, name, 256, -1, n, stats.totalTime));
+                            distributedFile.write(functionType(name, 256, -1) + "," + n + "," + stats.totalTime + ","
+                                    + stats.computeTime + "," + stats.commTime + "," + stats.shiftTime + "\n");
+                            distributedFile.flush();
+                        }
+                    }
+                }
+
+                distributedFile.close();
+
+                System.out.println("Complete");
+            }
+
+            if (sweep.includes("float"))
             {
-                for (int bksize = 128; bksize<=512; bksize+= bksize)
+                System.out.print("== Single/mixed precision multiplication tests ==");
+
+                FileWriter accuracyFile = new FileWriter("docs/accuracy_java.csv", true);
+
+                // the warmup run also gives the error, which is the same for every run
+                for (int op : new int[] {1, 2, 5})
+                {
+                    for (int n = 600; n<=3000; n+=400)
+                    {
+                        SweepRunner.Point point = sweep.point(functionType(FLOAT_FUNCTION_TYPES[op - 1], -1, -1), n);
+                        if (point.pending())
+                            writeToCSVFile(accuracyFile, functionType(FLOAT_FUNCTION_TYPES[op - 1], -1, -1), n, runFloat(n, op, 0, 1, ParallelLoop.OUTER, true)[1]);
+                        while (point.repeat()) {
+                            point.add(record(file, countersFile, startRun(), FLOAT_FUNCTION_TYPES[op - 1], -1, -1, n, OnMultFloat(n, op, 0, 1, ParallelLoop.OUTER)));
+                        }
+                    }
+                }
+
+                for (int op : new int[] {3, 4, 6, 7, 8})
                 {
-                    double totalTime = 0;
-                    for(int i=0; i<=30; i++) {
-                        totalTime += OnMultBlock(n, bksize);
+                    for (int n = 4096; n<=10240; n+=2048)
+                    {
+                        for (int bksize = 128; bksize<=512; bksize+= bksize)
+                        {
+                            SweepRunner.Point point = sweep.point(functionType(FLOAT_FUNCTION_TYPES[op - 1], bksize, -1), n);
+                            if (point.pending())
+                                writeToCSVFile(accuracyFile, functionType(FLOAT_FUNCTION_TYPES[op - 1], bksize, -1), n, runFloat(n, op, bksize, 1, ParallelLoop.OUTER, true)[1]);
+                            while (point.repeat()) {
+                                point.add(record(file, countersFile, startRun(), FLOAT_FUNCTION_TYPES[op - 1], bksize, -1, n, OnMultFloat(n, op, bksize, 1, ParallelLoop.OUTER)));
+                            }
+                        }
+                    }
+                }
+
+                accuracyFile.close();
+
+                System.out.println("Complete");
+            }
 
-                        file.write("Block Mult " + n + " " + bksize + " " + totalTime);
+            if (sweep.includes("autotuned") && tunedConfig(4096) != null)
+            {
+                System.out.print("== Autotuned multiplication tests ==");
+
+                for (int n = 4096; n<=10240; n+=2048)
+                {
+                    Autotuner.Config config = tunedConfig(n);
+                    String name = "Autotuned " + config.kernel.functionType;
+                    int threads = config.threads > 1 ? config.threads : -1;
+
+                    SweepRunner.Point point = sweep.point(functionType(name, config.bkSize, threads), n);
+                    if (point.pending())
+                        OnMultTuned(n, config);
+                    while (point.repeat()) {
+                        point.add(record(file, countersFile, startRun(), name, config.bkSize, threads, n, OnMultTuned(n, config)));
                     }
-                    file.write("Block Mult " + n + " " + bksize + " " + totalTime/30 + "\n");
                 }
+
+                System.out.println("Complete");
             }
 
-            System.out.println("Complete");
+            int[] numThreads = {4, 8, 12, 24};
+
+            if (sweep.includes("parallel"))
+            {
+                System.out.print("== Parallel multiplication tests ==");
+
+                for (int threads : numThreads)
+                {
+                    for (int n = 600; n<=3000; n+=400)
+                    {
+                        SweepRunner.Point point = sweep.point(functionType("Parallelized Normal Mult", -1, threads), n);
+                        if (point.pending())
+                        {
+                            OnMultParallel(n, threads, ParallelLoop.OUTER);
+                            OnMultLineParallel(n, threads, ParallelLoop.OUTER);
+                            OnMultParallel(n, threads, ParallelLoop.INNER_MOST);
+                            OnMultLineParallel(n, threads, ParallelLoop.INNER_MOST);
+                        }
+                        while (point.repeat()) {
+                            point.add(record(file, countersFile, startRun(), "Parallelized Normal Mult", -1, threads, n, OnMultParallel(n, threads, ParallelLoop.OUTER)));
+                            point.add(record(file, countersFile, startRun(), "Parallelized Inline Mult", -1, threads, n, OnMultLineParallel(n, threads, ParallelLoop.OUTER)));
+                            point.add(record(file, countersFile, startRun(), "Inner Most Loop Parallelization", -1, threads, n, OnMultParallel(n, threads, ParallelLoop.INNER_MOST)));
+                            point.add(record(file, countersFile, startRun(), "Inner Most Loop Parallelization Inline", -1, threads, n, OnMultLineParallel(n, threads, ParallelLoop.INNER_MOST)));
+                        }
+                    }
+                }
 
-            System.out.print("== Block Line multiplication tests ==");
+                System.out.println("Complete");
+            }
 
-            for (int n = 4096; n<=10240; n+=2048)
+            if (sweep.includes("parallel"))
             {
-                for (int bksize = 128; bksize<=512; bksize+= bksize)
+                System.out.print("== Parallel block multiplication tests ==");
+
+                for (int threads : numThreads)
                 {
-                    for(int i=0; i<=30; i++) {
-                        double time = OnMultBlockLine(n, bksize);
+                    for (int n = 4096; n<=10240; n+=2048)
+                    {
+                        for (int bksize = 128; bksize<=512; bksize+= bksize)
+                        {
+                            SweepRunner.Point point = sweep.point(functionType("Parallelized Block Mult", bksize, threads), n);
+                            if (point.pending())
+                            {
+                                OnMultBlockParallel(n, bksize, threads, ParallelLoop.OUTER);
+                                OnMultBlockLineParallel(n, bksize, threads, ParallelLoop.OUTER);
+                            }
+                            while (point.repeat()) {
+                                point.add(record(file, countersFile, startRun(), "Parallelized Block Mult", bksize, threads, n, OnMultBlockParallel(n, bksize, threads, ParallelLoop.OUTER)));
+                                point.add(record(file, countersFile, startRun(), "Parallelized Inline Block Mult", bksize, threads, n, OnMultBlockLineParallel(n, bksize, threads, ParallelLoop.OUTER)));
+                            }
+                        }
+                    }
+                }
+
+                System.out.println("Complete");
+            }
+
+            if (sweep.includes("parallelPacked"))
+            {
+                System.out.print("== Parallel packed panel multiplication tests ==");
 
-                        file.write("Inline Block Mult " + n + " " + bksize + " " + time);
+                for (int threads : numThreads)
+                {
+                    for (int n = 4096; n<=10240; n+=2048)
+                    {
+                        SweepRunner.Point point = sweep.point(functionType("Parallelized Packed Mult", -1, threads), n);
+                        if (point.pending())
+                            OnMultPacked(n, PackedGemm.DEFAULT_MC, PackedGemm.DEFAULT_KC, PackedGemm.DEFAULT_NC, threads, ParallelLoop.INNER_MOST);
+                        while (point.repeat()) {
+                            point.add(record(file, countersFile, startRun(), "Parallelized Packed Mult", -1, threads, n,
+                                    OnMultPacked(n, PackedGemm.DEFAULT_MC, PackedGemm.DEFAULT_KC, PackedGemm.DEFAULT_NC, threads, ParallelLoop.INNER_MOST)));
+                        }
                     }
                 }
+
+                System.out.println("Complete");
             }
 
-            System.out.println("Complete");
+            if (sweep.includes("parallelStrassen"))
+            {
+                System.out.print("== Parallel Strassen multiplication tests ==");
+
+                for (int threads : numThreads)
+                {
+                    for (int n = 4096; n<=10240; n+=2048)
+                    {
+                        SweepRunner.Point point = sweep.point(functionType("Parallelized Strassen Mult", 128, threads), n);
+                        if (point.pending())
+                            OnMultStrassen(n, Strassen.DEFAULT_CUTOFF, 128, threads);
+                        while (point.repeat()) {
+                            point.add(record(file, countersFile, startRun(), "Parallelized Strassen Mult", 128, threads, n, OnMultStrassen(n, Strassen.DEFAULT_CUTOFF, 128, threads)));
+                        }
+                    }
+                }
+
+                System.out.println("Complete");
+            }
             
             file.close();
+            countersFile.close();
+            rooflineFile.close();
+            rooflineFile = null;
+            roofline = null;
+            sweep.complete();
+
+            if (verifyRounds > 0)
+            {
+                if (failedVerifications.isEmpty())
+                    System.out.println("Verification: every checked run passed " + verifyRounds + " rounds of Freivalds' check");
+                else
+                    System.out.println("Verification FAILED for " + failedVerifications.size() + " runs: " + failedVerifications);
+            }
         }
         catch (IOException e){
             System.out.println("An error occurred.");
@@ -0,0 +1,218 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Morton (Z-order) layout and a cache-oblivious recursive multiplication on it.
+//
+// An n x n matrix is zero-padded to t * 2^d with the smallest d that makes the tile side
+// t <= MAX_TILE, cut into t x t tiles stored row-major, and the tiles are stored in
+// Z-order: tile (ti, tj) is at position interleave(ti, tj). Every quadrant of every level
+// of the recursion is then one contiguous range, a quarter of its parent's, so the
+// multiplication halves the problem until three quadrants fit in whatever cache level
+// it has reached, at every level, without a bkSize to tune.
+//
+// The four quadrants of C are independent, so the first PARALLEL_DEPTH levels fork one
+// task per quadrant of C, each doing its two products one after the other.
+final class Morton
+{
+    // Largest leaf tile, 32 x 32 doubles = 8 KB, three tiles fit in L1
+    static final int MAX_TILE = 32;
+    // 4^3 = 64 tasks
+    static final int PARALLEL_DEPTH = 3;
+
+    private Morton()
+    {
+    }
+
+    // Side t of the leaf tiles of an n x n matrix
+    static int tileSize(int n)
+    {
+        int levels = 0;
+        while ((n + (1 << levels) - 1) >> levels > MAX_TILE)
+            levels++;
+        return (n + (1 << levels) - 1) >> levels;
+    }
+
+    // Side of the padded matrix, t * 2^d
+    static int paddedSize(int n)
+    {
+        int tile = tileSize(n);
+        int tiles = 1;
+        while (tile * tiles < n)
+            tiles *= 2;
+        return tile * tiles;
+    }
+
+    // Zero-filled matrix in the Morton layout of an n x n matrix
+    static double[] allocate(int n)
+    {
+        int padded = paddedSize(n);
+        return new double[padded * padded];
+    }
+
+    // Row-major n x n src to its Morton layout, padding included. pool may be null.
+    static void toMorton(ForkJoinPool pool, double[] src, double[] dst, int n)
+    {
+        int tile = tileSize(n);
+        int tiles = paddedSize(n) / tile;
+
+        if (pool == null)
+        {
+            for (int ti = 0; ti < tiles; ti++)
+                convertTileRow(src, dst, n, tile, tiles, ti, true);
+            return;
+        }
+
+        // every task owns a row of tiles
+        MatrixKernels.parallelFor(pool, 0, tiles, ti -> convertTileRow(src, dst, n, tile, tiles, ti, true));
+    }
+
+    // Morton layout src back to the row-major n x n dst, dropping the padding. pool may be null.
+    static void fromMorton(ForkJoinPool pool, double[] src, double[] dst, int n)
+    {
+        int tile = tileSize(n);
+        int tiles = paddedSize(n) / tile;
+
+        if (pool == null)
+        {
+            for (int ti = 0; ti < tiles; ti++)
+                convertTileRow(dst, src, n, tile, tiles, ti, false);
+            return;
+        }
+
+        MatrixKernels.parallelFor(pool, 0, tiles, ti -> convertTileRow(dst, src, n, tile, tiles, ti, false));
+    }
+
+    // C += A * B, all three in the Morton layout of an n x n matrix. pool may be null.
+    static void multiply(ForkJoinPool pool, double[] matrixA, double[] matrixB, double[] matrixC, int n)
+    {
+        int tile = tileSize(n);
+        int padded = paddedSize(n);
+
+        if (pool == null)
+            multiply(matrixA, 0, matrixB, 0, matrixC, 0, padded, tile, PARALLEL_DEPTH);
+        else
+            pool.submit(() -> multiply(matrixA, 0, matrixB, 0, matrixC, 0, padded, tile, 0)).join();
+    }
+
+    // C += A * B for the s x s quadrants at offsets a, b and c. Quadrant (qi, qj) of a
+    // quadrant at offset o is at o + (2 * qi + qj) * (s / 2)^2.
+    private static void multiply(double[] matrixA, int a, double[] matrixB, int b, double[] matrixC, int c,
+                                 int s, int tile, int depth)
+    {
+        if (s == tile)
+        {
+            leaf(matrixA, a, matrixB, b, matrixC, c, tile);
+            return;
+        }
+
+        int h = s / 2;
+        int q = h * h;
+
+        if (depth < PARALLEL_DEPTH)
+        {
+            ForkJoinTask.invokeAll(
+                    ForkJoinTask.adapt(() -> {
+                        multiply(matrixA, a, matrixB, b, matrixC, c, h, tile, depth + 1);
+                        multiply(matrixA, a + q, matrixB, b + 2 * q, matrixC, c, h, tile, depth + 1);
+                    }),
+                    ForkJoinTask.adapt(() -> {
+                        multiply(matrixA, a, matrixB, b + q, matrixC, c + q, h, tile, depth + 1);
+                        multiply(matrixA, a + q, matrixB, b + 3 * q, matrixC, c + q, h, tile, depth + 1);
+                    }),
+                    ForkJoinTask.adapt(() -> {
+                        multiply(matrixA, a + 2 * q, matrixB, b, matrixC, c + 2 * q, h, tile, depth + 1);
+                        multiply(matrixA, a + 3 * q, matrixB, b + 2 * q, matrixC, c + 2 * q, h, tile, depth + 1);
+                    }),
+                    ForkJoinTask.adapt(() -> {
+                        multiply(matrixA, a + 2 * q, matrixB, b + q, matrixC, c + 3 * q, h, tile, depth + 1);
+                        multiply(matrixA, a + 3 * q, matrixB, b + 3 * q, matrixC, c + 3 * q, h, tile, depth + 1);
+                    }));
+            return;
+        }
+
+        // C00 += A00 B00 + A01 B10, C01 += A01 B11 + A00 B01, C11 += A10 B01 + A11 B11,
+        // C10 += A11 B10 + A10 B00: each product shares an operand with the one before
+        multiply(matrixA, a, matrixB, b, matrixC, c, h, tile, depth);
+        multiply(matrixA, a + q, matrixB, b + 2 * q, matrixC, c, h, tile, depth);
+        multiply(matrixA, a + q, matrixB, b + 3 * q, matrixC, c + q, h, tile, depth);
+        multiply(matrixA, a, matrixB, b + q, matrixC, c + q, h, tile, depth);
+        multiply(matrixA, a + 2 * q, matrixB, b + q, matrixC, c + 3 * q, h, tile, depth);
+        multiply(matrixA, a + 3 * q, matrixB, b + 3 * q, matrixC, c + 3 * q, h, tile, depth);
+        multiply(matrixA, a + 3 * q, matrixB, b + 2 * q, matrixC, c + 2 * q, h, tile, depth);
+        multiply(matrixA, a + 2 * q, matrixB, b, matrixC, c + 2 * q, h, tile, depth);
+    }
+
+    // Line multiplication of two row-major tile x tile tiles
+    private static void leaf(double[] matrixA, int a, double[] matrixB, int b, double[] matrixC, int c, int tile)
+    {
+        for (int i = 0; i < tile; i++)
+        {
+            for (int j = 0; j < tile; j++)
+            {
+                double temp = matrixA[a + i * tile + j];
+
+                if (MatrixKernels.SIMD_AVAILABLE)
+                {
+                    VectorKernels.axpy(temp, matrixB, b + j * tile, matrixC, c + i * tile, tile);
+                    continue;
+                }
+                for (int k = 0; k < tile; k++)
+                {
+                    matrixC[c + i * tile + k] += temp * matrixB[b + j * tile + k];
+                }
+            }
+        }
+    }
+
+    // Copies the row of tiles ti between the row-major and the Morton layout, in the
+    // direction given by toMorton. Padding is written as zero in the Morton layout.
+    private static void convertTileRow(double[] rowMajor, double[] morton, int n, int tile, int tiles, int ti, boolean toMorton)
+    {
+        for (int tj = 0; tj < tiles; tj++)
+        {
+            int base = interleave(ti, tj) * tile * tile;
+            int cols = Math.max(0, Math.min(tile, n - tj * tile));
+
+            for (int r = 0; r < tile; r++)
+            {
+                int i = ti * tile + r;
+                int dst = base + r * tile;
+
+                // padding row, or a tile entirely in the padding columns
+                if (i >= n || cols == 0)
+                {
+                    if (toMorton)
+                        Arrays.fill(morton, dst, dst + tile, 0.0);
+                    continue;
+                }
+
+                if (toMorton)
+                {
+                    System.arraycopy(rowMajor, i * n + tj * tile, morton, dst, cols);
+                    Arrays.fill(morton, dst + cols, dst + tile, 0.0);
+                }
+                else
+                {
+                    System.arraycopy(morton, dst, rowMajor, i * n + tj * tile, cols);
+                }
+            }
+        }
+    }
+
+    // Bits of ti and tj interleaved, ti in the odd positions: 0 TL, 1 TR, 2 BL, 3 BR at every level
+    private static int interleave(int ti, int tj)
+    {
+        return spread(ti) << 1 | spread(tj);
+    }
+
+    // 0b1011 -> 0b01000101
+    private static int spread(int x)
+    {
+        x = (x | x << 8) & 0x00ff00ff;
+        x = (x | x << 4) & 0x0f0f0f0f;
+        x = (x | x << 2) & 0x33333333;
+        x = (x | x << 1) & 0x55555555;
+        return x;
+    }
+}
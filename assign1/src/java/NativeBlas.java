@@ -0,0 +1,151 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Path;
+import java.util.Optional;
+
+// cblas_dgemm of a BLAS installed on this machine (OpenBLAS, BLIS, a reference CBLAS),
+// called through the FFM API as the tuned baseline the Java kernels are measured against.
+// The library is -Dblas.library (a name for the dynamic linker or a path) or the first of
+// LIBRARIES the dynamic linker finds. Without one, available() is false and nothing else
+// here may be called, so machines without a BLAS run everything else as before.
+//
+// dgemm reads and writes MemorySegments: JDK 21 downcalls take native memory only, so the
+// matrices live off-heap, as in OffHeapKernels.
+final class NativeBlas
+{
+    private static final String[] LIBRARIES = {
+            "libopenblas.so.0", "libopenblas.so", "libblis.so.4", "libblis.so", "libcblas.so.3", "libcblas.so",
+            "libopenblas.dylib", "libblis.dylib"
+    };
+
+    // CBLAS_ORDER and CBLAS_TRANSPOSE
+    private static final int ROW_MAJOR = 101;
+    private static final int NO_TRANS = 111;
+    private static final int TRANS = 112;
+
+    private static final Linker LINKER = Linker.nativeLinker();
+
+    // Name of the library found, null when there is none
+    private static final String LIBRARY;
+    private static final MethodHandle DGEMM;
+    // openblas_set_num_threads(int) or bli_thread_set_num_threads(dim_t), null when the
+    // library has neither and keeps its own default
+    private static final MethodHandle SET_THREADS;
+
+    static
+    {
+        String library = null;
+        SymbolLookup lookup = null;
+
+        String configured = System.getProperty("blas.library");
+        for (String candidate : configured != null ? new String[] {configured} : LIBRARIES)
+        {
+            lookup = open(candidate);
+            if (lookup != null && lookup.find("cblas_dgemm").isPresent())
+            {
+                library = candidate;
+                break;
+            }
+            lookup = null;
+        }
+
+        if (configured != null && library == null)
+            System.out.println("Warning: no cblas_dgemm in blas.library " + configured);
+
+        LIBRARY = library;
+        DGEMM = lookup == null ? null : LINKER.downcallHandle(lookup.find("cblas_dgemm").get(), FunctionDescriptor.ofVoid(
+                ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT,
+                ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT,
+                ValueLayout.JAVA_DOUBLE, ValueLayout.ADDRESS, ValueLayout.JAVA_INT,
+                ValueLayout.ADDRESS, ValueLayout.JAVA_INT,
+                ValueLayout.JAVA_DOUBLE, ValueLayout.ADDRESS, ValueLayout.JAVA_INT));
+        SET_THREADS = lookup == null ? null : threadsHandle(lookup);
+    }
+
+    private NativeBlas()
+    {
+    }
+
+    static boolean available()
+    {
+        return DGEMM != null;
+    }
+
+    static String library()
+    {
+        return LIBRARY;
+    }
+
+    // Worker threads of the library's own pool, where the library lets it be set
+    static void setThreads(int threads)
+    {
+        if (SET_THREADS == null)
+            return;
+
+        try
+        {
+            if (SET_THREADS.type().parameterType(0) == long.class)
+                SET_THREADS.invokeExact((long) threads);
+            else
+                SET_THREADS.invokeExact(threads);
+        }
+        catch (Throwable e)
+        {
+            throw new IllegalStateException("Could not set the BLAS threads", e);
+        }
+    }
+
+    // C = alpha * op(A) * op(B) + beta * C, row-major, op(A) m x k and op(B) k x n, with
+    // the leading dimensions in elements as in Gemm.gemm
+    static void dgemm(boolean transA, boolean transB, int m, int n, int k, double alpha, MemorySegment a, int lda,
+                      MemorySegment b, int ldb, double beta, MemorySegment c, int ldc)
+    {
+        if (DGEMM == null)
+            throw new IllegalStateException("No BLAS library found");
+
+        try
+        {
+            DGEMM.invokeExact(ROW_MAJOR, transA ? TRANS : NO_TRANS, transB ? TRANS : NO_TRANS, m, n, k,
+                    alpha, a, lda, b, ldb, beta, c, ldc);
+        }
+        catch (Throwable e)
+        {
+            throw new IllegalStateException("cblas_dgemm failed", e);
+        }
+    }
+
+    // Lookup of the library, null when the dynamic linker cannot load it
+    private static SymbolLookup open(String library)
+    {
+        try
+        {
+            // loaded for the life of the JVM
+            return library.contains("/")
+                    ? SymbolLookup.libraryLookup(Path.of(library), Arena.global())
+                    : SymbolLookup.libraryLookup(library, Arena.global());
+        }
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+    }
+
+    private static MethodHandle threadsHandle(SymbolLookup lookup)
+    {
+        Optional<MemorySegment> openblas = lookup.find("openblas_set_num_threads");
+        if (openblas.isPresent())
+            return LINKER.downcallHandle(openblas.get(), FunctionDescriptor.ofVoid(ValueLayout.JAVA_INT));
+
+        // dim_t is 64 bits in the default BLIS build
+        Optional<MemorySegment> blis = lookup.find("bli_thread_set_num_threads");
+        if (blis.isPresent())
+            return LINKER.downcallHandle(blis.get(), FunctionDescriptor.ofVoid(ValueLayout.JAVA_LONG));
+
+        return null;
+    }
+}
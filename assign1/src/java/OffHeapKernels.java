@@ -0,0 +1,389 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.ForkJoinPool;
+
+// The MatrixKernels loops over off-heap storage. Matrices are n x n row-major
+// doubles in a MemorySegment, indexed with long so n * n can go past
+// Integer.MAX_VALUE (n > 46340) and past the size limit of a single Java array.
+// The segments live outside the GC-managed heap and are freed with their Arena.
+// Strassen has no off-heap version: its recursion works on heap scratch quadrants.
+final class OffHeapKernels
+{
+    // Cache line alignment, also the widest vector the Vector API uses
+    static final long ALIGNMENT = 64;
+
+    private static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE;
+
+    // sys/mman.h (Linux)
+    private static final int PROT_READ_WRITE = 0x1 | 0x2;
+    private static final int MAP_PRIVATE_ANONYMOUS = 0x02 | 0x20;
+
+    private static final MethodHandle MMAP;
+    private static final MethodHandle MUNMAP;
+
+    static
+    {
+        MethodHandle mmap = null, munmap = null;
+
+        if (System.getProperty("os.name").equals("Linux"))
+        {
+            try
+            {
+                Linker linker = Linker.nativeLinker();
+                SymbolLookup libc = linker.defaultLookup();
+
+                // void *mmap(void *addr, size_t length, int prot, int flags, int fd, off_t offset)
+                mmap = linker.downcallHandle(libc.find("mmap").orElseThrow(),
+                        FunctionDescriptor.of(ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG,
+                                ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_LONG));
+                munmap = linker.downcallHandle(libc.find("munmap").orElseThrow(),
+                        FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG));
+            }
+            catch (RuntimeException e)
+            {
+                mmap = null;
+            }
+        }
+
+        MMAP = mmap;
+        MUNMAP = munmap;
+    }
+
+    private OffHeapKernels()
+    {
+    }
+
+    // n x n zero-filled matrix owned by arena. Use a shared arena for the parallel kernels.
+    //
+    // On Linux the segment is a fresh anonymous mapping that no thread has touched yet, so
+    // each page is placed on the NUMA node of the thread that first writes it (with a pool,
+    // initMatricesParallel). Arena.allocate zeroes the memory on the calling thread, which
+    // would place every page on its node; it is the fallback elsewhere.
+    static MemorySegment allocate(Arena arena, long n)
+    {
+        long bytes = n * n * DOUBLE.byteSize();
+
+        if (MMAP != null && bytes > 0)
+        {
+            try
+            {
+                MemorySegment pages = (MemorySegment) MMAP.invokeExact(MemorySegment.NULL, bytes, PROT_READ_WRITE, MAP_PRIVATE_ANONYMOUS, -1, 0L);
+                // MAP_FAILED
+                if (pages.address() != -1L)
+                    return pages.reinterpret(bytes, arena, segment -> unmap(segment, bytes));
+            }
+            catch (Throwable t)
+            {
+                // fall back to the arena's own memory
+            }
+        }
+        return arena.allocate(bytes, ALIGNMENT);
+    }
+
+    private static void unmap(MemorySegment segment, long bytes)
+    {
+        try
+        {
+            int unmapped = (int) MUNMAP.invokeExact(segment, bytes);
+        }
+        catch (Throwable t)
+        {
+            // the arena is closing, a mapping that cannot be unmapped is left to process exit
+        }
+    }
+
+    // Same initial values as MatrixKernels.initMatrices
+    static void initMatrices(MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n)
+    {
+        for (long i = 0; i < n; i++)
+        {
+            for (long j = 0; j < n; j++)
+            {
+                matrixA.setAtIndex(DOUBLE, i * n + j, 1.0);
+                matrixB.setAtIndex(DOUBLE, i * n + j, (double) i + 1.0);
+                matrixC.setAtIndex(DOUBLE, i * n + j, 0.0);
+            }
+        }
+    }
+
+    // initMatrices with every band of bandRows rows filled by the pool, split as the OUTER
+    // parallel kernels split C (bandRows = bkSize for the blocked ones, 1 otherwise)
+    static void initMatricesParallel(ForkJoinPool pool, MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n, int bandRows)
+    {
+        MatrixKernels.parallelFor(pool, 0, (int) ((n + bandRows - 1) / bandRows), band -> {
+            long minValueI = Math.min((long) (band + 1) * bandRows, n);
+            for (long i = (long) band * bandRows; i < minValueI; i++)
+            {
+                for (long j = 0; j < n; j++)
+                {
+                    matrixA.setAtIndex(DOUBLE, i * n + j, 1.0);
+                    matrixB.setAtIndex(DOUBLE, i * n + j, (double) i + 1.0);
+                    matrixC.setAtIndex(DOUBLE, i * n + j, 0.0);
+                }
+            }
+        });
+    }
+
+    static double get(MemorySegment matrix, long n, long i, long j)
+    {
+        return matrix.getAtIndex(DOUBLE, i * n + j);
+    }
+
+
+    static void mult(MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n)
+    {
+        multRows(matrixA, matrixB, matrixC, n, 0, n);
+    }
+
+
+    static void multLine(MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n)
+    {
+        multLineRows(matrixA, matrixB, matrixC, n, 0, n);
+    }
+
+
+    static void multBlock(MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n, int bkSize)
+    {
+        for (long bi = 0; bi < n; bi = bi + bkSize)
+        {
+            multBlockRows(matrixA, matrixB, matrixC, n, bkSize, bi, Math.min(bi + bkSize, n));
+        }
+    }
+
+
+    static void multBlockLine(MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n, int bkSize)
+    {
+        for (long bi = 0; bi < n; bi = bi + bkSize)
+        {
+            multBlockLineRows(matrixA, matrixB, matrixC, n, bkSize, bi, Math.min(bi + bkSize, n));
+        }
+    }
+
+
+    // Line multiplication with the SIMD AXPY, scalar when the Vector API is missing
+    static void multLineSimd(MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n)
+    {
+        if (!MatrixKernels.SIMD_AVAILABLE)
+        {
+            multLine(matrixA, matrixB, matrixC, n);
+            return;
+        }
+        VectorKernels.multLineRows(matrixA, matrixB, matrixC, n, 0, n);
+    }
+
+
+    // Inline block multiplication with the SIMD AXPY, scalar when the Vector API is missing
+    static void multBlockLineSimd(MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n, int bkSize)
+    {
+        if (!MatrixKernels.SIMD_AVAILABLE)
+        {
+            multBlockLine(matrixA, matrixB, matrixC, n, bkSize);
+            return;
+        }
+        VectorKernels.multBlockLineRows(matrixA, matrixB, matrixC, n, bkSize, 0, n);
+    }
+
+
+    static void multParallel(ForkJoinPool pool, ParallelLoop loop, MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n)
+    {
+        if (loop == ParallelLoop.OUTER)
+        {
+            MatrixKernels.parallelFor(pool, 0, (int) n, i -> multRows(matrixA, matrixB, matrixC, n, i, i + 1));
+            return;
+        }
+
+        for (long i = 0; i < n; i++)
+        {
+            for (long j = 0; j < n; j++)
+            {
+                final long row = i, col = j;
+                matrixC.setAtIndex(DOUBLE, i * n + j, MatrixKernels.parallelSum(pool, 0, (int) n,
+                        k -> matrixA.getAtIndex(DOUBLE, row * n + k) * matrixB.getAtIndex(DOUBLE, k * n + col)));
+            }
+        }
+    }
+
+
+    static void multLineParallel(ForkJoinPool pool, ParallelLoop loop, MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n)
+    {
+        if (loop == ParallelLoop.OUTER)
+        {
+            MatrixKernels.parallelFor(pool, 0, (int) n, i -> multLineRows(matrixA, matrixB, matrixC, n, i, i + 1));
+            return;
+        }
+
+        for (long i = 0; i < n; i++)
+        {
+            for (long j = 0; j < n; j++)
+            {
+                final long row = i, line = j;
+                final double temp = matrixA.getAtIndex(DOUBLE, i * n + j);
+                MatrixKernels.parallelFor(pool, 0, (int) n, k -> matrixC.setAtIndex(DOUBLE, row * n + k,
+                        matrixC.getAtIndex(DOUBLE, row * n + k) + temp * matrixB.getAtIndex(DOUBLE, line * n + k)));
+            }
+        }
+    }
+
+
+    static void multBlockParallel(ForkJoinPool pool, ParallelLoop loop, MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n, int bkSize)
+    {
+        if (loop == ParallelLoop.OUTER)
+        {
+            MatrixKernels.parallelFor(pool, 0, (int) ((n + bkSize - 1) / bkSize), block -> {
+                long bi = (long) block * bkSize;
+                multBlockRows(matrixA, matrixB, matrixC, n, bkSize, bi, Math.min(bi + bkSize, n));
+            });
+            return;
+        }
+
+        for (long bi = 0; bi < n; bi = bi + bkSize)
+        {
+            final long fromI = bi;
+            MatrixKernels.parallelFor(pool, 0, (int) (Math.min(bi + bkSize, n) - bi),
+                    i -> multBlockRows(matrixA, matrixB, matrixC, n, bkSize, fromI + i, fromI + i + 1));
+        }
+    }
+
+
+    static void multBlockLineParallel(ForkJoinPool pool, ParallelLoop loop, MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n, int bkSize)
+    {
+        if (loop == ParallelLoop.OUTER)
+        {
+            MatrixKernels.parallelFor(pool, 0, (int) ((n + bkSize - 1) / bkSize), block -> {
+                long bi = (long) block * bkSize;
+                multBlockLineRows(matrixA, matrixB, matrixC, n, bkSize, bi, Math.min(bi + bkSize, n));
+            });
+            return;
+        }
+
+        for (long bi = 0; bi < n; bi = bi + bkSize)
+        {
+            final long fromI = bi;
+            MatrixKernels.parallelFor(pool, 0, (int) (Math.min(bi + bkSize, n) - bi),
+                    i -> multBlockLineRows(matrixA, matrixB, matrixC, n, bkSize, fromI + i, fromI + i + 1));
+        }
+    }
+
+
+    static void multLineSimdParallel(ForkJoinPool pool, MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n)
+    {
+        if (!MatrixKernels.SIMD_AVAILABLE)
+        {
+            multLineParallel(pool, ParallelLoop.OUTER, matrixA, matrixB, matrixC, n);
+            return;
+        }
+        MatrixKernels.parallelFor(pool, 0, (int) n, i -> VectorKernels.multLineRows(matrixA, matrixB, matrixC, n, i, i + 1));
+    }
+
+
+    static void multBlockLineSimdParallel(ForkJoinPool pool, MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n, int bkSize)
+    {
+        if (!MatrixKernels.SIMD_AVAILABLE)
+        {
+            multBlockLineParallel(pool, ParallelLoop.OUTER, matrixA, matrixB, matrixC, n, bkSize);
+            return;
+        }
+        MatrixKernels.parallelFor(pool, 0, (int) ((n + bkSize - 1) / bkSize), block -> {
+            long bi = (long) block * bkSize;
+            VectorKernels.multBlockLineRows(matrixA, matrixB, matrixC, n, bkSize, bi, Math.min(bi + bkSize, n));
+        });
+    }
+
+
+    private static void multRows(MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n, long fromI, long toI)
+    {
+        double temp;
+
+        for (long i = fromI; i < toI; i++)
+        {
+            for (long j = 0; j < n; j++)
+            {
+                temp = 0;
+                for (long k = 0; k < n; k++)
+                {
+                    temp += matrixA.getAtIndex(DOUBLE, i * n + k) * matrixB.getAtIndex(DOUBLE, k * n + j);
+                }
+                matrixC.setAtIndex(DOUBLE, i * n + j, temp);
+            }
+        }
+    }
+
+
+    private static void multLineRows(MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n, long fromI, long toI)
+    {
+        double temp;
+
+        for (long i = fromI; i < toI; i++)
+        {
+            for (long j = 0; j < n; j++)
+            {
+                temp = matrixA.getAtIndex(DOUBLE, i * n + j);
+                for (long k = 0; k < n; k++)
+                {
+                    matrixC.setAtIndex(DOUBLE, i * n + k,
+                            matrixC.getAtIndex(DOUBLE, i * n + k) + temp * matrixB.getAtIndex(DOUBLE, j * n + k));
+                }
+            }
+        }
+    }
+
+
+    private static void multBlockRows(MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n, int bkSize, long bi, long minValueI)
+    {
+        double temp;
+
+        for (long bj = 0; bj < n; bj = bj + bkSize)
+        {
+            for (long bk = 0; bk < n; bk = bk + bkSize)
+            {
+                long minValueJ = Math.min(bj + bkSize, n);
+                long minValueK = Math.min(bk + bkSize, n);
+
+                for (long i = bi; i < minValueI; i++)
+                {
+                    for (long j = bj; j < minValueJ; j++)
+                    {
+                        temp = 0;
+                        for (long k = bk; k < minValueK; k++)
+                        {
+                            temp += matrixA.getAtIndex(DOUBLE, i * n + k) * matrixB.getAtIndex(DOUBLE, k * n + j);
+                        }
+                        matrixC.setAtIndex(DOUBLE, i * n + j, matrixC.getAtIndex(DOUBLE, i * n + j) + temp);
+                    }
+                }
+            }
+        }
+    }
+
+
+    private static void multBlockLineRows(MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n, int bkSize, long bi, long minValueI)
+    {
+        for (long bj = 0; bj < n; bj = bj + bkSize)
+        {
+            for (long bk = 0; bk < n; bk = bk + bkSize)
+            {
+                long minValueJ = Math.min(bj + bkSize, n);
+                long minValueK = Math.min(bk + bkSize, n);
+
+                for (long i = bi; i < minValueI; i++)
+                {
+                    for (long j = bj; j < minValueJ; j++)
+                    {
+                        double sum_value = matrixA.getAtIndex(DOUBLE, j + i * n);
+
+                        for (long k = bk; k < minValueK; k++)
+                        {
+                            matrixC.setAtIndex(DOUBLE, k + i * n,
+                                    matrixC.getAtIndex(DOUBLE, k + i * n) + sum_value * matrixB.getAtIndex(DOUBLE, k + j * n));
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,356 @@
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Multiplication of matrices that live in files, for sizes larger than physical memory.
+//
+// File format: a 64-byte header (int magic, int tileSize, long n) followed by n x n
+// native-order doubles. tileSize 0 means plain row-major; otherwise the matrix is stored
+// as row-major tiles of tileSize x tileSize, each tile contiguous and the edge tiles
+// zero-padded, so loading a tile is a single sequential read.
+//
+// The files are memory-mapped whole (64-bit MemorySegments, nothing is read until a
+// tile is touched). C is computed one tile at a time: the A and B tile pairs along k
+// are copied into heap buffers by a background thread, one pair ahead of the pair the
+// OnMultBlockLine tile loop is working on.
+//
+// A file that was just written is still in the page cache, and a tile read from there is
+// a memcpy, not disk I/O. dropCache() evicts it (posix_fadvise DONTNEED) so the I/O wait
+// of the next multiply is measured against the disk.
+final class OutOfCore
+{
+    static final int MAGIC = 0x4D545831;
+    static final long HEADER_BYTES = 64;
+
+    private static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE;
+
+    // fcntl.h (Linux)
+    private static final int O_RDONLY = 0;
+    private static final int POSIX_FADV_DONTNEED = 4;
+
+    private static final MethodHandle OPEN;
+    private static final MethodHandle FADVISE;
+    private static final MethodHandle CLOSE;
+
+    static
+    {
+        MethodHandle open = null, fadvise = null, close = null;
+
+        try
+        {
+            Linker linker = Linker.nativeLinker();
+            SymbolLookup libc = linker.defaultLookup();
+
+            // int open(const char *path, int flags, ...) and int posix_fadvise(int fd, off_t offset, off_t len, int advice)
+            open = linker.downcallHandle(libc.find("open").orElseThrow(),
+                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT));
+            fadvise = linker.downcallHandle(libc.find("posix_fadvise").orElseThrow(),
+                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT));
+            close = linker.downcallHandle(libc.find("close").orElseThrow(),
+                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+        }
+        catch (RuntimeException e)
+        {
+            // no posix_fadvise (not Linux): dropCache() always returns false
+            fadvise = null;
+        }
+
+        OPEN = open;
+        FADVISE = fadvise;
+        CLOSE = close;
+    }
+
+    // Value of element (i, j) when creating a matrix file
+    interface Filler
+    {
+        double value(long i, long j);
+    }
+
+    // Wall time of a multiply split into the time spent computing and the time the
+    // compute thread waited for a tile pair that was not loaded yet
+    static final class Stats
+    {
+        final double totalTime;
+        final double computeTime;
+        final double ioWaitTime;
+
+        Stats(double totalTime, double computeTime, double ioWaitTime)
+        {
+            this.totalTime = totalTime;
+            this.computeTime = computeTime;
+            this.ioWaitTime = ioWaitTime;
+        }
+    }
+
+    private OutOfCore()
+    {
+    }
+
+    static void create(Path path, long n, int tileSize, Filler filler) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+             Arena arena = Arena.ofConfined())
+        {
+            writeHeader(channel, n, tileSize);
+            MemorySegment data = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES, dataBytes(n, tileSize), arena);
+
+            for (long i = 0; i < n; i++)
+            {
+                for (long j = 0; j < n; j++)
+                {
+                    data.setAtIndex(DOUBLE, index(n, tileSize, i, j), filler.value(i, j));
+                }
+            }
+            data.force();
+        }
+    }
+
+    // Evicts the clean pages of path from the page cache. False where that is not supported
+    // or failed, the next reads may then come from memory.
+    static boolean dropCache(Path path)
+    {
+        if (FADVISE == null)
+            return false;
+
+        try (Arena arena = Arena.ofConfined())
+        {
+            byte[] name = path.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+            // zero-filled, so the name is NUL-terminated
+            MemorySegment cName = arena.allocate(name.length + 1);
+            MemorySegment.copy(name, 0, cName, ValueLayout.JAVA_BYTE, 0, name.length);
+
+            int fd = (int) OPEN.invokeExact(cName, O_RDONLY);
+            if (fd < 0)
+                return false;
+
+            int result = (int) FADVISE.invokeExact(fd, 0L, 0L, POSIX_FADV_DONTNEED);
+            int closed = (int) CLOSE.invokeExact(fd);
+            return result == 0 && closed == 0;
+        }
+        catch (Throwable t)
+        {
+            return false;
+        }
+    }
+
+    static double get(Path path, long i, long j) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+             Arena arena = Arena.ofConfined())
+        {
+            ByteBuffer header = readHeader(channel);
+            int tileSize = header.getInt(4);
+            long n = header.getLong(8);
+            MemorySegment data = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, dataBytes(n, tileSize), arena);
+            return data.getAtIndex(DOUBLE, index(n, tileSize, i, j));
+        }
+    }
+
+    // C = A * B, C is written in the layout of A. tileSize must match the tiled inputs
+    // (any value works for row-major inputs), bkSize is the block size inside a tile.
+    static Stats multiply(Path pathA, Path pathB, Path pathC, int tileSize, int bkSize) throws IOException
+    {
+        try (FileChannel channelA = FileChannel.open(pathA, StandardOpenOption.READ);
+             FileChannel channelB = FileChannel.open(pathB, StandardOpenOption.READ);
+             FileChannel channelC = FileChannel.open(pathC, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                     StandardOpenOption.READ, StandardOpenOption.WRITE);
+             Arena arena = Arena.ofShared())
+        {
+            ByteBuffer headerA = readHeader(channelA);
+            ByteBuffer headerB = readHeader(channelB);
+            long n = headerA.getLong(8);
+            int layoutA = headerA.getInt(4);
+            int layoutB = headerB.getInt(4);
+
+            if (headerB.getLong(8) != n)
+                throw new IllegalArgumentException("A and B have different sizes");
+            if ((layoutA != 0 && layoutA != tileSize) || (layoutB != 0 && layoutB != tileSize))
+                throw new IllegalArgumentException("tileSize must match the tile size of the input files");
+
+            writeHeader(channelC, n, layoutA);
+
+            MemorySegment matrixA = channelA.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, dataBytes(n, layoutA), arena);
+            MemorySegment matrixB = channelB.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, dataBytes(n, layoutB), arena);
+            MemorySegment matrixC = channelC.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES, dataBytes(n, layoutA), arena);
+
+            long tiles = (n + tileSize - 1) / tileSize;
+            int tileElements = tileSize * tileSize;
+
+            // two A/B buffer pairs: one being computed, one being prefetched
+            double[][] tileA = {new double[tileElements], new double[tileElements]};
+            double[][] tileB = {new double[tileElements], new double[tileElements]};
+            double[] tileC = new double[tileElements];
+
+            ExecutorService prefetcher = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "tile-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            long computeNanos = 0;
+            long waitNanos = 0;
+            long start = System.nanoTime();
+
+            try
+            {
+                // the pairs are visited in (ti, tj, tk) order, step is the position in that sequence
+                long steps = tiles * tiles * tiles;
+                Future<?> next = prefetch(prefetcher, matrixA, layoutA, matrixB, layoutB, n, tileSize, tiles, 0, tileA[0], tileB[0]);
+
+                for (long step = 0; step < steps; step++)
+                {
+                    int current = (int) (step & 1);
+
+                    long waitStart = System.nanoTime();
+                    next.get();
+                    waitNanos += System.nanoTime() - waitStart;
+
+                    if (step + 1 < steps)
+                        next = prefetch(prefetcher, matrixA, layoutA, matrixB, layoutB, n, tileSize, tiles, step + 1,
+                                tileA[current ^ 1], tileB[current ^ 1]);
+
+                    long tk = step % tiles;
+                    if (tk == 0)
+                        Arrays.fill(tileC, 0.0);
+
+                    long computeStart = System.nanoTime();
+                    MatrixKernels.multBlockLine(tileA[current], tileB[current], tileC, tileSize, bkSize);
+                    computeNanos += System.nanoTime() - computeStart;
+
+                    if (tk == tiles - 1)
+                    {
+                        long ti = step / (tiles * tiles);
+                        long tj = (step / tiles) % tiles;
+                        storeTile(matrixC, layoutA, n, tileSize, ti, tj, tileC);
+                    }
+                }
+                matrixC.force();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a tile", e);
+            }
+            catch (ExecutionException e)
+            {
+                throw new IOException("Failed to load a tile", e.getCause());
+            }
+            finally
+            {
+                prefetcher.shutdownNow();
+            }
+
+            long end = System.nanoTime();
+            return new Stats((end - start) / 1e9, computeNanos / 1e9, waitNanos / 1e9);
+        }
+    }
+
+    private static Future<?> prefetch(ExecutorService prefetcher, MemorySegment matrixA, int layoutA,
+                                      MemorySegment matrixB, int layoutB, long n, int tileSize, long tiles, long step,
+                                      double[] tileA, double[] tileB)
+    {
+        long ti = step / (tiles * tiles);
+        long tj = (step / tiles) % tiles;
+        long tk = step % tiles;
+
+        return prefetcher.submit(() -> {
+            loadTile(matrixA, layoutA, n, tileSize, ti, tk, tileA);
+            loadTile(matrixB, layoutB, n, tileSize, tk, tj, tileB);
+        });
+    }
+
+    // Copies tile (ti, tj) into a tileSize x tileSize heap buffer, zero-padding the edges
+    private static void loadTile(MemorySegment matrix, int layout, long n, int tileSize, long ti, long tj, double[] tile)
+    {
+        if (layout != 0)
+        {
+            long tiles = (n + tileSize - 1) / tileSize;
+            long offset = (ti * tiles + tj) * tileSize * tileSize * Double.BYTES;
+            MemorySegment.copy(matrix, DOUBLE, offset, tile, 0, tileSize * tileSize);
+            return;
+        }
+
+        Arrays.fill(tile, 0.0);
+        long rows = Math.min(tileSize, n - ti * tileSize);
+        int cols = (int) Math.min(tileSize, n - tj * tileSize);
+        for (int r = 0; r < rows; r++)
+        {
+            long offset = ((ti * tileSize + r) * n + tj * tileSize) * Double.BYTES;
+            MemorySegment.copy(matrix, DOUBLE, offset, tile, r * tileSize, cols);
+        }
+    }
+
+    private static void storeTile(MemorySegment matrix, int layout, long n, int tileSize, long ti, long tj, double[] tile)
+    {
+        if (layout != 0)
+        {
+            long tiles = (n + tileSize - 1) / tileSize;
+            long offset = (ti * tiles + tj) * tileSize * tileSize * Double.BYTES;
+            MemorySegment.copy(tile, 0, matrix, DOUBLE, offset, tileSize * tileSize);
+            return;
+        }
+
+        long rows = Math.min(tileSize, n - ti * tileSize);
+        int cols = (int) Math.min(tileSize, n - tj * tileSize);
+        for (int r = 0; r < rows; r++)
+        {
+            long offset = ((ti * tileSize + r) * n + tj * tileSize) * Double.BYTES;
+            MemorySegment.copy(tile, r * tileSize, matrix, DOUBLE, offset, cols);
+        }
+    }
+
+    // Element index of (i, j) in the data section
+    private static long index(long n, int tileSize, long i, long j)
+    {
+        if (tileSize == 0)
+            return i * n + j;
+
+        long tiles = (n + tileSize - 1) / tileSize;
+        long tile = (i / tileSize) * tiles + j / tileSize;
+        return tile * tileSize * tileSize + (i % tileSize) * tileSize + j % tileSize;
+    }
+
+    private static long dataBytes(long n, int tileSize)
+    {
+        if (tileSize == 0)
+            return n * n * Double.BYTES;
+
+        long padded = (n + tileSize - 1) / tileSize * tileSize;
+        return padded * padded * Double.BYTES;
+    }
+
+    private static void writeHeader(FileChannel channel, long n, int tileSize) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate((int) HEADER_BYTES).order(ByteOrder.nativeOrder());
+        header.putInt(0, MAGIC);
+        header.putInt(4, tileSize);
+        header.putLong(8, n);
+        channel.write(header, 0);
+    }
+
+    private static ByteBuffer readHeader(FileChannel channel) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate((int) HEADER_BYTES).order(ByteOrder.nativeOrder());
+        channel.read(header, 0);
+        if (header.getInt(0) != MAGIC)
+            throw new IOException("Not a matrix file");
+        return header;
+    }
+}
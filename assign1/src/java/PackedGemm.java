@@ -0,0 +1,344 @@
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+// GotoBLAS-style multiplication. Three cache-blocking levels:
+//   NC columns of B   -> panel kept in L3
+//   KC depth          -> packed B panel (KC x NC) and packed A block (MC x KC)
+//   MC rows of A      -> packed A block kept in L2
+// Inside a block an MR x NR micro-kernel keeps the C tile in local variables,
+// reading A and B from the packed buffers with unit stride. Packing pads the
+// edges with zeros, so the micro-kernel always runs the full MR x NR tile and
+// only the store back to C checks bounds.
+final class PackedGemm
+{
+    static final int MR = 4;
+    static final int NR = 4;
+
+    static final int DEFAULT_MC = 128;
+    static final int DEFAULT_KC = 256;
+    static final int DEFAULT_NC = 2048;
+
+    private PackedGemm()
+    {
+    }
+
+    // C (m x n) += A (m x k) * B (k x n), row-major with leading dimensions lda, ldb, ldc
+    static void multiply(double[] matrixA, int lda, double[] matrixB, int ldb, double[] matrixC, int ldc,
+                         int m, int n, int k, int mc, int kc, int nc)
+    {
+        mc = roundUp(Math.min(mc, m), MR);
+        nc = roundUp(Math.min(nc, n), NR);
+        kc = Math.min(kc, k);
+
+        double[] packedA = new double[mc * kc];
+        double[] packedB = new double[kc * nc];
+
+        for (int jc = 0; jc < n; jc += nc)
+        {
+            int nb = Math.min(nc, n - jc);
+
+            for (int pc = 0; pc < k; pc += kc)
+            {
+                int kb = Math.min(kc, k - pc);
+                packB(matrixB, ldb, pc, jc, kb, nb, packedB);
+
+                for (int ic = 0; ic < m; ic += mc)
+                {
+                    int mb = Math.min(mc, m - ic);
+                    packA(matrixA, lda, ic, pc, mb, kb, packedA);
+                    macroKernel(packedA, packedB, matrixC, ldc, ic, jc, mb, nb, kb);
+                }
+            }
+        }
+    }
+
+    // Parallel version. OUTER splits the NC loop (each task packs its own B panel,
+    // only useful when nc is well below n), INNER_MOST splits the MC loop and shares
+    // the packed B panel between the tasks.
+    static void multiplyParallel(ForkJoinPool pool, ParallelLoop loop,
+                                 double[] matrixA, int lda, double[] matrixB, int ldb, double[] matrixC, int ldc,
+                                 int m, int n, int k, int mc, int kc, int nc)
+    {
+        final int mcr = roundUp(Math.min(mc, m), MR);
+        final int ncr = roundUp(Math.min(nc, n), NR);
+        final int kcr = Math.min(kc, k);
+
+        if (loop == ParallelLoop.OUTER)
+        {
+            // every task owns a column band of C
+            MatrixKernels.parallelFor(pool, 0, (n + ncr - 1) / ncr, block -> {
+                int jc = block * ncr;
+                int nb = Math.min(ncr, n - jc);
+                double[] packedA = new double[mcr * kcr];
+                double[] packedB = new double[kcr * ncr];
+
+                for (int pc = 0; pc < k; pc += kcr)
+                {
+                    int kb = Math.min(kcr, k - pc);
+                    packB(matrixB, ldb, pc, jc, kb, nb, packedB);
+
+                    for (int ic = 0; ic < m; ic += mcr)
+                    {
+                        int mb = Math.min(mcr, m - ic);
+                        packA(matrixA, lda, ic, pc, mb, kb, packedA);
+                        macroKernel(packedA, packedB, matrixC, ldc, ic, jc, mb, nb, kb);
+                    }
+                }
+            });
+            return;
+        }
+
+        int mcBlocks = (m + mcr - 1) / mcr;
+        double[] packedA = new double[mcBlocks * mcr * kcr];
+        double[] packedB = new double[kcr * ncr];
+
+        for (int jc = 0; jc < n; jc += ncr)
+        {
+            final int fromJ = jc;
+            final int nb = Math.min(ncr, n - jc);
+
+            for (int pc = 0; pc < k; pc += kcr)
+            {
+                final int fromK = pc;
+                final int kb = Math.min(kcr, k - pc);
+                packB(matrixB, ldb, pc, jc, kb, nb, packedB);
+
+                // every task owns a row band of C and its own slice of packedA
+                MatrixKernels.parallelFor(pool, 0, mcBlocks, block -> {
+                    int ic = block * mcr;
+                    int mb = Math.min(mcr, m - ic);
+                    int offset = block * mcr * kcr;
+                    packA(matrixA, lda, ic, fromK, mb, kb, packedA, offset);
+                    macroKernel(packedA, offset, packedB, matrixC, ldc, ic, fromJ, mb, nb, kb);
+                });
+            }
+        }
+    }
+
+    // Off-heap C += A * B for n x n matrices (see OffHeapKernels). The packed panels
+    // are heap arrays as in the on-heap version; the micro-kernel accumulates into
+    // an mc x nc heap block that is added into the segment once per KC step.
+    // pool may be null for a serial run, otherwise the MC loop is split.
+    static void multiply(ForkJoinPool pool, MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC,
+                         long n, int mc, int kc, int nc)
+    {
+        final int mcr = roundUp((int) Math.min(mc, n), MR);
+        final int ncr = roundUp((int) Math.min(nc, n), NR);
+        final int kcr = (int) Math.min(kc, n);
+        final int mcBlocks = (int) ((n + mcr - 1) / mcr);
+        final int workers = pool == null ? 1 : Math.min(pool.getParallelism(), mcBlocks);
+
+        double[] packedA = new double[workers * mcr * kcr];
+        double[] blockC = new double[workers * mcr * ncr];
+        double[] packedB = new double[kcr * ncr];
+
+        for (long jc = 0; jc < n; jc += ncr)
+        {
+            final long fromJ = jc;
+            final int nb = (int) Math.min(ncr, n - jc);
+
+            for (long pc = 0; pc < n; pc += kcr)
+            {
+                final long fromK = pc;
+                final int kb = (int) Math.min(kcr, n - pc);
+                packB(matrixB, n, pc, jc, kb, nb, packedB);
+
+                if (pool == null)
+                {
+                    for (int block = 0; block < mcBlocks; block++)
+                        segmentBlock(matrixA, matrixC, n, block * (long) mcr, fromK, fromJ, mcr, nb, kb, packedA, 0, packedB, blockC, 0);
+                }
+                else
+                {
+                    // one worker per pool thread, each with its own slice of packedA and blockC
+                    MatrixKernels.parallelFor(pool, 0, workers, worker -> {
+                        for (int block = worker; block < mcBlocks; block += workers)
+                            segmentBlock(matrixA, matrixC, n, block * (long) mcr, fromK, fromJ, mcr, nb, kb,
+                                    packedA, worker * mcr * kcr, packedB, blockC, worker * mcr * ncr);
+                    });
+                }
+            }
+        }
+    }
+
+    private static void segmentBlock(MemorySegment matrixA, MemorySegment matrixC, long n, long ic, long pc, long jc,
+                                     int mcr, int nb, int kb, double[] packedA, int offsetA,
+                                     double[] packedB, double[] blockC, int offsetC)
+    {
+        int mb = (int) Math.min(mcr, n - ic);
+
+        int idx = offsetA;
+        for (int ir = 0; ir < mb; ir += MR)
+        {
+            for (int p = 0; p < kb; p++)
+            {
+                for (int r = 0; r < MR; r++)
+                {
+                    packedA[idx++] = ir + r < mb ? matrixA.getAtIndex(ValueLayout.JAVA_DOUBLE, (ic + ir + r) * n + pc + p) : 0.0;
+                }
+            }
+        }
+
+        // blockC is used as an mb x nb matrix starting at offsetC
+        Arrays.fill(blockC, offsetC, offsetC + mb * nb, 0.0);
+        for (int jr = 0; jr < nb; jr += NR)
+        {
+            for (int ir = 0; ir < mb; ir += MR)
+            {
+                microKernel(kb, packedA, offsetA + ir * kb, packedB, jr * kb, blockC, nb,
+                        ir, jr, Math.min(MR, mb - ir), Math.min(NR, nb - jr), offsetC);
+            }
+        }
+
+        for (int i = 0; i < mb; i++)
+        {
+            for (int j = 0; j < nb; j++)
+            {
+                long index = (ic + i) * n + jc + j;
+                matrixC.setAtIndex(ValueLayout.JAVA_DOUBLE, index,
+                        matrixC.getAtIndex(ValueLayout.JAVA_DOUBLE, index) + blockC[offsetC + i * nb + j]);
+            }
+        }
+    }
+
+    private static void packB(MemorySegment matrixB, long n, long pc, long jc, int kb, int nb, double[] packedB)
+    {
+        int idx = 0;
+        for (int jr = 0; jr < nb; jr += NR)
+        {
+            for (int p = 0; p < kb; p++)
+            {
+                long row = (pc + p) * n + jc + jr;
+                for (int col = 0; col < NR; col++)
+                {
+                    packedB[idx++] = jr + col < nb ? matrixB.getAtIndex(ValueLayout.JAVA_DOUBLE, row + col) : 0.0;
+                }
+            }
+        }
+    }
+
+    // Copies A[ic..ic+mb)[pc..pc+kb) into MR-row slivers, column by column
+    private static void packA(double[] matrixA, int lda, int ic, int pc, int mb, int kb, double[] packedA)
+    {
+        packA(matrixA, lda, ic, pc, mb, kb, packedA, 0);
+    }
+
+    private static void packA(double[] matrixA, int lda, int ic, int pc, int mb, int kb, double[] packedA, int offset)
+    {
+        int idx = offset;
+        for (int ir = 0; ir < mb; ir += MR)
+        {
+            for (int p = 0; p < kb; p++)
+            {
+                for (int r = 0; r < MR; r++)
+                {
+                    packedA[idx++] = ir + r < mb ? matrixA[(ic + ir + r) * lda + pc + p] : 0.0;
+                }
+            }
+        }
+    }
+
+    // Copies B[pc..pc+kb)[jc..jc+nb) into NR-column slivers, row by row
+    private static void packB(double[] matrixB, int ldb, int pc, int jc, int kb, int nb, double[] packedB)
+    {
+        int idx = 0;
+        for (int jr = 0; jr < nb; jr += NR)
+        {
+            for (int p = 0; p < kb; p++)
+            {
+                int row = (pc + p) * ldb + jc + jr;
+                for (int col = 0; col < NR; col++)
+                {
+                    packedB[idx++] = jr + col < nb ? matrixB[row + col] : 0.0;
+                }
+            }
+        }
+    }
+
+    private static void macroKernel(double[] packedA, double[] packedB, double[] matrixC, int ldc,
+                                    int ic, int jc, int mb, int nb, int kb)
+    {
+        macroKernel(packedA, 0, packedB, matrixC, ldc, ic, jc, mb, nb, kb);
+    }
+
+    private static void macroKernel(double[] packedA, int offsetA, double[] packedB, double[] matrixC, int ldc,
+                                    int ic, int jc, int mb, int nb, int kb)
+    {
+        for (int jr = 0; jr < nb; jr += NR)
+        {
+            for (int ir = 0; ir < mb; ir += MR)
+            {
+                microKernel(kb, packedA, offsetA + ir * kb, packedB, jr * kb, matrixC, ldc,
+                        ic + ir, jc + jr, Math.min(MR, mb - ir), Math.min(NR, nb - jr), 0);
+            }
+        }
+    }
+
+    // 4 x 4 tile of C accumulated in registers over the kb-long packed slivers.
+    // C starts at offsetC in matrixC.
+    private static void microKernel(int kb, double[] packedA, int pa, double[] packedB, int pb,
+                                    double[] matrixC, int ldc, int row, int col, int mr, int nr, int offsetC)
+    {
+        double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+
+        for (int p = 0; p < kb; p++)
+        {
+            double a0 = packedA[pa];
+            double a1 = packedA[pa + 1];
+            double a2 = packedA[pa + 2];
+            double a3 = packedA[pa + 3];
+
+            double b0 = packedB[pb];
+            double b1 = packedB[pb + 1];
+            double b2 = packedB[pb + 2];
+            double b3 = packedB[pb + 3];
+
+            c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+            c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+            c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+            c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+
+            pa += MR;
+            pb += NR;
+        }
+
+        if (mr == MR && nr == NR)
+        {
+            int r0 = offsetC + row * ldc + col;
+            int r1 = r0 + ldc;
+            int r2 = r1 + ldc;
+            int r3 = r2 + ldc;
+
+            matrixC[r0] += c00; matrixC[r0 + 1] += c01; matrixC[r0 + 2] += c02; matrixC[r0 + 3] += c03;
+            matrixC[r1] += c10; matrixC[r1 + 1] += c11; matrixC[r1 + 2] += c12; matrixC[r1 + 3] += c13;
+            matrixC[r2] += c20; matrixC[r2 + 1] += c21; matrixC[r2 + 2] += c22; matrixC[r2 + 3] += c23;
+            matrixC[r3] += c30; matrixC[r3 + 1] += c31; matrixC[r3 + 2] += c32; matrixC[r3 + 3] += c33;
+            return;
+        }
+
+        // edge tile, only the first mr x nr values are inside C
+        double[] tile = {
+                c00, c01, c02, c03,
+                c10, c11, c12, c13,
+                c20, c21, c22, c23,
+                c30, c31, c32, c33
+        };
+        for (int i = 0; i < mr; i++)
+        {
+            for (int j = 0; j < nr; j++)
+            {
+                matrixC[offsetC + (row + i) * ldc + col + j] += tile[i * NR + j];
+            }
+        }
+    }
+
+    private static int roundUp(int value, int multiple)
+    {
+        return (value + multiple - 1) / multiple * multiple;
+    }
+}
@@ -0,0 +1,6 @@
+// Which loop of a kernel is split across the worker threads
+enum ParallelLoop
+{
+    OUTER,
+    INNER_MOST
+}
@@ -0,0 +1,314 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Linux hardware counters through perf_event_open, called with the FFM API, the Java
+// side of the PAPI event set of the C++ driver.
+//
+// The counters follow the thread that opens them and, because they are opened with
+// inherit, every thread it starts afterwards. start() and pause() reach those threads as
+// well, so the counted region can be narrower than the life of the pool, but the counts of
+// a child thread are only added when that thread exits: the ForkJoinPool of a run must be
+// created after open() and fully terminated before stop().
+//
+// Counters that cannot be opened (no PMU in a VM, perf_event_paranoid too high, an
+// event the CPU does not have, not Linux) read as -1.
+final class PerfCounters implements AutoCloseable
+{
+    enum Event
+    {
+        CYCLES("Cycles"),
+        INSTRUCTIONS("Instructions"),
+        L1_DCM("L1 DCM"),
+        L2_DCM("L2 DCM"),
+        LLC_MISSES("LLC Misses");
+
+        final String column;
+
+        Event(String column)
+        {
+            this.column = column;
+        }
+    }
+
+    // include/uapi/linux/perf_event.h
+    private static final int PERF_TYPE_HARDWARE = 0;
+    private static final int PERF_TYPE_HW_CACHE = 3;
+    private static final int PERF_TYPE_RAW = 4;
+    private static final long PERF_COUNT_HW_CPU_CYCLES = 0;
+    private static final long PERF_COUNT_HW_INSTRUCTIONS = 1;
+    private static final long PERF_COUNT_HW_CACHE_L1D = 0;
+    private static final long PERF_COUNT_HW_CACHE_LL = 2;
+    private static final long PERF_COUNT_HW_CACHE_OP_READ = 0;
+    private static final long PERF_COUNT_HW_CACHE_RESULT_MISS = 1;
+    private static final long PERF_FORMAT_TOTAL_TIME_ENABLED = 1;
+    private static final long PERF_FORMAT_TOTAL_TIME_RUNNING = 2;
+    private static final long PERF_EVENT_IOC_ENABLE = 0x2400;
+    private static final long PERF_EVENT_IOC_DISABLE = 0x2401;
+    private static final long PERF_EVENT_IOC_RESET = 0x2403;
+
+    // disabled | inherit | exclude_kernel | exclude_hv
+    private static final long ATTR_FLAGS = 1L | 1L << 1 | 1L << 5 | 1L << 6;
+    // PERF_ATTR_SIZE_VER0, everything used here is in the first 64 bytes
+    private static final int ATTR_SIZE = 64;
+
+    private static final long SYS_PERF_EVENT_OPEN = syscallNumber();
+
+    private static final MethodHandle SYSCALL;
+    private static final MethodHandle IOCTL;
+    private static final MethodHandle READ;
+    private static final MethodHandle CLOSE;
+
+    static
+    {
+        MethodHandle syscall = null, ioctl = null, read = null, close = null;
+
+        if (SYS_PERF_EVENT_OPEN >= 0)
+        {
+            try
+            {
+                Linker linker = Linker.nativeLinker();
+                SymbolLookup libc = linker.defaultLookup();
+
+                // long syscall(long number, ...) and int ioctl(int fd, unsigned long request, ...)
+                syscall = linker.downcallHandle(libc.find("syscall").orElseThrow(),
+                        FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG, ValueLayout.ADDRESS,
+                                ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_LONG),
+                        Linker.Option.firstVariadicArg(1));
+                ioctl = linker.downcallHandle(libc.find("ioctl").orElseThrow(),
+                        FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT),
+                        Linker.Option.firstVariadicArg(2));
+                read = linker.downcallHandle(libc.find("read").orElseThrow(),
+                        FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG));
+                close = linker.downcallHandle(libc.find("close").orElseThrow(),
+                        FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+            }
+            catch (RuntimeException e)
+            {
+                syscall = null;
+            }
+        }
+
+        SYSCALL = syscall;
+        IOCTL = ioctl;
+        READ = read;
+        CLOSE = close;
+    }
+
+    private final int[] fds = new int[Event.values().length];
+
+    private PerfCounters()
+    {
+    }
+
+    // Opens one counter per Event for the calling thread, disabled. Never fails: the
+    // events that cannot be opened read as -1.
+    static PerfCounters open()
+    {
+        PerfCounters counters = new PerfCounters();
+
+        for (Event event : Event.values())
+        {
+            counters.fds[event.ordinal()] = SYSCALL == null ? -1 : openEvent(event);
+        }
+        return counters;
+    }
+
+    boolean available()
+    {
+        for (int fd : fds)
+        {
+            if (fd >= 0)
+                return true;
+        }
+        return false;
+    }
+
+    void start()
+    {
+        for (int fd : fds)
+        {
+            if (fd >= 0)
+            {
+                ioctl(fd, PERF_EVENT_IOC_RESET);
+                ioctl(fd, PERF_EVENT_IOC_ENABLE);
+            }
+        }
+    }
+
+    // Stops counting, the counts are kept for stop()
+    void pause()
+    {
+        for (int fd : fds)
+        {
+            if (fd >= 0)
+                ioctl(fd, PERF_EVENT_IOC_DISABLE);
+        }
+    }
+
+    // Counts since start(), indexed by Event.ordinal(), scaled up when the kernel had to
+    // multiplex the counters
+    long[] stop()
+    {
+        long[] values = new long[fds.length];
+
+        pause();
+
+        try (Arena arena = Arena.ofConfined())
+        {
+            // value, time enabled, time running
+            MemorySegment buffer = arena.allocate(3 * Long.BYTES, Long.BYTES);
+
+            for (int e = 0; e < fds.length; e++)
+            {
+                values[e] = -1;
+                if (fds[e] < 0)
+                    continue;
+
+                try
+                {
+                    if ((long) READ.invokeExact(fds[e], buffer, 3L * Long.BYTES) != 3L * Long.BYTES)
+                        continue;
+                }
+                catch (Throwable t)
+                {
+                    continue;
+                }
+
+                long value = buffer.getAtIndex(ValueLayout.JAVA_LONG, 0);
+                long enabled = buffer.getAtIndex(ValueLayout.JAVA_LONG, 1);
+                long running = buffer.getAtIndex(ValueLayout.JAVA_LONG, 2);
+                values[e] = running > 0 && running < enabled ? (long) (value * ((double) enabled / running)) : value;
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void close()
+    {
+        for (int e = 0; e < fds.length; e++)
+        {
+            if (fds[e] < 0)
+                continue;
+            try
+            {
+                int ignored = (int) CLOSE.invokeExact(fds[e]);
+            }
+            catch (Throwable t)
+            {
+                // nothing left to release
+            }
+            fds[e] = -1;
+        }
+    }
+
+    private static int openEvent(Event event)
+    {
+        int type;
+        long config;
+
+        switch (event)
+        {
+            case CYCLES:
+                type = PERF_TYPE_HARDWARE;
+                config = PERF_COUNT_HW_CPU_CYCLES;
+                break;
+            case INSTRUCTIONS:
+                type = PERF_TYPE_HARDWARE;
+                config = PERF_COUNT_HW_INSTRUCTIONS;
+                break;
+            case L1_DCM:
+                type = PERF_TYPE_HW_CACHE;
+                config = PERF_COUNT_HW_CACHE_L1D | PERF_COUNT_HW_CACHE_OP_READ << 8 | PERF_COUNT_HW_CACHE_RESULT_MISS << 16;
+                break;
+            case L2_DCM:
+                // perf has no generic L2 event, so this is a raw, vendor specific one
+                type = PERF_TYPE_RAW;
+                config = l2MissConfig();
+                if (config < 0)
+                    return -1;
+                break;
+            default:
+                type = PERF_TYPE_HW_CACHE;
+                config = PERF_COUNT_HW_CACHE_LL | PERF_COUNT_HW_CACHE_OP_READ << 8 | PERF_COUNT_HW_CACHE_RESULT_MISS << 16;
+                break;
+        }
+
+        try (Arena arena = Arena.ofConfined())
+        {
+            MemorySegment attr = arena.allocate(ATTR_SIZE, Long.BYTES);
+            attr.set(ValueLayout.JAVA_INT, 0, type);
+            attr.set(ValueLayout.JAVA_INT, 4, ATTR_SIZE);
+            attr.set(ValueLayout.JAVA_LONG, 8, config);
+            attr.set(ValueLayout.JAVA_LONG, 32, PERF_FORMAT_TOTAL_TIME_ENABLED | PERF_FORMAT_TOTAL_TIME_RUNNING);
+            attr.set(ValueLayout.JAVA_LONG, 40, ATTR_FLAGS);
+
+            // pid 0, cpu -1: the calling thread on any CPU, no group, no flags
+            long fd = (long) SYSCALL.invokeExact(SYS_PERF_EVENT_OPEN, attr, 0, -1, -1, 0L);
+            return (int) fd;
+        }
+        catch (Throwable t)
+        {
+            return -1;
+        }
+    }
+
+    private static void ioctl(int fd, long request)
+    {
+        try
+        {
+            int ignored = (int) IOCTL.invokeExact(fd, request, 0);
+        }
+        catch (Throwable t)
+        {
+            // a counter that cannot be toggled just keeps its last value
+        }
+    }
+
+    // -Dperf.l2=<raw config> overrides the built-in events: L2_RQSTS.MISS on Intel
+    // (Skylake and later), L2 data cache read misses (l2_cache_req_stat.ls_rd_blk_c) on AMD Zen
+    private static long l2MissConfig()
+    {
+        try
+        {
+            String override = System.getProperty("perf.l2");
+            if (override != null)
+                return Long.decode(override);
+
+            String cpuinfo = Files.readString(Path.of("/proc/cpuinfo"));
+            if (cpuinfo.contains("GenuineIntel"))
+                return 0x3f24;
+            if (cpuinfo.contains("AuthenticAMD"))
+                return 0x0864;
+        }
+        catch (Exception e)
+        {
+            // no cpuinfo or a malformed override, no raw event
+        }
+        return -1;
+    }
+
+    private static long syscallNumber()
+    {
+        if (!System.getProperty("os.name").equals("Linux"))
+            return -1;
+
+        switch (System.getProperty("os.arch"))
+        {
+            case "amd64":
+            case "x86_64":
+                return 298;
+            case "aarch64":
+                return 241;
+            default:
+                return -1;
+        }
+    }
+}
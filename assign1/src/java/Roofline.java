@@ -0,0 +1,308 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+
+// Roofline of this machine: STREAM memory bandwidth (copy, scale, add, triad) and the
+// peak FMA throughput, one thread and all threads, so the MFLOPS of a kernel can be read
+// against what the machine can reach at the kernel's arithmetic intensity:
+//
+//     attainable GFLOPS = min(peak GFLOPS, intensity (flops/byte) * bandwidth (GB/s))
+//
+// The intensity of a run comes from its measured memory traffic (LLC misses * 64 bytes)
+// when the counters are available, otherwise from a cache model of the kernel (trafficModel).
+final class Roofline
+{
+    static final Path DEFAULT_PROFILE = Path.of("docs", "roofline_java.properties");
+
+    // 16M doubles, 128 MB per array: STREAM wants every array at least 4x the LLC
+    static final int STREAM_SIZE = 1 << 24;
+    // best of STREAM_RUNS, as STREAM reports
+    static final int STREAM_RUNS = 10;
+    // Well under a second of FMAs per thread on a current core
+    static final long FMA_ITERATIONS = 200_000_000L;
+
+    enum Stream
+    {
+        // bytes counted per element: reads plus writes, as STREAM does
+        COPY(16), SCALE(16), ADD(24), TRIAD(24);
+
+        final int bytes;
+
+        Stream(int bytes)
+        {
+            this.bytes = bytes;
+        }
+    }
+
+    static final class Machine
+    {
+        final int threads;
+        final double peakSerial;        // GFLOPS
+        final double peakParallel;
+        final double bandwidthSerial;   // GB/s, triad
+        final double bandwidthParallel;
+        final long llcBytes;
+
+        Machine(int threads, double peakSerial, double peakParallel, double bandwidthSerial, double bandwidthParallel, long llcBytes)
+        {
+            this.threads = threads;
+            this.peakSerial = peakSerial;
+            this.peakParallel = peakParallel;
+            this.bandwidthSerial = bandwidthSerial;
+            this.bandwidthParallel = bandwidthParallel;
+            this.llcBytes = llcBytes;
+        }
+
+        // threads <= 1 is a serial run; between 1 and all threads both roofs scale linearly
+        // up to the all-threads measurement
+        double peak(int threads)
+        {
+            return threads <= 1 ? peakSerial : Math.min(peakParallel, threads * peakSerial);
+        }
+
+        double bandwidth(int threads)
+        {
+            return threads <= 1 ? bandwidthSerial : Math.min(bandwidthParallel, threads * bandwidthSerial);
+        }
+
+        double attainable(double intensity, int threads)
+        {
+            return Math.min(peak(threads), intensity * bandwidth(threads));
+        }
+    }
+
+    private Roofline()
+    {
+    }
+
+    // STREAM and peak FMA with one thread and with threads threads, printed as they run
+    static Machine measure(int threads)
+    {
+        double[] a = new double[STREAM_SIZE];
+        double[] b = new double[STREAM_SIZE];
+        double[] c = new double[STREAM_SIZE];
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+
+        try
+        {
+            double triadSerial = 0, triadParallel = 0;
+
+            for (Stream stream : Stream.values())
+            {
+                double serial = stream(null, stream, a, b, c);
+                double parallel = pool == null ? serial : stream(pool, stream, a, b, c);
+                System.out.printf("%-6s %8.2f GB/s (1 thread) %8.2f GB/s (%d threads)%n", stream, serial, parallel, threads);
+
+                if (stream == Stream.TRIAD)
+                {
+                    triadSerial = serial;
+                    triadParallel = parallel;
+                }
+            }
+
+            double peakSerial = peakFma(null, 1);
+            double peakParallel = pool == null ? peakSerial : peakFma(pool, threads);
+            System.out.printf("FMA    %8.2f GFLOPS (1 thread) %8.2f GFLOPS (%d threads)%n", peakSerial, peakParallel, threads);
+
+            long llcBytes = 0;
+            for (long size : Autotuner.dataCacheSizes())
+                llcBytes = Math.max(llcBytes, size);
+
+            return new Machine(threads, peakSerial, peakParallel, triadSerial, triadParallel, llcBytes);
+        }
+        finally
+        {
+            if (pool != null)
+                pool.shutdown();
+        }
+    }
+
+    // Best bandwidth of STREAM_RUNS in GB/s. pool may be null for one thread.
+    static double stream(ForkJoinPool pool, Stream stream, double[] a, double[] b, double[] c)
+    {
+        int n = a.length;
+        // four chunks per thread, each one a contiguous range
+        int chunks = pool == null ? 1 : 4 * pool.getParallelism();
+        int chunk = (n + chunks - 1) / chunks;
+        double best = Double.MAX_VALUE;
+
+        for (int i = 0; i < n; i++)
+        {
+            a[i] = 1.0;
+            b[i] = 2.0;
+            c[i] = 0.0;
+        }
+
+        // one extra, untimed run compiles the loop
+        for (int run = 0; run <= STREAM_RUNS; run++)
+        {
+            long start = System.nanoTime();
+
+            if (pool == null)
+                streamRange(stream, a, b, c, 0, n);
+            else
+                MatrixKernels.parallelFor(pool, 0, chunks, k -> streamRange(stream, a, b, c, k * chunk, Math.min(n, (k + 1) * chunk)));
+
+            long end = System.nanoTime();
+
+            if (run > 0)
+                best = Math.min(best, (end - start) / 1e9);
+        }
+
+        return (double) stream.bytes * n / best / 1e9;
+    }
+
+    private static void streamRange(Stream stream, double[] a, double[] b, double[] c, int from, int to)
+    {
+        final double scalar = 3.0;
+
+        switch (stream)
+        {
+            case COPY:
+                for (int i = from; i < to; i++)
+                    c[i] = a[i];
+                break;
+            case SCALE:
+                for (int i = from; i < to; i++)
+                    b[i] = scalar * c[i];
+                break;
+            case ADD:
+                for (int i = from; i < to; i++)
+                    c[i] = a[i] + b[i];
+                break;
+            default:
+                for (int i = from; i < to; i++)
+                    a[i] = b[i] + scalar * c[i];
+                break;
+        }
+    }
+
+    // GFLOPS of FMA_ITERATIONS rounds of independent FMAs on each of threads threads, the
+    // SIMD lanes when the Vector API is there. pool may be null for one thread.
+    static double peakFma(ForkJoinPool pool, int threads)
+    {
+        // warm-up calls until the whole method is compiled: the on-stack replacement of a
+        // single long call leaves the vector loop boxed and an order of magnitude slower
+        for (int warmup = 0; warmup < 5; warmup++)
+            fmaLoop(FMA_ITERATIONS / 100, 1.0);
+
+        double[] sink = new double[threads];
+        long start = System.nanoTime();
+
+        if (pool == null)
+            sink[0] = fmaLoop(FMA_ITERATIONS, 1.0);
+        else
+            MatrixKernels.parallelFor(pool, 0, threads, t -> sink[t] = fmaLoop(FMA_ITERATIONS, t + 1.0));
+
+        long end = System.nanoTime();
+
+        double sum = 0;
+        for (double value : sink)
+            sum += value;
+        if (Double.isNaN(sum))
+            System.out.println("FMA check failed");
+
+        int lanes = MatrixKernels.SIMD_AVAILABLE ? VectorKernels.lanes() : 1;
+        return 2.0 * FMA_ITERATIONS * VectorKernels.FMA_CHAINS * lanes * threads / ((end - start) / 1e9) / 1e9;
+    }
+
+    private static double fmaLoop(long iterations, double seed)
+    {
+        if (MatrixKernels.SIMD_AVAILABLE)
+            return VectorKernels.fmaThroughput(iterations, seed);
+
+        // same chains, one lane each
+        double a0 = seed, a1 = seed + 1, a2 = seed + 2, a3 = seed + 3, a4 = seed + 4, a5 = seed + 5;
+        double a6 = seed + 6, a7 = seed + 7, a8 = seed + 8, a9 = seed + 9, a10 = seed + 10, a11 = seed + 11;
+        final double x = 0.999999, y = 1e-7;
+
+        for (long it = 0; it < iterations; it++)
+        {
+            a0 = Math.fma(a0, x, y);
+            a1 = Math.fma(a1, x, y);
+            a2 = Math.fma(a2, x, y);
+            a3 = Math.fma(a3, x, y);
+            a4 = Math.fma(a4, x, y);
+            a5 = Math.fma(a5, x, y);
+            a6 = Math.fma(a6, x, y);
+            a7 = Math.fma(a7, x, y);
+            a8 = Math.fma(a8, x, y);
+            a9 = Math.fma(a9, x, y);
+            a10 = Math.fma(a10, x, y);
+            a11 = Math.fma(a11, x, y);
+        }
+        return a0 + a1 + a2 + a3 + a4 + a5 + a6 + a7 + a8 + a9 + a10 + a11;
+    }
+
+    // Bytes an n x n product moves from memory, for the kernels of the test cases. If A, B
+    // and C fit in the LLC together they are read once. Otherwise the operand the kernel
+    // streams is read again for every row of C: all of B for Normal and Inline (and their
+    // parallel versions), n^3 / bk B rows for the blocked kernels. Kernels this does not
+    // describe get the compulsory 3 n^2 doubles, which overstates their intensity.
+    static double trafficModel(String name, int n, int blockSize, long llcBytes)
+    {
+        double compulsory = 3.0 * Double.BYTES * n * n;
+
+        if (compulsory <= llcBytes)
+            return compulsory;
+        if (name.contains("Block") && blockSize > 0)
+            return compulsory + (double) Double.BYTES * n * n * ((double) n / blockSize);
+        if (name.contains("Normal") || name.contains("Inline") || name.startsWith("Inner Most Loop"))
+            return compulsory + (double) Double.BYTES * n * n * n;
+        return compulsory;
+    }
+
+    static void save(Machine machine, Path path) throws IOException
+    {
+        Properties properties = new Properties();
+        properties.setProperty("host.processors", Integer.toString(Runtime.getRuntime().availableProcessors()));
+        properties.setProperty("host.arch", System.getProperty("os.arch"));
+        properties.setProperty("threads", Integer.toString(machine.threads));
+        properties.setProperty("peak.serial", Double.toString(machine.peakSerial));
+        properties.setProperty("peak.parallel", Double.toString(machine.peakParallel));
+        properties.setProperty("bandwidth.serial", Double.toString(machine.bandwidthSerial));
+        properties.setProperty("bandwidth.parallel", Double.toString(machine.bandwidthParallel));
+        properties.setProperty("llc.bytes", Long.toString(machine.llcBytes));
+
+        try (Writer writer = Files.newBufferedWriter(path))
+        {
+            properties.store(writer, "Peak FMA GFLOPS and STREAM triad GB/s, one thread and all threads");
+        }
+    }
+
+    // The machine at path, or null when there is none
+    static Machine load(Path path) throws IOException
+    {
+        if (!Files.exists(path))
+            return null;
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path))
+        {
+            properties.load(reader);
+        }
+
+        String processors = properties.getProperty("host.processors");
+        if (processors != null && Integer.parseInt(processors) != Runtime.getRuntime().availableProcessors())
+            System.out.println("Warning: " + path + " was measured on a machine with " + processors + " processors");
+
+        try
+        {
+            return new Machine(
+                    Integer.parseInt(properties.getProperty("threads")),
+                    Double.parseDouble(properties.getProperty("peak.serial")),
+                    Double.parseDouble(properties.getProperty("peak.parallel")),
+                    Double.parseDouble(properties.getProperty("bandwidth.serial")),
+                    Double.parseDouble(properties.getProperty("bandwidth.parallel")),
+                    Long.parseLong(properties.getProperty("llc.bytes")));
+        }
+        catch (NullPointerException | NumberFormatException e)
+        {
+            throw new IOException("Malformed roofline profile " + path, e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+import java.util.Arrays;
+
+// Samples of one measured configuration and the 95% confidence interval of their mean,
+// to repeat a run until the interval is tight instead of a fixed number of times.
+final class RunStatistics
+{
+    // Two-sided 95% Student t quantiles for 1..30 degrees of freedom
+    private static final double[] T_95 = {
+            12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+            2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+            2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042
+    };
+
+    private double[] samples = new double[8];
+    private int count;
+
+    void add(double sample)
+    {
+        if (count == samples.length)
+            samples = Arrays.copyOf(samples, 2 * count);
+        samples[count++] = sample;
+    }
+
+    int count()
+    {
+        return count;
+    }
+
+    double mean()
+    {
+        double sum = 0;
+        for (int s = 0; s < count; s++)
+            sum += samples[s];
+        return sum / count;
+    }
+
+    // Sample standard deviation, 0 with fewer than two samples
+    double standardDeviation()
+    {
+        if (count < 2)
+            return 0;
+
+        double mean = mean();
+        double sum = 0;
+        for (int s = 0; s < count; s++)
+            sum += (samples[s] - mean) * (samples[s] - mean);
+        return Math.sqrt(sum / (count - 1));
+    }
+
+    // Half width of the 95% confidence interval of the mean, infinite with one sample
+    double halfWidth()
+    {
+        if (count < 2)
+            return Double.POSITIVE_INFINITY;
+        return tValue95(count - 1) * standardDeviation() / Math.sqrt(count);
+    }
+
+    double relativeHalfWidth()
+    {
+        return halfWidth() / mean();
+    }
+
+    // At least minRuns samples and a half width within precision of the mean
+    boolean converged(int minRuns, double precision)
+    {
+        return count >= Math.max(2, minRuns) && relativeHalfWidth() <= precision;
+    }
+
+    static double tValue95(int degreesOfFreedom)
+    {
+        if (degreesOfFreedom < 1)
+            throw new IllegalArgumentException("degreesOfFreedom must be positive");
+        return degreesOfFreedom <= T_95.length ? T_95[degreesOfFreedom - 1] : 1.960;
+    }
+}
@@ -0,0 +1,185 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Strong and weak scaling of the parallel kernels, the Java counterpart of the speedup
+// and efficiency charts of graphic_data_scripts, with the columns written directly.
+//
+// Strong scaling keeps n fixed and adds threads: SpeedUp = T(1) / T(p). Weak scaling
+// grows n with the threads so the work per thread stays the same, n(p) = n(1) * p^(1/3)
+// for the 2 n^3 of a product, and reports the scaled speedup (W(p) / W(1)) * T(1) / T(p).
+// Efficiency is SpeedUp / p for both. T(1) is the serial kernel, as in the C++ charts.
+//
+// Every point runs once untimed and then repeats until the 95% confidence interval of
+// its mean is within precision of the mean, or maxRuns.
+//
+// Arguments (all optional, key=value):
+//   mode=strong,weak
+//   kernels=INLINE,...      keys of the kernels MatrixProduct passes in
+//   threads=1,2,4,...       defaults to powers of two up to the number of cores, and that number
+//   size=2048               n of the strong scaling runs
+//   weakSize=1024           n(1) of the weak scaling runs
+//   bkSize=256              block size of the blocked kernels
+//   precision=0.02 minRuns=5 maxRuns=30
+//   out=docs/scaling_java.csv
+final class ScalingSweep
+{
+    static final String HEADER = "Scaling,functionType,MatrixSize,NumThreads,Runs,Real Time,CI Half Width,SerialTime,SpeedUp,Efficiency,MFLOPS\n";
+
+    // One wrapper of MatrixProduct: the serial kernel for threads == 1, the parallel one above
+    interface Kernel
+    {
+        double run(int n, int threads, int bkSize);
+    }
+
+    static final class Target
+    {
+        final String functionType;
+        final boolean blocked;
+        final Kernel kernel;
+
+        Target(String functionType, boolean blocked, Kernel kernel)
+        {
+            this.functionType = functionType;
+            this.blocked = blocked;
+            this.kernel = kernel;
+        }
+    }
+
+    private ScalingSweep()
+    {
+    }
+
+    static void run(Map<String, Target> targets, String[] args) throws IOException
+    {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("mode", "strong,weak");
+        options.put("kernels", String.join(",", targets.keySet()));
+        options.put("threads", defaultThreads());
+        options.put("size", "2048");
+        options.put("weakSize", "1024");
+        options.put("bkSize", "256");
+        options.put("precision", "0.02");
+        options.put("minRuns", "5");
+        options.put("maxRuns", "30");
+        options.put("out", "docs/scaling_java.csv");
+
+        for (String arg : args)
+        {
+            // a misspelled key would otherwise run the whole sweep on the defaults
+            int eq = arg.indexOf('=');
+            if (eq <= 0 || !options.containsKey(arg.substring(0, eq)))
+                throw new IllegalArgumentException("Expected one of " + options.keySet() + " as key=value, got " + arg);
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        for (String mode : options.get("mode").split(","))
+        {
+            if (!mode.trim().equals("strong") && !mode.trim().equals("weak"))
+                throw new IllegalArgumentException("Unknown mode " + mode + ", expected strong or weak");
+        }
+
+        List<Integer> threads = new ArrayList<>();
+        for (String count : options.get("threads").split(","))
+            threads.add(Integer.parseInt(count.trim()));
+        // the serial point first, it is the baseline of the others
+        if (!threads.contains(1))
+            threads.add(1);
+        threads.sort(null);
+
+        int bkSize = Integer.parseInt(options.get("bkSize"));
+        double precision = Double.parseDouble(options.get("precision"));
+        int minRuns = Integer.parseInt(options.get("minRuns"));
+        int maxRuns = Integer.parseInt(options.get("maxRuns"));
+
+        Path out = Path.of(options.get("out"));
+        boolean newFile = !Files.exists(out);
+
+        try (FileWriter file = new FileWriter(out.toFile(), true))
+        {
+            if (newFile)
+                file.write(HEADER);
+
+            for (String key : options.get("kernels").split(","))
+            {
+                Target target = targets.get(key.trim());
+                if (target == null)
+                    throw new IllegalArgumentException("Unknown kernel " + key + ", expected one of " + targets.keySet());
+
+                for (String mode : options.get("mode").split(","))
+                {
+                    boolean weak = mode.trim().equals("weak");
+                    int size = Integer.parseInt(options.get(weak ? "weakSize" : "size"));
+
+                    System.out.println("== " + (weak ? "Weak" : "Strong") + " scaling of " + target.functionType + " ==");
+
+                    double serialTime = 0;
+                    int serialSize = size;
+
+                    for (int p : threads)
+                    {
+                        int n = weak ? weakSize(size, p) : size;
+                        RunStatistics statistics = measure(target, n, p, bkSize, precision, minRuns, maxRuns);
+                        double time = statistics.mean();
+
+                        if (p == 1)
+                        {
+                            serialTime = time;
+                            serialSize = n;
+                        }
+
+                        // the work ratio is exactly 1 for strong scaling
+                        double work = Math.pow((double) n / serialSize, 3);
+                        double speedup = work * serialTime / time;
+                        double mflops = 2.0 * n * n * n / time / 1e6;
+
+                        String functionType = MatrixProduct.functionType(target.functionType, target.blocked ? bkSize : -1, -1);
+                        file.write((weak ? "Weak" : "Strong") + "," + functionType + "," + n + "," + p + ","
+                                + statistics.count() + "," + time + "," + statistics.halfWidth() + "," + serialTime + ","
+                                + speedup + "," + speedup / p + "," + mflops + "\n");
+                        file.flush();
+
+                        System.out.printf("n=%d threads=%d: %.4f s +- %.4f (%d runs), speedup %.2f, efficiency %.2f%n",
+                                n, p, time, statistics.halfWidth(), statistics.count(), speedup, speedup / p);
+                    }
+                }
+            }
+        }
+    }
+
+    // One untimed run, then runs until the confidence interval is within precision
+    static RunStatistics measure(Target target, int n, int threads, int bkSize, double precision, int minRuns, int maxRuns)
+    {
+        RunStatistics statistics = new RunStatistics();
+
+        target.kernel.run(n, threads, bkSize);
+        while (statistics.count() < maxRuns && !statistics.converged(minRuns, precision))
+            statistics.add(target.kernel.run(n, threads, bkSize));
+
+        return statistics;
+    }
+
+    // n(1) * p^(1/3), rounded to a multiple of 8 so the SIMD loops have no tail
+    static int weakSize(int size, int threads)
+    {
+        return Math.max(8, (int) Math.round(size * Math.cbrt(threads) / 8) * 8);
+    }
+
+    // 1, 2, 4, ... up to the number of cores, and the number of cores itself
+    private static String defaultThreads()
+    {
+        int cores = Runtime.getRuntime().availableProcessors();
+        StringBuilder threads = new StringBuilder("1");
+
+        for (int p = 2; p < cores; p *= 2)
+            threads.append(",").append(p);
+        if (cores > 1)
+            threads.append(",").append(cores);
+        return threads.toString();
+    }
+}
@@ -0,0 +1,277 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+// Compressed sparse row (CSR) matrices and their products, for inputs that are mostly
+// zeros: SpMM (sparse x dense) and SpGEMM (sparse x sparse, Gustavson's row by row
+// algorithm). Both do work proportional to the non-zeros instead of n^3, and run in
+// parallel over blocks of ROW_BLOCK rows of C, each block owned by one task.
+final class SparseKernels
+{
+    // Rows of C per parallel task
+    static final int ROW_BLOCK = 64;
+
+    private SparseKernels()
+    {
+    }
+
+    // Row i holds the columns colIdx[rowPtr[i] .. rowPtr[i + 1]) in increasing order and
+    // their values at the same positions in values
+    static final class Csr
+    {
+        final int rows;
+        final int cols;
+        final int[] rowPtr;
+        final int[] colIdx;
+        final double[] values;
+
+        Csr(int rows, int cols, int[] rowPtr, int[] colIdx, double[] values)
+        {
+            if (rowPtr.length != rows + 1 || colIdx.length < rowPtr[rows] || values.length < rowPtr[rows])
+                throw new IllegalArgumentException("row pointers do not match the arrays");
+            this.rows = rows;
+            this.cols = cols;
+            this.rowPtr = rowPtr;
+            this.colIdx = colIdx;
+            this.values = values;
+        }
+
+        int nonZeros()
+        {
+            return rowPtr[rows];
+        }
+
+        double density()
+        {
+            return (double) nonZeros() / ((double) rows * cols);
+        }
+
+        // Dense row-major copy, for checks against the dense kernels
+        double[] toDense()
+        {
+            double[] dense = new double[rows * cols];
+
+            for (int i = 0; i < rows; i++)
+            {
+                for (int p = rowPtr[i]; p < rowPtr[i + 1]; p++)
+                {
+                    dense[i * cols + colIdx[p]] = values[p];
+                }
+            }
+            return dense;
+        }
+    }
+
+    static Csr fromDense(double[] dense, int rows, int cols)
+    {
+        int[] rowPtr = new int[rows + 1];
+
+        for (int i = 0; i < rows; i++)
+        {
+            int count = 0;
+            for (int j = 0; j < cols; j++)
+            {
+                if (dense[i * cols + j] != 0)
+                    count++;
+            }
+            rowPtr[i + 1] = rowPtr[i] + count;
+        }
+
+        int[] colIdx = new int[rowPtr[rows]];
+        double[] values = new double[rowPtr[rows]];
+
+        for (int i = 0, p = 0; i < rows; i++)
+        {
+            for (int j = 0; j < cols; j++)
+            {
+                if (dense[i * cols + j] != 0)
+                {
+                    colIdx[p] = j;
+                    values[p++] = dense[i * cols + j];
+                }
+            }
+        }
+        return new Csr(rows, cols, rowPtr, colIdx, values);
+    }
+
+    // rows x cols matrix where every entry is non-zero with probability density, values
+    // in [1, 2), the same matrix for the same seed
+    static Csr random(int rows, int cols, double density, long seed)
+    {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] rowPtr = new int[rows + 1];
+        int[] colIdx = new int[(int) Math.min((long) rows * cols, (long) (1.1 * density * rows * cols) + 16)];
+        double[] values = new double[colIdx.length];
+        int p = 0;
+
+        for (int i = 0; i < rows; i++)
+        {
+            for (int j = 0; j < cols; j++)
+            {
+                if (random.nextDouble() >= density)
+                    continue;
+                if (p == colIdx.length)
+                {
+                    colIdx = Arrays.copyOf(colIdx, 2 * p);
+                    values = Arrays.copyOf(values, 2 * p);
+                }
+                colIdx[p] = j;
+                values[p++] = 1.0 + random.nextDouble();
+            }
+            rowPtr[i + 1] = p;
+        }
+        return new Csr(rows, cols, rowPtr, colIdx, values);
+    }
+
+    // S1 - C (A.rows x n) += A * B, B dense A.cols x n. pool may be null for a serial run.
+    static void spmm(ForkJoinPool pool, Csr matrixA, double[] matrixB, double[] matrixC, int n)
+    {
+        int rowBlocks = (matrixA.rows + ROW_BLOCK - 1) / ROW_BLOCK;
+
+        if (pool == null)
+        {
+            for (int block = 0; block < rowBlocks; block++)
+                spmmRows(matrixA, matrixB, matrixC, n, block * ROW_BLOCK);
+            return;
+        }
+
+        MatrixKernels.parallelFor(pool, 0, rowBlocks, block -> spmmRows(matrixA, matrixB, matrixC, n, block * ROW_BLOCK));
+    }
+
+    // Line multiplication restricted to the non-zeros of A: row i of C gets a(i,k) * row k
+    // of B for every stored a(i,k)
+    private static void spmmRows(Csr matrixA, double[] matrixB, double[] matrixC, int n, int bi)
+    {
+        int minValueI = Math.min(bi + ROW_BLOCK, matrixA.rows);
+
+        for (int i = bi; i < minValueI; i++)
+        {
+            for (int p = matrixA.rowPtr[i]; p < matrixA.rowPtr[i + 1]; p++)
+            {
+                double temp = matrixA.values[p];
+                int rowB = matrixA.colIdx[p] * n;
+
+                if (MatrixKernels.SIMD_AVAILABLE)
+                {
+                    VectorKernels.axpy(temp, matrixB, rowB, matrixC, i * n, n);
+                    continue;
+                }
+                for (int j = 0; j < n; j++)
+                {
+                    matrixC[i * n + j] += temp * matrixB[rowB + j];
+                }
+            }
+        }
+    }
+
+    // S2 - C = A * B with Gustavson's algorithm. A symbolic pass counts the non-zeros of
+    // every row of C so it can be allocated exactly, then the numeric pass accumulates
+    // each row in a dense work row and gathers it in column order. pool may be null.
+    static Csr spgemm(ForkJoinPool pool, Csr matrixA, Csr matrixB)
+    {
+        if (matrixA.cols != matrixB.rows)
+            throw new IllegalArgumentException("shapes do not match: " + matrixA.rows + "x" + matrixA.cols
+                    + " * " + matrixB.rows + "x" + matrixB.cols);
+
+        int rows = matrixA.rows;
+        int rowBlocks = (rows + ROW_BLOCK - 1) / ROW_BLOCK;
+        int[] rowPtr = new int[rows + 1];
+
+        if (pool == null)
+        {
+            for (int block = 0; block < rowBlocks; block++)
+                countRows(matrixA, matrixB, rowPtr, block * ROW_BLOCK);
+        }
+        else
+        {
+            MatrixKernels.parallelFor(pool, 0, rowBlocks, block -> countRows(matrixA, matrixB, rowPtr, block * ROW_BLOCK));
+        }
+
+        // row i counted into rowPtr[i + 1], turned into offsets
+        for (int i = 0; i < rows; i++)
+        {
+            rowPtr[i + 1] += rowPtr[i];
+        }
+
+        Csr matrixC = new Csr(rows, matrixB.cols, rowPtr, new int[rowPtr[rows]], new double[rowPtr[rows]]);
+
+        if (pool == null)
+        {
+            for (int block = 0; block < rowBlocks; block++)
+                multiplyRows(matrixA, matrixB, matrixC, block * ROW_BLOCK);
+        }
+        else
+        {
+            MatrixKernels.parallelFor(pool, 0, rowBlocks, block -> multiplyRows(matrixA, matrixB, matrixC, block * ROW_BLOCK));
+        }
+        return matrixC;
+    }
+
+    // Number of distinct columns reached from row i of A, for the rows of one block
+    private static void countRows(Csr matrixA, Csr matrixB, int[] rowPtr, int bi)
+    {
+        int minValueI = Math.min(bi + ROW_BLOCK, matrixA.rows);
+        // marker[j] == i + 1 when column j was already seen in row i
+        int[] marker = new int[matrixB.cols];
+
+        for (int i = bi; i < minValueI; i++)
+        {
+            int count = 0;
+
+            for (int p = matrixA.rowPtr[i]; p < matrixA.rowPtr[i + 1]; p++)
+            {
+                int k = matrixA.colIdx[p];
+
+                for (int q = matrixB.rowPtr[k]; q < matrixB.rowPtr[k + 1]; q++)
+                {
+                    int j = matrixB.colIdx[q];
+                    if (marker[j] != i + 1)
+                    {
+                        marker[j] = i + 1;
+                        count++;
+                    }
+                }
+            }
+            rowPtr[i + 1] = count;
+        }
+    }
+
+    private static void multiplyRows(Csr matrixA, Csr matrixB, Csr matrixC, int bi)
+    {
+        int minValueI = Math.min(bi + ROW_BLOCK, matrixA.rows);
+        // dense accumulator for one row of C, zero again after every row
+        double[] work = new double[matrixB.cols];
+        int[] marker = new int[matrixB.cols];
+
+        for (int i = bi; i < minValueI; i++)
+        {
+            int start = matrixC.rowPtr[i];
+            int end = start;
+
+            for (int p = matrixA.rowPtr[i]; p < matrixA.rowPtr[i + 1]; p++)
+            {
+                double temp = matrixA.values[p];
+                int k = matrixA.colIdx[p];
+
+                for (int q = matrixB.rowPtr[k]; q < matrixB.rowPtr[k + 1]; q++)
+                {
+                    int j = matrixB.colIdx[q];
+                    if (marker[j] != i + 1)
+                    {
+                        marker[j] = i + 1;
+                        matrixC.colIdx[end++] = j;
+                    }
+                    work[j] += temp * matrixB.values[q];
+                }
+            }
+
+            Arrays.sort(matrixC.colIdx, start, end);
+            for (int p = start; p < end; p++)
+            {
+                int j = matrixC.colIdx[p];
+                matrixC.values[p] = work[j];
+                work[j] = 0.0;
+            }
+        }
+    }
+}
@@ -0,0 +1,309 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Recursive Strassen multiplication, O(n^2.807).
+//
+// The matrices are zero-padded to the smallest size c * 2^d >= n with c <= cutoff,
+// so every level splits evenly and the leaves (c x c) run the blocked line kernel.
+// The seven sub-products are forked on the ForkJoinPool for the first
+// parallelDepth levels and run one after the other below that. Each sub-product
+// adds itself into the quadrants of its parent as soon as it is done, so its
+// temporaries can go straight back to the scratch pool: live scratch memory grows
+// with the number of running tasks, not with 7^depth.
+final class Strassen
+{
+    static final int DEFAULT_CUTOFF = 256;
+    static final int DEFAULT_PARALLEL_DEPTH = 2;
+
+    private final int cutoff;
+    private final int bkSize;
+    private final int parallelDepth;
+    private final Scratch scratch = new Scratch();
+
+    private Strassen(int cutoff, int bkSize, int parallelDepth)
+    {
+        this.cutoff = cutoff;
+        this.bkSize = bkSize;
+        this.parallelDepth = parallelDepth;
+    }
+
+    // C += A * B for n x n row-major matrices. pool may be null for a serial run.
+    static void multiply(ForkJoinPool pool, double[] matrixA, double[] matrixB, double[] matrixC, int n, int cutoff, int bkSize)
+    {
+        if (cutoff < 1)
+            throw new IllegalArgumentException("cutoff must be positive");
+
+        int levels = 0;
+        while ((n + (1 << levels) - 1) >> levels > cutoff)
+            levels++;
+        int padded = ((n + (1 << levels) - 1) >> levels) << levels;
+
+        Strassen strassen = new Strassen(cutoff, bkSize, pool == null ? 0 : DEFAULT_PARALLEL_DEPTH);
+
+        View a = strassen.pad(matrixA, n, padded);
+        View b = strassen.pad(matrixB, n, padded);
+        double[] product = strassen.scratch.acquire(padded * padded);
+
+        if (pool == null)
+            strassen.product(a, b, product, padded, 0);
+        else
+            pool.submit(() -> strassen.product(a, b, product, padded, 0)).join();
+
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                matrixC[i * n + j] += product[i * padded + j];
+            }
+        }
+    }
+
+    private View pad(double[] matrix, int n, int padded)
+    {
+        if (padded == n)
+            return new View(matrix, 0, n);
+
+        double[] copy = new double[padded * padded];
+        for (int i = 0; i < n; i++)
+            System.arraycopy(matrix, i * n, copy, i * padded, n);
+        return new View(copy, 0, padded);
+    }
+
+    // out (s x s, contiguous) = A * B
+    private void product(View a, View b, double[] out, int s, int depth)
+    {
+        if (s <= cutoff || (s & 1) != 0)
+        {
+            leaf(a, b, out, s);
+            return;
+        }
+
+        int h = s / 2;
+        Arrays.fill(out, 0, s * s, 0.0);
+
+        if (depth < parallelDepth)
+        {
+            Object lock = new Object();
+            ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[7];
+            for (int m = 0; m < 7; m++)
+            {
+                final int index = m;
+                tasks[m] = ForkJoinTask.adapt(() -> {
+                    double[] result = subProduct(index, a, b, h, depth);
+                    synchronized (lock)
+                    {
+                        accumulate(index, result, out, h);
+                    }
+                    scratch.release(result);
+                });
+            }
+            ForkJoinTask.invokeAll(tasks);
+            return;
+        }
+
+        for (int m = 0; m < 7; m++)
+        {
+            double[] result = subProduct(m, a, b, h, depth);
+            accumulate(m, result, out, h);
+            scratch.release(result);
+        }
+    }
+
+    // M1 = (A11 + A22)(B11 + B22)    M5 = (A11 + A12) B22
+    // M2 = (A21 + A22) B11           M6 = (A21 - A11)(B11 + B12)
+    // M3 = A11 (B12 - B22)           M7 = (A12 - A22)(B21 + B22)
+    // M4 = A22 (B21 - B11)
+    private double[] subProduct(int index, View a, View b, int h, int depth)
+    {
+        View a11 = a.quadrant(0, 0, h), a12 = a.quadrant(0, 1, h), a21 = a.quadrant(1, 0, h), a22 = a.quadrant(1, 1, h);
+        View b11 = b.quadrant(0, 0, h), b12 = b.quadrant(0, 1, h), b21 = b.quadrant(1, 0, h), b22 = b.quadrant(1, 1, h);
+
+        ArrayDeque<double[]> temps = new ArrayDeque<>(2);
+        View left, right;
+
+        switch (index)
+        {
+            case 0:
+                left = sum(a11, a22, 1, h, temps);
+                right = sum(b11, b22, 1, h, temps);
+                break;
+            case 1:
+                left = sum(a21, a22, 1, h, temps);
+                right = b11;
+                break;
+            case 2:
+                left = a11;
+                right = sum(b12, b22, -1, h, temps);
+                break;
+            case 3:
+                left = a22;
+                right = sum(b21, b11, -1, h, temps);
+                break;
+            case 4:
+                left = sum(a11, a12, 1, h, temps);
+                right = b22;
+                break;
+            case 5:
+                left = sum(a21, a11, -1, h, temps);
+                right = sum(b11, b12, 1, h, temps);
+                break;
+            default:
+                left = sum(a12, a22, -1, h, temps);
+                right = sum(b21, b22, 1, h, temps);
+                break;
+        }
+
+        double[] result = scratch.acquire(h * h);
+        product(left, right, result, h, depth + 1);
+
+        for (double[] temp : temps)
+            scratch.release(temp);
+
+        return result;
+    }
+
+    // C11 = M1 + M4 - M5 + M7    C12 = M3 + M5
+    // C21 = M2 + M4              C22 = M1 - M2 + M3 + M6
+    private static void accumulate(int index, double[] m, double[] out, int h)
+    {
+        switch (index)
+        {
+            case 0:
+                addInto(m, 1, out, 0, 0, h);
+                addInto(m, 1, out, 1, 1, h);
+                break;
+            case 1:
+                addInto(m, 1, out, 1, 0, h);
+                addInto(m, -1, out, 1, 1, h);
+                break;
+            case 2:
+                addInto(m, 1, out, 0, 1, h);
+                addInto(m, 1, out, 1, 1, h);
+                break;
+            case 3:
+                addInto(m, 1, out, 0, 0, h);
+                addInto(m, 1, out, 1, 0, h);
+                break;
+            case 4:
+                addInto(m, -1, out, 0, 0, h);
+                addInto(m, 1, out, 0, 1, h);
+                break;
+            case 5:
+                addInto(m, 1, out, 1, 1, h);
+                break;
+            default:
+                addInto(m, 1, out, 0, 0, h);
+                break;
+        }
+    }
+
+    // out quadrant (qi, qj) += sign * m, out is 2h x 2h contiguous
+    private static void addInto(double[] m, int sign, double[] out, int qi, int qj, int h)
+    {
+        int s = 2 * h;
+        for (int i = 0; i < h; i++)
+        {
+            int row = (qi * h + i) * s + qj * h;
+            for (int j = 0; j < h; j++)
+            {
+                out[row + j] += sign * m[i * h + j];
+            }
+        }
+    }
+
+    private View sum(View x, View y, int sign, int h, ArrayDeque<double[]> temps)
+    {
+        double[] dst = scratch.acquire(h * h);
+        temps.push(dst);
+
+        for (int i = 0; i < h; i++)
+        {
+            int rx = x.offset + i * x.ld;
+            int ry = y.offset + i * y.ld;
+            for (int j = 0; j < h; j++)
+            {
+                dst[i * h + j] = x.data[rx + j] + sign * y.data[ry + j];
+            }
+        }
+        return new View(dst, 0, h);
+    }
+
+    // out (s x s, contiguous) = A * B with the blocked line kernel
+    private void leaf(View a, View b, double[] out, int s)
+    {
+        Arrays.fill(out, 0, s * s, 0.0);
+
+        for (int bi = 0; bi < s; bi = bi + bkSize)
+        {
+            for (int bj = 0; bj < s; bj = bj + bkSize)
+            {
+                for (int bk = 0; bk < s; bk = bk + bkSize)
+                {
+                    int minValueI = Math.min(bi + bkSize, s);
+                    int minValueJ = Math.min(bj + bkSize, s);
+                    int minValueK = Math.min(bk + bkSize, s);
+
+                    for (int i = bi; i < minValueI; i++)
+                    {
+                        for (int j = bj; j < minValueJ; j++)
+                        {
+                            double sum_value = a.data[a.offset + i * a.ld + j];
+                            int rowB = b.offset + j * b.ld;
+
+                            if (MatrixKernels.SIMD_AVAILABLE)
+                            {
+                                VectorKernels.axpy(sum_value, b.data, rowB + bk, out, i * s + bk, minValueK - bk);
+                                continue;
+                            }
+                            for (int k = bk; k < minValueK; k++)
+                            {
+                                out[i * s + k] += sum_value * b.data[rowB + k];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Square sub-matrix of a row-major array
+    private static final class View
+    {
+        final double[] data;
+        final int offset;
+        final int ld;
+
+        View(double[] data, int offset, int ld)
+        {
+            this.data = data;
+            this.offset = offset;
+            this.ld = ld;
+        }
+
+        View quadrant(int qi, int qj, int h)
+        {
+            return new View(data, offset + qi * h * ld + qj * h, ld);
+        }
+    }
+
+    // Free lists of scratch buffers by length, shared by all tasks of one multiply
+    private static final class Scratch
+    {
+        private final ConcurrentHashMap<Integer, ConcurrentLinkedDeque<double[]>> free = new ConcurrentHashMap<>();
+
+        double[] acquire(int length)
+        {
+            double[] buffer = free.computeIfAbsent(length, l -> new ConcurrentLinkedDeque<>()).poll();
+            return buffer != null ? buffer : new double[length];
+        }
+
+        void release(double[] buffer)
+        {
+            free.computeIfAbsent(buffer.length, l -> new ConcurrentLinkedDeque<>()).push(buffer);
+        }
+    }
+}
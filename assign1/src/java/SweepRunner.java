@@ -0,0 +1,289 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Repetitions and checkpoints of the test cases sweep.
+//
+// Every point (one kernel, block size, thread count and n) runs once untimed, then
+// repeats until the 95% confidence interval of its mean is within precision of the mean,
+// with at least minRuns and at most maxRuns runs, as the points of ScalingSweep. A point
+// that records several kernels per repetition (the Chain, GEMM, Sparse and Parallel tests
+// interleave them) repeats until all of them are.
+//
+// Every finished point is appended to the checkpoint with the length of each output file
+// at that moment. A sweep started with a checkpoint present skips the points it lists and
+// first cuts the output files back to the last lengths, dropping the runs of the point
+// that was interrupted, so a killed sweep resumes where it stopped without duplicate
+// rows. The checkpoint is deleted once the whole sweep is over.
+//
+// The runner writes the header of every output file that is missing or empty before it
+// records any length, so cutting a file back never drops its header.
+//
+// Checkpoint lines, tab separated:
+//   outputs <length>,<length>,...                                  when the sweep starts
+//   point <key> <runs> <max relative half width> <length>,...     after every point
+//
+// Arguments of "MatrixProduct test" (all optional, key=value):
+//   precision=0.02 minRuns=5 maxRuns=30
+//   checkpoint=docs/checkpoint_java.tsv
+//   sections=normal,inline,...   sections of the test cases to run, "all" for every one
+//                                of SECTIONS; DEFAULT_SECTIONS when not given
+final class SweepRunner
+{
+    // Sections of the test cases, in the order they run
+    static final List<String> SECTIONS = List.of("normal", "inline", "block", "blockLine", "specialized", "simd",
+            "packed", "strassen", "offHeap", "gemm", "batched", "sparse", "morton", "nativeBlas", "chain", "lu",
+            "outOfCore", "distributed", "float", "autotuned", "parallel", "parallelPacked", "parallelStrassen");
+    // The original serial and parallel kernels; the others take days at the sweep's sizes
+    static final String DEFAULT_SECTIONS = "normal,inline,block,blockLine,parallel";
+
+    private final Path checkpoint;
+    // output files and their headers, in checkpoint order
+    private final Map<Path, String> outputs;
+    private final double precision;
+    private final int minRuns;
+    private final int maxRuns;
+    private final Set<String> sections = new HashSet<>();
+
+    // keys of the points of the checkpoint
+    private final Set<String> done = new HashSet<>();
+    private final FileWriter writer;
+
+    // The repetitions of one point, driven by the test cases as
+    //     SweepRunner.Point point = sweep.point(functionType, n);
+    //     if (point.pending())
+    //         OnMultX(...);
+    //     while (point.repeat())
+    //         point.add(record(..., OnMultX(...)));
+    final class Point
+    {
+        private final String key;
+        private final List<RunStatistics> series = new ArrayList<>();
+        private boolean finished;
+        private int runs;
+        // series the next add goes to, back to 0 on every repetition
+        private int next;
+
+        private Point(String key, boolean finished)
+        {
+            this.key = key;
+            this.finished = finished;
+        }
+
+        // false when the checkpoint has the point, whose warmup can then be skipped too
+        boolean pending()
+        {
+            return !finished;
+        }
+
+        // true while the point needs another repetition; the first false checkpoints it
+        boolean repeat() throws IOException
+        {
+            if (finished)
+                return false;
+
+            if (runs >= maxRuns || (runs > 0 && converged()))
+            {
+                finished = true;
+                finish(this);
+                return false;
+            }
+
+            runs++;
+            next = 0;
+            return true;
+        }
+
+        // Time of the next kernel of this repetition, in the order they run
+        void add(double time)
+        {
+            if (next == series.size())
+                series.add(new RunStatistics());
+            series.get(next++).add(time);
+        }
+
+        private boolean converged()
+        {
+            for (RunStatistics statistics : series)
+            {
+                if (!statistics.converged(minRuns, precision))
+                    return false;
+            }
+            return true;
+        }
+
+        private double relativeHalfWidth()
+        {
+            double widest = 0;
+            for (RunStatistics statistics : series)
+                widest = Math.max(widest, statistics.relativeHalfWidth());
+            return widest;
+        }
+    }
+
+    // outputs are the files the sweep appends to, cut back on a resume, each with its header
+    // line. The files must not be open yet.
+    SweepRunner(Map<Path, String> outputs, String[] args) throws IOException
+    {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("precision", "0.02");
+        options.put("minRuns", "5");
+        options.put("maxRuns", "30");
+        options.put("checkpoint", "docs/checkpoint_java.tsv");
+        options.put("sections", DEFAULT_SECTIONS);
+
+        for (String arg : args)
+        {
+            int eq = arg.indexOf('=');
+            if (eq <= 0 || !options.containsKey(arg.substring(0, eq)))
+                throw new IllegalArgumentException("Expected one of " + options.keySet() + " as key=value, got " + arg);
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        this.checkpoint = Path.of(options.get("checkpoint"));
+        this.outputs = outputs;
+        this.precision = Double.parseDouble(options.get("precision"));
+        this.minRuns = Integer.parseInt(options.get("minRuns"));
+        this.maxRuns = Integer.parseInt(options.get("maxRuns"));
+
+        if (minRuns < 2 || maxRuns < minRuns)
+            throw new IllegalArgumentException("Need 2 <= minRuns <= maxRuns");
+
+        for (String section : options.get("sections").split(","))
+        {
+            if (section.equals("all"))
+                sections.addAll(SECTIONS);
+            else if (SECTIONS.contains(section))
+                sections.add(section);
+            else
+                throw new IllegalArgumentException("Expected all or sections of " + SECTIONS + ", got " + section);
+        }
+
+        boolean resume = Files.exists(checkpoint);
+        if (resume)
+            resume();
+
+        // after resume, which may have cut a file written by an older sweep down to nothing
+        for (Map.Entry<Path, String> output : outputs.entrySet())
+        {
+            if (!Files.exists(output.getKey()) || Files.size(output.getKey()) == 0)
+                Files.writeString(output.getKey(), output.getValue());
+        }
+
+        writer = new FileWriter(checkpoint.toFile(), true);
+        if (!resume)
+        {
+            writer.write("outputs\t" + lengths() + "\n");
+            writer.flush();
+        }
+    }
+
+    Point point(String functionType, int matrixSize)
+    {
+        String key = functionType + "," + matrixSize;
+        return new Point(key, done.contains(key));
+    }
+
+    // true when the section was asked for
+    boolean includes(String section)
+    {
+        return sections.contains(section);
+    }
+
+    // Points of the checkpoint the sweep started with
+    int resumed()
+    {
+        return done.size();
+    }
+
+    // The sweep is over, the next one starts from scratch
+    void complete() throws IOException
+    {
+        writer.close();
+        Files.delete(checkpoint);
+    }
+
+    // The sweep stopped early, the checkpoint stays for the next one
+    void close() throws IOException
+    {
+        writer.close();
+    }
+
+    private void finish(Point point) throws IOException
+    {
+        writer.write("point\t" + point.key + "\t" + point.runs + "\t" + point.relativeHalfWidth() + "\t" + lengths() + "\n");
+        writer.flush();
+    }
+
+    // Reads the points done and cuts the outputs back to the last lengths written
+    private void resume() throws IOException
+    {
+        // a line cut short by the kill has no newline, it is dropped
+        String content = Files.readString(checkpoint);
+        int end = content.lastIndexOf('\n') + 1;
+        if (end < content.length())
+        {
+            try (FileChannel channel = FileChannel.open(checkpoint, StandardOpenOption.WRITE))
+            {
+                channel.truncate(end);
+            }
+        }
+
+        String last = null;
+
+        for (String line : content.substring(0, end).split("\n"))
+        {
+            String[] fields = line.split("\t");
+
+            if (fields[0].equals("outputs") && fields.length == 2)
+                last = fields[1];
+            else if (fields[0].equals("point") && fields.length == 5)
+            {
+                done.add(fields[1]);
+                last = fields[4];
+            }
+        }
+
+        if (last == null)
+            return;
+
+        String[] lengths = last.split(",");
+        if (lengths.length != outputs.size())
+            throw new IllegalStateException(checkpoint + " was written for " + lengths.length + " output files, not " + outputs.size());
+
+        int f = 0;
+        for (Path output : outputs.keySet())
+        {
+            long length = Long.parseLong(lengths[f++]);
+
+            if (Files.exists(output) && Files.size(output) > length)
+            {
+                try (FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE))
+                {
+                    channel.truncate(length);
+                }
+            }
+        }
+    }
+
+    private String lengths() throws IOException
+    {
+        StringBuilder lengths = new StringBuilder();
+        for (Path output : outputs.keySet())
+        {
+            if (lengths.length() > 0)
+                lengths.append(",");
+            lengths.append(Files.exists(output) ? Files.size(output) : 0);
+        }
+        return lengths.toString();
+    }
+}
@@ -0,0 +1,248 @@
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Explicit SIMD versions of the line kernels. The inner loop of OnMultLine and
+// OnMultBlockLine is an AXPY (c += a * b over a row), which maps directly onto
+// fused multiply-add lanes. Only reached through MatrixKernels, which checks
+// that jdk.incubator.vector is present and falls back to the scalar loops otherwise.
+final class VectorKernels
+{
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    // Same vector width, twice the lanes
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private VectorKernels()
+    {
+    }
+
+    static int lanes()
+    {
+        return SPECIES.length();
+    }
+
+    // Independent FMA chains of fmaThroughput, enough to hide the FMA latency on two pipes
+    static final int FMA_CHAINS = 12;
+
+    // iterations rounds of FMA_CHAINS vector FMAs, iterations * FMA_CHAINS * lanes() * 2 flops.
+    // Returns a value that depends on every result so the loop cannot be removed.
+    static double fmaThroughput(long iterations, double seed)
+    {
+        DoubleVector x = DoubleVector.broadcast(SPECIES, 0.999999);
+        DoubleVector y = DoubleVector.broadcast(SPECIES, 1e-7);
+        DoubleVector a0 = DoubleVector.broadcast(SPECIES, seed), a1 = a0.add(1), a2 = a0.add(2), a3 = a0.add(3);
+        DoubleVector a4 = a0.add(4), a5 = a0.add(5), a6 = a0.add(6), a7 = a0.add(7);
+        DoubleVector a8 = a0.add(8), a9 = a0.add(9), a10 = a0.add(10), a11 = a0.add(11);
+
+        for (long it = 0; it < iterations; it++)
+        {
+            a0 = a0.lanewise(VectorOperators.FMA, x, y);
+            a1 = a1.lanewise(VectorOperators.FMA, x, y);
+            a2 = a2.lanewise(VectorOperators.FMA, x, y);
+            a3 = a3.lanewise(VectorOperators.FMA, x, y);
+            a4 = a4.lanewise(VectorOperators.FMA, x, y);
+            a5 = a5.lanewise(VectorOperators.FMA, x, y);
+            a6 = a6.lanewise(VectorOperators.FMA, x, y);
+            a7 = a7.lanewise(VectorOperators.FMA, x, y);
+            a8 = a8.lanewise(VectorOperators.FMA, x, y);
+            a9 = a9.lanewise(VectorOperators.FMA, x, y);
+            a10 = a10.lanewise(VectorOperators.FMA, x, y);
+            a11 = a11.lanewise(VectorOperators.FMA, x, y);
+        }
+
+        return a0.add(a1).add(a2).add(a3).add(a4).add(a5).add(a6).add(a7).add(a8).add(a9).add(a10).add(a11)
+                .reduceLanes(VectorOperators.ADD);
+    }
+
+    // y[yOff .. yOff+len) += alpha * x[xOff .. xOff+len)
+    static void axpy(double alpha, double[] x, int xOff, double[] y, int yOff, int len)
+    {
+        DoubleVector va = DoubleVector.broadcast(SPECIES, alpha);
+        int upper = SPECIES.loopBound(len);
+        int k = 0;
+
+        for (; k < upper; k += SPECIES.length())
+        {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOff + k);
+            DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOff + k);
+            vx.lanewise(VectorOperators.FMA, va, vy).intoArray(y, yOff + k);
+        }
+
+        // scalar tail
+        for (; k < len; k++)
+        {
+            y[yOff + k] += alpha * x[xOff + k];
+        }
+    }
+
+    // x[xOff .. xOff+len) . y[yOff .. yOff+len)
+    static double dot(double[] x, int xOff, double[] y, int yOff, int len)
+    {
+        DoubleVector vsum = DoubleVector.zero(SPECIES);
+        int upper = SPECIES.loopBound(len);
+        int k = 0;
+
+        for (; k < upper; k += SPECIES.length())
+        {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOff + k);
+            DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOff + k);
+            vsum = vx.lanewise(VectorOperators.FMA, vy, vsum);
+        }
+
+        double sum = vsum.reduceLanes(VectorOperators.ADD);
+
+        // scalar tail
+        for (; k < len; k++)
+        {
+            sum += x[xOff + k] * y[yOff + k];
+        }
+        return sum;
+    }
+
+    // Line multiplication restricted to the rows [fromI, toI) of C
+    static void multLineRows(double[] matrixA, double[] matrixB, double[] matrixC, int n, int fromI, int toI)
+    {
+        for (int i = fromI; i < toI; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                axpy(matrixA[i * n + j], matrixB, j * n, matrixC, i * n, n);
+            }
+        }
+    }
+
+    // Inline block multiplication restricted to the rows [bi, minValueI) of C
+    static void multBlockLineRows(double[] matrixA, double[] matrixB, double[] matrixC, int n, int bkSize, int bi, int minValueI)
+    {
+        for (int bj = 0; bj < n; bj = bj + bkSize)
+        {
+            for (int bk = 0; bk < n; bk = bk + bkSize)
+            {
+                int minValueJ = Math.min(bj + bkSize, n);
+                int minValueK = Math.min(bk + bkSize, n);
+
+                for (int i = bi; i < minValueI; i++)
+                {
+                    for (int j = bj; j < minValueJ; j++)
+                    {
+                        axpy(matrixA[j + i * n], matrixB, bk + j * n, matrixC, bk + i * n, minValueK - bk);
+                    }
+                }
+            }
+        }
+    }
+
+    // y[yOff .. yOff+len) += alpha * x[xOff .. xOff+len), offsets in doubles
+    static void axpy(double alpha, MemorySegment x, long xOff, MemorySegment y, long yOff, long len)
+    {
+        DoubleVector va = DoubleVector.broadcast(SPECIES, alpha);
+        long upper = len - len % SPECIES.length();
+        long k = 0;
+
+        for (; k < upper; k += SPECIES.length())
+        {
+            DoubleVector vx = DoubleVector.fromMemorySegment(SPECIES, x, (xOff + k) * Double.BYTES, ByteOrder.nativeOrder());
+            DoubleVector vy = DoubleVector.fromMemorySegment(SPECIES, y, (yOff + k) * Double.BYTES, ByteOrder.nativeOrder());
+            vx.lanewise(VectorOperators.FMA, va, vy).intoMemorySegment(y, (yOff + k) * Double.BYTES, ByteOrder.nativeOrder());
+        }
+
+        // scalar tail
+        for (; k < len; k++)
+        {
+            y.setAtIndex(ValueLayout.JAVA_DOUBLE, yOff + k,
+                    y.getAtIndex(ValueLayout.JAVA_DOUBLE, yOff + k) + alpha * x.getAtIndex(ValueLayout.JAVA_DOUBLE, xOff + k));
+        }
+    }
+
+    // Off-heap line multiplication restricted to the rows [fromI, toI) of C
+    static void multLineRows(MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n, long fromI, long toI)
+    {
+        for (long i = fromI; i < toI; i++)
+        {
+            for (long j = 0; j < n; j++)
+            {
+                axpy(matrixA.getAtIndex(ValueLayout.JAVA_DOUBLE, i * n + j), matrixB, j * n, matrixC, i * n, n);
+            }
+        }
+    }
+
+    // Off-heap inline block multiplication restricted to the rows [bi, minValueI) of C
+    static void multBlockLineRows(MemorySegment matrixA, MemorySegment matrixB, MemorySegment matrixC, long n, int bkSize, long bi, long minValueI)
+    {
+        for (long bj = 0; bj < n; bj = bj + bkSize)
+        {
+            for (long bk = 0; bk < n; bk = bk + bkSize)
+            {
+                long minValueJ = Math.min(bj + bkSize, n);
+                long minValueK = Math.min(bk + bkSize, n);
+
+                for (long i = bi; i < minValueI; i++)
+                {
+                    for (long j = bj; j < minValueJ; j++)
+                    {
+                        axpy(matrixA.getAtIndex(ValueLayout.JAVA_DOUBLE, j + i * n), matrixB, bk + j * n, matrixC, bk + i * n, minValueK - bk);
+                    }
+                }
+            }
+        }
+    }
+
+    // y[yOff .. yOff+len) += alpha * x[xOff .. xOff+len), single precision
+    static void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int len)
+    {
+        FloatVector va = FloatVector.broadcast(FLOAT_SPECIES, alpha);
+        int upper = FLOAT_SPECIES.loopBound(len);
+        int k = 0;
+
+        for (; k < upper; k += FLOAT_SPECIES.length())
+        {
+            FloatVector vx = FloatVector.fromArray(FLOAT_SPECIES, x, xOff + k);
+            FloatVector vy = FloatVector.fromArray(FLOAT_SPECIES, y, yOff + k);
+            vx.lanewise(VectorOperators.FMA, va, vy).intoArray(y, yOff + k);
+        }
+
+        // scalar tail
+        for (; k < len; k++)
+        {
+            y[yOff + k] += alpha * x[xOff + k];
+        }
+    }
+
+    // Single precision line multiplication restricted to the rows [fromI, toI) of C
+    static void multLineRows(float[] matrixA, float[] matrixB, float[] matrixC, int n, int fromI, int toI)
+    {
+        for (int i = fromI; i < toI; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                axpy(matrixA[i * n + j], matrixB, j * n, matrixC, i * n, n);
+            }
+        }
+    }
+
+    // Single precision inline block multiplication restricted to the rows [bi, minValueI) of C
+    static void multBlockLineRows(float[] matrixA, float[] matrixB, float[] matrixC, int n, int bkSize, int bi, int minValueI)
+    {
+        for (int bj = 0; bj < n; bj = bj + bkSize)
+        {
+            for (int bk = 0; bk < n; bk = bk + bkSize)
+            {
+                int minValueJ = Math.min(bj + bkSize, n);
+                int minValueK = Math.min(bk + bkSize, n);
+
+                for (int i = bi; i < minValueI; i++)
+                {
+                    for (int j = bj; j < minValueJ; j++)
+                    {
+                        axpy(matrixA[j + i * n], matrixB, bk + j * n, matrixC, bk + i * n, minValueK - bk);
+                    }
+                }
+            }
+        }
+    }
+}
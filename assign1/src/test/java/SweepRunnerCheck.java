@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// Checks of the SweepRunner checkpoint (make check_java): a sweep killed before its first
+// point resumes with the headers of its output files intact.
+public class SweepRunnerCheck
+{
+    private static final String HEADER_A = "functionType,MatrixSize,Real Time\n";
+    private static final String HEADER_B = "functionType,MatrixSize,Max Relative Error\n";
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException
+    {
+        Path directory = Files.createTempDirectory("sweep-check");
+        try
+        {
+            killedBeforeFirstPoint(directory.resolve("killed"));
+            oldCheckpointWithoutHeaders(directory.resolve("old"));
+        }
+        finally
+        {
+            try (Stream<Path> paths = Files.walk(directory))
+            {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+
+        if (failures > 0)
+        {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All checks passed");
+    }
+
+    // The first point wrote a row and was killed before it was checkpointed
+    private static void killedBeforeFirstPoint(Path directory) throws IOException
+    {
+        Files.createDirectories(directory);
+        Map<Path, String> outputs = outputs(directory);
+        String[] args = {"checkpoint=" + directory.resolve("checkpoint.tsv")};
+
+        // no close(): the checkpoint is left as a kill leaves it
+        new SweepRunner(outputs, args);
+        Files.writeString(directory.resolve("a.csv"), "Normal Mult,600,0.5\n", StandardOpenOption.APPEND);
+
+        SweepRunner resumed = new SweepRunner(outputs, args);
+        check("killed: nothing resumed", resumed.resumed() == 0);
+        check("killed: a.csv is its header", Files.readString(directory.resolve("a.csv")).equals(HEADER_A));
+        check("killed: b.csv is its header", Files.readString(directory.resolve("b.csv")).equals(HEADER_B));
+
+        // a point finished after the resume keeps the header ahead of its row
+        SweepRunner.Point point = resumed.point("Normal Mult", 600);
+        while (point.repeat())
+        {
+            Files.writeString(directory.resolve("a.csv"), "Normal Mult,600,0.5\n", StandardOpenOption.APPEND);
+            point.add(0.5);
+        }
+        resumed.close();
+
+        SweepRunner again = new SweepRunner(outputs, args);
+        check("killed: the point is resumed", again.resumed() == 1 && !again.point("Normal Mult", 600).pending());
+        check("killed: a.csv starts with its header", Files.readString(directory.resolve("a.csv")).startsWith(HEADER_A + "Normal Mult,600,"));
+        again.complete();
+        check("killed: complete deletes the checkpoint", !Files.exists(directory.resolve("checkpoint.tsv")));
+    }
+
+    // A checkpoint written before the runner wrote the headers records empty files
+    private static void oldCheckpointWithoutHeaders(Path directory) throws IOException
+    {
+        Files.createDirectories(directory);
+        Map<Path, String> outputs = outputs(directory);
+        Path checkpoint = directory.resolve("checkpoint.tsv");
+        Files.writeString(checkpoint, "outputs\t0,0\n");
+        Files.writeString(directory.resolve("a.csv"), "Normal Mult,600,0.5\n");
+
+        SweepRunner resumed = new SweepRunner(outputs, new String[] {"checkpoint=" + checkpoint});
+        resumed.close();
+        check("old: a.csv is its header", Files.readString(directory.resolve("a.csv")).equals(HEADER_A));
+        check("old: b.csv is its header", Files.readString(directory.resolve("b.csv")).equals(HEADER_B));
+    }
+
+    private static Map<Path, String> outputs(Path directory)
+    {
+        Map<Path, String> outputs = new LinkedHashMap<>();
+        outputs.put(directory.resolve("a.csv"), HEADER_A);
+        outputs.put(directory.resolve("b.csv"), HEADER_B);
+        return outputs;
+    }
+
+    private static void check(String name, boolean passed)
+    {
+        System.out.println((passed ? "ok     " : "FAILED ") + name);
+        if (!passed)
+            failures++;
+    }
+}
@@ -18,7 +18,7 @@ import java.util.List;
 
 public class ChatClientHandler implements Runnable {
     public static ArrayList<ChatClientHandler> clientHandlers = new ArrayList<>();
-    private Socket socket;
+    private Closeable connection;
     private BufferedReader bufferedReader;
     private BufferedWriter bufferedWriter;
     private User currentUser;
@@ -28,6 +28,8 @@ public class ChatClientHandler implements Runnable {
     private static final ThreadSafeRoomManager roomManager;
     private String currentRoomName;
     private UserSession session;
+    // the first line of a connection is its TOKEN, the welcome comes after it
+    private boolean welcomeSent = false;
 
     static {
         authManager = new AuthenticationManager("code/data/serverData/users.txt");
@@ -37,7 +39,7 @@ public class ChatClientHandler implements Runnable {
 
     public ChatClientHandler(Socket socket) {
         try {
-            this.socket = socket;
+            this.connection = socket;
             this.bufferedReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
             this.bufferedWriter = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
         } catch (IOException e) {
@@ -45,36 +47,71 @@ public class ChatClientHandler implements Runnable {
         }
     }
 
+    // For transports that push the lines in with handleLine instead of calling run
+    // (NioChatServer). Output goes to writer, closeEverything closes connection.
+    public ChatClientHandler(Writer writer, Closeable connection) {
+        this.connection = connection;
+        // a small buffer: the transport keeps its own until the flush
+        this.bufferedWriter = new BufferedWriter(writer, 256);
+    }
+
     @Override
     public void run() {
         try {
-            while (socket.isConnected() && clientState != ClientState.DISCONNECTED) {
-                switch (clientState) {
-                    case AUTHENTICATING:
-                        handleAuthentication();
-                        break;
-                    case IN_LOBBY:
-                        handleLobby();
-                        break;
-                    case IN_CHAT_ROOM:
-                        handleChatRoom();
-                        break;
+            while (clientState != ClientState.DISCONNECTED) {
+                String input = bufferedReader.readLine();
+                if (input == null) {
+                    clientState = ClientState.DISCONNECTED;
+                    return;
                 }
+                handleLine(input);
             }
         } catch (IOException e) {
             System.err.println("Error in client handler: " + e.getMessage());
         } finally {
-            closeEverything(socket, bufferedReader, bufferedWriter);
+            closeEverything(connection, bufferedReader, bufferedWriter);
         }
     }
 
-    private void handleAuthentication() throws IOException {
-        String firstInput = bufferedReader.readLine();
-        if (firstInput == null) {
-            clientState = ClientState.DISCONNECTED;
-            return;
+    // One line from the client, handled by the state the client is in. Entering the
+    // lobby or a room sends its menu, as when the client first gets there.
+    public void handleLine(String input) throws IOException {
+        ClientState previousState = clientState;
+
+        switch (clientState) {
+            case AUTHENTICATING:
+                if (!welcomeSent) {
+                    handleAuthentication(input);
+                } else {
+                    handleAuthenticationCommand(input);
+                }
+                break;
+            case IN_LOBBY:
+                handleLobbyCommand(input);
+                break;
+            case IN_CHAT_ROOM:
+                handleChatRoomMessage(input);
+                break;
         }
 
+        if (clientState != previousState) {
+            if (clientState == ClientState.IN_LOBBY) {
+                handleLobby();
+            } else if (clientState == ClientState.IN_CHAT_ROOM) {
+                handleChatRoom();
+            }
+        }
+    }
+
+    public boolean isDisconnected() {
+        return clientState == ClientState.DISCONNECTED;
+    }
+
+    public void disconnect() {
+        closeEverything(connection, bufferedReader, bufferedWriter);
+    }
+
+    private void handleAuthentication(String firstInput) throws IOException {
         if (firstInput.startsWith("TOKEN ")) {
             String token = firstInput.substring(6).trim();
             session = authManager.getUserSessionByToken(token);
@@ -104,72 +141,67 @@ public class ChatClientHandler implements Runnable {
             }
         }
 
-            bufferedWriter.write("Welcome to the chat server! Please login or register.");
-            bufferedWriter.newLine();
-            bufferedWriter.write("You can also just leave :)");
-            bufferedWriter.newLine();
-            bufferedWriter.write("Enter commands LOGIN <username> <password>, REGISTER <username> <password> or EXIT");
-            bufferedWriter.newLine();
-            bufferedWriter.flush();
+        welcomeSent = true;
+        bufferedWriter.write("Welcome to the chat server! Please login or register.");
+        bufferedWriter.newLine();
+        bufferedWriter.write("You can also just leave :)");
+        bufferedWriter.newLine();
+        bufferedWriter.write("Enter commands LOGIN <username> <password>, REGISTER <username> <password> or EXIT");
+        bufferedWriter.newLine();
+        bufferedWriter.flush();
+    }
 
-            while (clientState == ClientState.AUTHENTICATING) {
-                String input = bufferedReader.readLine();
-                if (input == null) {
-                    clientState = ClientState.DISCONNECTED;
-                    return;
-                }
-                System.out.println(input);
-                String[] parts = input.split(" ", 4);
-                if (parts.length != 3) {
-                    if(parts.length == 1 &  Command.fromString(parts[0].toUpperCase()).equals(Command.EXIT)){
-                        clientState = ClientState.DISCONNECTED;
-                        sendResponse(ServerResponse.EXIT_USER, "Bye bye!");
-                        return;
-                    }
-                    sendError("Invalid command format. Use: COMMAND username password");
-                    continue;
-                }
+    private void handleAuthenticationCommand(String input) throws IOException {
+        System.out.println(input);
+        String[] parts = input.split(" ", 4);
+        if (parts.length != 3) {
+            if(parts.length == 1 &  Command.fromString(parts[0].toUpperCase()).equals(Command.EXIT)){
+                clientState = ClientState.DISCONNECTED;
+                sendResponse(ServerResponse.EXIT_USER, "Bye bye!");
+                return;
+            }
+            sendError("Invalid command format. Use: COMMAND username password");
+            return;
+        }
 
-                String action = parts[0].toUpperCase();
-                String username = parts[1];
-                String password = parts[2];
-                Command command = Command.fromString(action);
-                if (command.equals(Command.LOGIN) && loggedInManager.isUserLoggedIn(username)) {
-                    sendError("User already logged in. Please use a different account.");
-                    continue;
-                }
+        String action = parts[0].toUpperCase();
+        String username = parts[1];
+        String password = parts[2];
+        Command command = Command.fromString(action);
+        if (command.equals(Command.LOGIN) && loggedInManager.isUserLoggedIn(username)) {
+            sendError("User already logged in. Please use a different account.");
+            return;
+        }
 
-                if (command.equals(Command.LOGIN)) {
-                    session = authManager.authenticate(username, password);
-                    if (session != null) {
-                        this.currentUser = new User(username);
-                        loggedInManager.userLoggedIn(username);
-                        sendResponse(ServerResponse.NEW_TOKEN, session.getToken());
-                        sendSuccess("Login successful! Welcome " + username);
-                        break;
-                    }else {
-                        sendError("Invalid username or password. Please try again.");
-                    }
-                } else if (command.equals(Command.REGISTER)) {
-                    if(username.contains(":")){
-                        sendError("Invalid username");
-                        continue;
-                    }
-                    session = authManager.registerUser(username, password);
-                    if (session != null) {
-                        this.currentUser = new User(username);
-                        loggedInManager.userLoggedIn(username);
-                        sendResponse(ServerResponse.NEW_TOKEN, session.getToken());
-                        sendSuccess("Registration successful! Welcome " + username);
-                        break;
-                    } else {
-                        sendError("Username already exists");
-                    }
-                } else {
-                    sendError("Unknown command. Use LOGIN, REGISTER or EXIT");
-                }
+        if (command.equals(Command.LOGIN)) {
+            session = authManager.authenticate(username, password);
+            if (session != null) {
+                this.currentUser = new User(username);
+                loggedInManager.userLoggedIn(username);
+                sendResponse(ServerResponse.NEW_TOKEN, session.getToken());
+                sendSuccess("Login successful! Welcome " + username);
+                clientState = ClientState.IN_LOBBY;
+            }else {
+                sendError("Invalid username or password. Please try again.");
+            }
+        } else if (command.equals(Command.REGISTER)) {
+            if(username.contains(":")){
+                sendError("Invalid username");
+                return;
             }
-            clientState = ClientState.IN_LOBBY;
+            session = authManager.registerUser(username, password);
+            if (session != null) {
+                this.currentUser = new User(username);
+                loggedInManager.userLoggedIn(username);
+                sendResponse(ServerResponse.NEW_TOKEN, session.getToken());
+                sendSuccess("Registration successful! Welcome " + username);
+                clientState = ClientState.IN_LOBBY;
+            } else {
+                sendError("Username already exists");
+            }
+        } else {
+            sendError("Unknown command. Use LOGIN, REGISTER or EXIT");
+        }
     }
 
     private void sendResponse(ServerResponse serverResponse, String message) throws  IOException{
@@ -222,109 +254,102 @@ public class ChatClientHandler implements Runnable {
         bufferedWriter.write("LOGOUT          - Log out from the server");
         bufferedWriter.newLine();
         listRooms();
+    }
 
-        while (clientState == ClientState.IN_LOBBY) {
-            String input = bufferedReader.readLine();
-
-            if (input == null) {
-                clientState = ClientState.DISCONNECTED;
-                return;
-            }
-
-            input = input.trim();
-            if (input.isEmpty()) {
-                sendError("Empty command.");
-                continue;
-            }
+    private void handleLobbyCommand(String input) throws IOException {
+        input = input.trim();
+        if (input.isEmpty()) {
+            sendError("Empty command.");
+            return;
+        }
 
-            int firstSpace = input.indexOf(" ");
-            String commandStr = (firstSpace == -1) ? input : input.substring(0, firstSpace).trim();
-            String argument = (firstSpace == -1) ? "" : input.substring(firstSpace + 1).trim();
+        int firstSpace = input.indexOf(" ");
+        String commandStr = (firstSpace == -1) ? input : input.substring(0, firstSpace).trim();
+        String argument = (firstSpace == -1) ? "" : input.substring(firstSpace + 1).trim();
 
-            Command command = Command.fromString(commandStr);
+        Command command = Command.fromString(commandStr);
 
-            switch (command) {
-                case Command.JOIN:
-                    if (argument.isEmpty()) {
-                        sendError("Please specify a room name.");
-                        break;
-                    }
-                    this.currentRoomName = argument;
-                    if (!roomManager.roomExists(argument)) {
-                        Room newRoom = new Room(argument, currentUser.getUsername());
-                        roomManager.addRoom(newRoom);
-                        session.setRoom(newRoom);
-                        sendSuccess("Created and joined Room: " + argument);
-                    } else {
-                        if (!roomManager.isAIRoom(argument)) {
-                            Room room = roomManager.getRoomByName(argument);
-                            room.addMember(currentUser.getUsername());
-                            session.setRoom(room);
-                            sendSuccess("Joined Room: " + argument);
-                        } else {
-                            sendError("Can't join room using this command. Use JOIN_AI to enter.");
-                            break;
-                        }
-                    }
-                    clientState = ClientState.IN_CHAT_ROOM;
+        switch (command) {
+            case Command.JOIN:
+                if (argument.isEmpty()) {
+                    sendError("Please specify a room name.");
                     break;
-
-                case Command.JOIN_AI:
-                    if (argument.isEmpty()) {
-                        sendError("Please specify a room name.");
+                }
+                this.currentRoomName = argument;
+                if (!roomManager.roomExists(argument)) {
+                    Room newRoom = new Room(argument, currentUser.getUsername());
+                    roomManager.addRoom(newRoom);
+                    session.setRoom(newRoom);
+                    sendSuccess("Created and joined Room: " + argument);
+                } else {
+                    if (!roomManager.isAIRoom(argument)) {
+                        Room room = roomManager.getRoomByName(argument);
+                        room.addMember(currentUser.getUsername());
+                        session.setRoom(room);
+                        sendSuccess("Joined Room: " + argument);
+                    } else {
+                        sendError("Can't join room using this command. Use JOIN_AI to enter.");
                         break;
                     }
-                    String aiPrompt = "You are a helpful assistant named " + roomManager.getAIManager().getBOT_NAME() +
-                            " in a chat room. Keep your responses concise and helpful. " +
-                            "You will see messages from all users in the room to provide context. " +
-                            "Remember the content and context of previous conversations in this room.";
+                }
+                clientState = ClientState.IN_CHAT_ROOM;
+                break;
 
-                    this.currentRoomName = argument;
+            case Command.JOIN_AI:
+                if (argument.isEmpty()) {
+                    sendError("Please specify a room name.");
+                    break;
+                }
+                String aiPrompt = "You are a helpful assistant named " + roomManager.getAIManager().getBOT_NAME() +
+                        " in a chat room. Keep your responses concise and helpful. " +
+                        "You will see messages from all users in the room to provide context. " +
+                        "Remember the content and context of previous conversations in this room.";
 
-                    if (!roomManager.roomExists(argument)) {
-                        aiPrompt += " This room was created by " + currentUser.getUsername() + ".";
-                        roomManager.createAIRoom(argument, currentUser.getUsername(), aiPrompt);
-                        session.setRoom(roomManager.getRoomByName(argument));
-                        roomManager.getAIManager().addNonUserMessage(argument, "System",
-                                "Room was created by " + currentUser.getUsername());
+                this.currentRoomName = argument;
 
-                        sendSuccess("Created and joined AI Room: " + argument);
-                    } else if (roomManager.isAIRoom(argument)) {
-                        roomManager.getRoomByName(argument).addMember(currentUser.getUsername());
+                if (!roomManager.roomExists(argument)) {
+                    aiPrompt += " This room was created by " + currentUser.getUsername() + ".";
+                    roomManager.createAIRoom(argument, currentUser.getUsername(), aiPrompt);
+                    session.setRoom(roomManager.getRoomByName(argument));
+                    roomManager.getAIManager().addNonUserMessage(argument, "System",
+                            "Room was created by " + currentUser.getUsername());
 
-                        String joinMessage = currentUser.getUsername() + " has joined the chat room.";
-                        roomManager.getAIManager().addNonUserMessage(argument, "System", joinMessage);
+                    sendSuccess("Created and joined AI Room: " + argument);
+                } else if (roomManager.isAIRoom(argument)) {
+                    roomManager.getRoomByName(argument).addMember(currentUser.getUsername());
 
-                        session.setRoom(roomManager.getRoomByName(argument));
-                        sendSuccess("Joined AI Room: " + argument);
-                    } else {
-                        sendError("Room exists but is not an AI room. Use JOIN command instead.");
-                        break;
-                    }
-                    clientState = ClientState.IN_CHAT_ROOM;
-                    break;
+                    String joinMessage = currentUser.getUsername() + " has joined the chat room.";
+                    roomManager.getAIManager().addNonUserMessage(argument, "System", joinMessage);
 
-                case Command.REFRESH:
-                    bufferedWriter.write(ServerResponse.LISTING_ROOMS.toString());
-                    bufferedWriter.newLine();
-                    listRooms();
+                    session.setRoom(roomManager.getRoomByName(argument));
+                    sendSuccess("Joined AI Room: " + argument);
+                } else {
+                    sendError("Room exists but is not an AI room. Use JOIN command instead.");
                     break;
+                }
+                clientState = ClientState.IN_CHAT_ROOM;
+                break;
 
-                case Command.LOGOUT:
-                    sendResponse(ServerResponse.LOGOUT_USER, "Logged out from the server successfully.");
-                    handleLogout();
-                    break;
+            case Command.REFRESH:
+                bufferedWriter.write(ServerResponse.LISTING_ROOMS.toString());
+                bufferedWriter.newLine();
+                listRooms();
+                break;
 
-                default:
-                    sendError("Unknown command.");
-                    break;
-            }
+            case Command.LOGOUT:
+                sendResponse(ServerResponse.LOGOUT_USER, "Logged out from the server successfully.");
+                handleLogout();
+                break;
+
+            default:
+                sendError("Unknown command.");
+                break;
         }
     }
 
     private void handleLogout()  {
         session.closeSession();
-        closeEverything(socket, bufferedReader, bufferedWriter);
+        closeEverything(connection, bufferedReader, bufferedWriter);
     }
     private void sendChatRoomInstructions() throws IOException {
         String instructions = "Type messages to chat. Use commands /leave, /list or /help to see a list of commands.";
@@ -431,41 +456,36 @@ public class ChatClientHandler implements Runnable {
         sendChatRoomInstructions();
         addClient();
         sendChatRoomHistory();
-        while (clientState == ClientState.IN_CHAT_ROOM) {
-            String message = bufferedReader.readLine();
-            if (message == null) {
-                clientState = ClientState.DISCONNECTED;
-                return;
-            }
-
-            if (message.equalsIgnoreCase("/leave")) {
-                bufferedWriter.write(ServerResponse.LEAVING_ROOM.toString());
-                bufferedWriter.newLine();
-                String leaveMessage = currentUser.getUsername() + " left the chat room";
-                roomManager.getAIManager().addNonUserMessage(currentRoomName, "System", leaveMessage);
-                handleLeave();
-                return;
-            } else if (message.equalsIgnoreCase("/help")) {
-                bufferedWriter.write(ServerResponse.CHAT_COMMAND.toString());
-                bufferedWriter.newLine();
-                printHelpInstructions();
-            } else if (message.equalsIgnoreCase("/list")) {
-                bufferedWriter.write(ServerResponse.CHAT_COMMAND.toString());
-                bufferedWriter.newLine();
-                listPeopleInRoom();
-            } else if (message.startsWith("/ai ") && roomManager.isAIRoom(currentRoomName)) {
-                String aiMessage = message.substring(4);
-                handleAIMessage(aiMessage);
-            } else {
-                String formattedMessage = currentUser.getUsername() + ": " + message;
-                roomManager.getRoomByName(currentRoomName).addMessage(formattedMessage);
+    }
 
-                if (roomManager.isAIRoom(currentRoomName)) {
-                    roomManager.getAIManager().addNonUserMessage(currentRoomName, currentUser.getUsername(), message);
-                }
+    private void handleChatRoomMessage(String message) throws IOException {
+        if (message.equalsIgnoreCase("/leave")) {
+            bufferedWriter.write(ServerResponse.LEAVING_ROOM.toString());
+            bufferedWriter.newLine();
+            String leaveMessage = currentUser.getUsername() + " left the chat room";
+            roomManager.getAIManager().addNonUserMessage(currentRoomName, "System", leaveMessage);
+            handleLeave();
+            return;
+        } else if (message.equalsIgnoreCase("/help")) {
+            bufferedWriter.write(ServerResponse.CHAT_COMMAND.toString());
+            bufferedWriter.newLine();
+            printHelpInstructions();
+        } else if (message.equalsIgnoreCase("/list")) {
+            bufferedWriter.write(ServerResponse.CHAT_COMMAND.toString());
+            bufferedWriter.newLine();
+            listPeopleInRoom();
+        } else if (message.startsWith("/ai ") && roomManager.isAIRoom(currentRoomName)) {
+            String aiMessage = message.substring(4);
+            handleAIMessage(aiMessage);
+        } else {
+            String formattedMessage = currentUser.getUsername() + ": " + message;
+            roomManager.getRoomByName(currentRoomName).addMessage(formattedMessage);
 
-                broadCastMessage(formattedMessage);
+            if (roomManager.isAIRoom(currentRoomName)) {
+                roomManager.getAIManager().addNonUserMessage(currentRoomName, currentUser.getUsername(), message);
             }
+
+            broadCastMessage(formattedMessage);
         }
     }
 
@@ -478,7 +498,7 @@ public class ChatClientHandler implements Runnable {
                     chatClientHandler.bufferedWriter.flush();
                 }
             } catch (IOException e) {
-                chatClientHandler.closeEverything(chatClientHandler.socket, chatClientHandler.bufferedReader, chatClientHandler.bufferedWriter);
+                chatClientHandler.closeEverything(chatClientHandler.connection, chatClientHandler.bufferedReader, chatClientHandler.bufferedWriter);
             }
         }
     }
@@ -527,7 +547,7 @@ public class ChatClientHandler implements Runnable {
                     chatClientHandler.bufferedWriter.flush();
                 }
             } catch (IOException e) {
-                chatClientHandler.closeEverything(chatClientHandler.socket, chatClientHandler.bufferedReader, chatClientHandler.bufferedWriter);
+                chatClientHandler.closeEverything(chatClientHandler.connection, chatClientHandler.bufferedReader, chatClientHandler.bufferedWriter);
             }
         }
     }
@@ -539,7 +559,7 @@ public class ChatClientHandler implements Runnable {
         }
     }
 
-    public void closeEverything(Socket socket, BufferedReader bufferedReader, BufferedWriter bufferedWriter) {
+    public void closeEverything(Closeable connection, BufferedReader bufferedReader, BufferedWriter bufferedWriter) {
         if(currentUser != null){
             authManager.updateUserSession(session.getToken(), session);
             loggedInManager.userLoggedOut(currentUser.getUsername());
@@ -555,8 +575,8 @@ public class ChatClientHandler implements Runnable {
             if (bufferedWriter != null) {
                 bufferedWriter.close();
             }
-            if (socket != null) {
-                socket.close();
+            if (connection != null) {
+                connection.close();
             }
 
             clientState = ClientState.DISCONNECTED;
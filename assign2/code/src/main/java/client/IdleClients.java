@@ -0,0 +1,121 @@
+package client;
+
+import javax.net.ssl.*;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Load generator for the server's memory per connection: opens <count> TLS connections that
+// send their TOKEN line, wait for the welcome and then stay idle until the process is killed.
+// Run against "ChatServer <port> threads stats" and "ChatServer <port> nio stats" to compare
+// the two transports.
+//
+// One address has about 28k ephemeral ports, so against a loopback server the connections
+// are spread over the local addresses 127.0.0.1, 127.0.0.2, ... 20000 each.
+public class IdleClients {
+
+    private static final int CONNECTIONS_PER_ADDRESS = 20000;
+    // handshakes in flight at once, more would overflow the server's accept backlog
+    private static final int CONCURRENT_HANDSHAKES = 256;
+
+    private static final AtomicInteger connected = new AtomicInteger();
+    private static final AtomicInteger failed = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: <host> <port> <count>");
+            return;
+        }
+        String host = args[0];
+        int port = Integer.parseInt(args[1]);
+        int count = Integer.parseInt(args[2]);
+
+        KeyStore trustStore = KeyStore.getInstance("JKS");
+        InputStream tsFile = IdleClients.class.getClassLoader().getResourceAsStream("clienttruststore.jks");
+        if (tsFile == null) {
+            throw new FileNotFoundException("Could not find clienttruststore.jks in classpath");
+        }
+        trustStore.load(tsFile, "trustpassword".toCharArray());
+
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(trustStore);
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, tmf.getTrustManagers(), null);
+        SSLSocketFactory factory = sslContext.getSocketFactory();
+
+        InetAddress server = InetAddress.getByName(host);
+        Semaphore handshakes = new Semaphore(CONCURRENT_HANDSHAKES);
+
+        for (int i = 0; i < count; i++) {
+            InetAddress local = null;
+            if (server.isLoopbackAddress() && server.getAddress().length == 4) {
+                int address = i / CONNECTIONS_PER_ADDRESS + 1;
+                local = InetAddress.getByAddress(new byte[]{127, (byte) (address >> 16), (byte) (address >> 8), (byte) address});
+            }
+
+            handshakes.acquire();
+            InetAddress bindAddress = local;
+            Thread.startVirtualThread(() -> hold(factory, server, port, bindAddress, handshakes));
+
+            if ((i + 1) % 1000 == 0) {
+                System.out.println("Started " + (i + 1) + " connections, " + connected.get() + " connected, " + failed.get() + " failed");
+            }
+        }
+
+        handshakes.acquire(CONCURRENT_HANDSHAKES);
+        System.out.println("All started: " + connected.get() + " connected, " + failed.get() + " failed. Holding, Ctrl+C to stop.");
+        while (true) {
+            Thread.sleep(10000);
+            System.out.println(connected.get() + " connected, " + failed.get() + " failed");
+        }
+    }
+
+    private static void hold(SSLSocketFactory factory, InetAddress server, int port, InetAddress local, Semaphore handshakes) {
+        boolean released = false;
+        try (Socket plain = new Socket()) {
+            if (local != null) {
+                plain.bind(new InetSocketAddress(local, 0));
+            }
+            plain.connect(new InetSocketAddress(server, port));
+
+            SSLSocket socket = (SSLSocket) factory.createSocket(plain, server.getHostAddress(), port, true);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+
+            writer.write("TOKEN ");
+            writer.newLine();
+            writer.flush();
+
+            // connected once the server has answered with its welcome
+            String line;
+            while ((line = reader.readLine()) != null && !line.startsWith("Enter commands")) {
+            }
+            if (line == null) {
+                throw new EOFException("Closed by the server");
+            }
+
+            connected.incrementAndGet();
+            handshakes.release();
+            released = true;
+
+            while (reader.readLine() != null) {
+            }
+        } catch (IOException e) {
+            failed.incrementAndGet();
+            if (failed.get() <= 10) {
+                System.err.println("Connection failed: " + e.getMessage());
+            }
+        } finally {
+            if (released) {
+                connected.decrementAndGet();
+            } else {
+                handshakes.release();
+            }
+        }
+    }
+}
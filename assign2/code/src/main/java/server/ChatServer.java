@@ -26,15 +26,24 @@ public class ChatServer {
             return;
         }
 
-        try {
-            KeyStore ks = KeyStore.getInstance("JKS");
-            ks.load(new FileInputStream("code/data/serverData/server.keystore"), "password".toCharArray());
+        String transport = args.length >= 2 ? args[1] : "threads";
+        if (!transport.equals("threads") && !transport.equals("nio")) {
+            System.err.println("Usage: <port> [threads|nio] [stats]");
+            return;
+        }
+        if (args.length >= 3 && args[2].equals("stats")) {
+            ServerStats.startReporting(transport, 5000);
+        }
 
-            KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509");
-            kmf.init(ks, "password".toCharArray());
+        try {
+            SSLContext context = createSSLContext();
 
-            SSLContext context = SSLContext.getInstance("TLS");
-            context.init(kmf.getKeyManagers(), null, null);
+            if (transport.equals("nio")) {
+                int loops = Integer.getInteger("chat.loops", Runtime.getRuntime().availableProcessors());
+                NioChatServer server = new NioChatServer(port, context, loops);
+                server.start();
+                return;
+            }
 
             SSLServerSocketFactory ssf = context.getServerSocketFactory();
             SSLServerSocket serverSocket = (SSLServerSocket) ssf.createServerSocket(port);
@@ -48,6 +57,20 @@ public class ChatServer {
 
     }
 
+    public static SSLContext createSSLContext() throws Exception {
+        KeyStore ks = KeyStore.getInstance("JKS");
+        try (FileInputStream keystore = new FileInputStream("code/data/serverData/server.keystore")) {
+            ks.load(keystore, "password".toCharArray());
+        }
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509");
+        kmf.init(ks, "password".toCharArray());
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(kmf.getKeyManagers(), null, null);
+        return context;
+    }
+
     public ChatServer(int port, ServerSocket serverSocket) {
         this.serverSocket = serverSocket;
         System.out.println("Chat server initializing on port: " + port);
@@ -60,11 +83,14 @@ public class ChatServer {
                 System.out.println("New client connected: " + clientSocket.getInetAddress().getHostAddress());
                 ChatClientHandler client = new ChatClientHandler(clientSocket);
 
+                ServerStats.connectionOpened();
                 Thread.startVirtualThread(() -> {
                     try {
                         client.run();
                     }catch (Exception e) {
                         e.printStackTrace();
+                    } finally {
+                        ServerStats.connectionClosed();
                     }
                 });
             }
@@ -0,0 +1,117 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// One selector thread of NioChatServer. Every connection belongs to one loop, which does all
+// of its reads, writes and TLS work. The network and application buffers are shared by the
+// connections of the loop, so an idle connection holds none of its own.
+public final class EventLoop implements Runnable {
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    private ByteBuffer readBuffer;
+    private ByteBuffer appBuffer;
+    private ByteBuffer wrapBuffer;
+
+    public EventLoop(int index, int packetBufferSize, int applicationBufferSize) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, "chat-loop-" + index);
+        this.readBuffer = ByteBuffer.allocateDirect(packetBufferSize);
+        this.appBuffer = ByteBuffer.allocateDirect(applicationBufferSize);
+        this.wrapBuffer = ByteBuffer.allocateDirect(packetBufferSize);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    // Runs task on the loop thread; the tasks of one thread run in the order given
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (Thread.currentThread() != thread) {
+            selector.wakeup();
+        }
+    }
+
+    public void register(SocketChannel channel, TlsConnection connection) {
+        execute(() -> {
+            try {
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connection.registered(key);
+            } catch (IOException e) {
+                connection.fail(e);
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        while (selector.isOpen()) {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            try {
+                selector.select();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+
+            for (SelectionKey key : selector.selectedKeys()) {
+                TlsConnection connection = (TlsConnection) key.attachment();
+                try {
+                    if (key.isValid() && key.isWritable()) {
+                        connection.onWritable();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        connection.onReadable();
+                    }
+                } catch (RuntimeException e) {
+                    connection.fail(e);
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+    }
+
+    // The shared buffers, grown if a peer needs larger records than the first session did.
+    // Only the loop thread may use them, and only until it returns to the selector.
+
+    ByteBuffer readBuffer(int capacity) {
+        if (readBuffer.capacity() < capacity) {
+            readBuffer = ByteBuffer.allocateDirect(capacity);
+        }
+        readBuffer.clear();
+        return readBuffer;
+    }
+
+    ByteBuffer appBuffer(int capacity) {
+        if (appBuffer.capacity() < capacity) {
+            appBuffer = ByteBuffer.allocateDirect(capacity);
+        }
+        appBuffer.clear();
+        return appBuffer;
+    }
+
+    ByteBuffer wrapBuffer(int capacity) {
+        if (wrapBuffer.capacity() < capacity) {
+            wrapBuffer = ByteBuffer.allocateDirect(capacity);
+        }
+        wrapBuffer.clear();
+        return wrapBuffer;
+    }
+}
@@ -0,0 +1,77 @@
+package server;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// The chat server on non-blocking channels: one EventLoop per core does the reads, writes and
+// TLS (SSLEngine) of its connections, and the lines go to the same ChatClientHandler state
+// machine as in ChatServer. A connection costs no thread of its own while idle, only its
+// engine and TlsConnection, which is what lets one node hold 100k+ idle clients.
+public class NioChatServer {
+
+    private final ServerSocketChannel serverChannel;
+    private final SSLContext context;
+    private final EventLoop[] loops;
+    // the handlers of the lines, a virtual thread per busy connection
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    private int nextLoop = 0;
+
+    public NioChatServer(int port, SSLContext context, int loopCount) throws IOException {
+        this.context = context;
+        this.serverChannel = ServerSocketChannel.open();
+        // a deep backlog, clients reconnecting in bulk would otherwise be refused
+        serverChannel.bind(new InetSocketAddress(port), 4096);
+
+        // the buffers of the loops are sized by the records of a session of this context
+        SSLEngine probe = context.createSSLEngine();
+        int packetBufferSize = probe.getSession().getPacketBufferSize();
+        int applicationBufferSize = probe.getSession().getApplicationBufferSize();
+
+        this.loops = new EventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new EventLoop(i, packetBufferSize, applicationBufferSize);
+        }
+        System.out.println("Chat server initializing on port: " + port + " (nio, " + loopCount + " event loops)");
+    }
+
+    public void start() {
+        for (EventLoop loop : loops) {
+            loop.start();
+        }
+
+        try {
+            while (serverChannel.isOpen()) {
+                SocketChannel channel = serverChannel.accept();
+                System.out.println("New client connected: " + channel.socket().getInetAddress().getHostAddress());
+
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+
+                SSLEngine engine = context.createSSLEngine();
+                engine.setUseClientMode(false);
+
+                EventLoop loop = loops[nextLoop];
+                nextLoop = (nextLoop + 1) % loops.length;
+
+                ServerStats.connectionOpened();
+                loop.register(channel, new TlsConnection(channel, engine, loop, workers));
+            }
+        } catch (IOException e) {
+            closeServerChannel();
+        }
+    }
+
+    public void closeServerChannel() {
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
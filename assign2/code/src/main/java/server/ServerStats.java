@@ -0,0 +1,69 @@
+package server;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Open connections and memory of the server, printed every few seconds with the "stats"
+// argument so the two transports can be compared under the same idle load.
+public class ServerStats {
+
+    private static final AtomicInteger openConnections = new AtomicInteger();
+
+    public static void connectionOpened() {
+        openConnections.incrementAndGet();
+    }
+
+    public static void connectionClosed() {
+        openConnections.decrementAndGet();
+    }
+
+    public static void startReporting(String transport, long periodMillis) {
+        Thread reporter = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(periodMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                System.out.println(report(transport));
+            }
+        }, "chat-stats");
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
+    public static String report(String transport) {
+        Runtime runtime = Runtime.getRuntime();
+        long heapUsed = runtime.totalMemory() - runtime.freeMemory();
+        int open = openConnections.get();
+        long rss = residentSetKiB();
+
+        StringBuilder line = new StringBuilder();
+        line.append("[stats] transport=").append(transport)
+                .append(" connections=").append(open)
+                .append(" heapUsedMiB=").append(heapUsed >> 20);
+        if (rss >= 0) {
+            line.append(" rssMiB=").append(rss >> 10);
+            if (open > 0) {
+                line.append(" rssKiBPerConnection=").append(rss / open);
+            }
+        }
+        return line.toString();
+    }
+
+    // VmRSS of /proc/self/status, -1 where there is none (not Linux)
+    private static long residentSetKiB() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.substring(6).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+}
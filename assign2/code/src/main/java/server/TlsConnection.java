@@ -0,0 +1,426 @@
+package server;
+
+import client.ChatClientHandler;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+// One client of NioChatServer: the SSLEngine of the connection, the lines it has received
+// and the replies waiting to be encrypted and sent.
+//
+// Reads, writes and TLS run on the connection's EventLoop. The lines go to the same
+// ChatClientHandler as in the blocking server, called from a worker that is started when a
+// line arrives and ends when the connection has none left, so the commands of one client
+// run in order and a slow one (an AI prompt, the users file) does not hold up the loop.
+// Replies written by the handler, or by the broadcasts of other clients, are queued and
+// flushed by the loop.
+//
+// An idle connection keeps only the engine, the half of a record or line that has not
+// arrived yet, and the bytes the socket has not taken.
+public final class TlsConnection implements Closeable {
+
+    private static final int MAX_LINE_BYTES = 64 * 1024;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final EventLoop loop;
+    private final Executor workers;
+    private final ChatClientHandler handler;
+
+    // Loop thread only
+    private SelectionKey key;
+    private ByteBuffer pendingNetIn;
+    private ByteBuffer pendingNetOut;
+    private byte[] partialLine;
+    private int partialLength;
+    private boolean closed = false;
+
+    // Guarded by this
+    private StringBuilder pendingText;
+    private ArrayDeque<ByteBuffer> outbound;
+    private ArrayDeque<String> lines;
+    private boolean flushScheduled = false;
+    private boolean processing = false;
+    private boolean closeRequested = false;
+    private boolean peerGone = false;
+
+    public TlsConnection(SocketChannel channel, SSLEngine engine, EventLoop loop, Executor workers) {
+        this.channel = channel;
+        this.engine = engine;
+        this.loop = loop;
+        this.workers = workers;
+        this.handler = new ChatClientHandler(new Output(), this);
+    }
+
+    void registered(SelectionKey key) throws SSLException {
+        this.key = key;
+        engine.beginHandshake();
+    }
+
+    // Called by the handler when the client logs out or exits, from any thread: the
+    // queued replies are sent, then close_notify, then the socket is closed
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closeRequested) {
+                return;
+            }
+            closeRequested = true;
+        }
+        loop.execute(this::flushOutbound);
+    }
+
+    void fail(Exception e) {
+        System.err.println("Error in client connection: " + e.getMessage());
+        peerClosed();
+    }
+
+    void onReadable() {
+        ByteBuffer in = loop.readBuffer(engine.getSession().getPacketBufferSize());
+        if (pendingNetIn != null) {
+            in.put(pendingNetIn);
+            pendingNetIn = null;
+        }
+
+        int read;
+        try {
+            read = channel.read(in);
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            peerClosed();
+            return;
+        }
+
+        in.flip();
+        unwrap(in);
+    }
+
+    void onWritable() {
+        flushOutbound();
+
+        // input left while the handshake waited for the socket
+        if (!closed && pendingNetIn != null && pendingNetOut == null) {
+            ByteBuffer in = loop.readBuffer(engine.getSession().getPacketBufferSize());
+            in.put(pendingNetIn);
+            pendingNetIn = null;
+            in.flip();
+            unwrap(in);
+        }
+    }
+
+    private void unwrap(ByteBuffer in) {
+        try {
+            while (!closed) {
+                SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+
+                if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                    runDelegatedTasks();
+                    continue;
+                }
+                if (status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                    flushOutbound();
+                    if (closed || pendingNetOut != null) {
+                        break;
+                    }
+                    continue;
+                }
+                if (!in.hasRemaining()) {
+                    break;
+                }
+
+                ByteBuffer app = loop.appBuffer(engine.getSession().getApplicationBufferSize());
+                SSLEngineResult result = engine.unwrap(in, app);
+                app.flip();
+                receive(app);
+
+                if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                    break;
+                }
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    peerClosed();
+                    return;
+                }
+                // BUFFER_OVERFLOW: the session grew, the next appBuffer is larger
+            }
+        } catch (SSLException e) {
+            fail(e);
+            return;
+        }
+
+        if (!closed && in.hasRemaining()) {
+            pendingNetIn = ByteBuffer.allocate(in.remaining()).put(in).flip();
+        }
+    }
+
+    // Splits the decrypted bytes into lines, as BufferedReader.readLine does
+    private void receive(ByteBuffer app) {
+        while (app.hasRemaining()) {
+            byte b = app.get();
+            if (b == '\n') {
+                int length = partialLength;
+                if (length > 0 && partialLine[length - 1] == '\r') {
+                    length--;
+                }
+                dispatch(new String(partialLine == null ? new byte[0] : partialLine, 0, length, StandardCharsets.UTF_8));
+                partialLine = null;
+                partialLength = 0;
+                continue;
+            }
+
+            if (partialLine == null) {
+                partialLine = new byte[64];
+            } else if (partialLength == partialLine.length) {
+                if (partialLength == MAX_LINE_BYTES) {
+                    fail(new IOException("Line longer than " + MAX_LINE_BYTES + " bytes"));
+                    return;
+                }
+                partialLine = Arrays.copyOf(partialLine, Math.min(2 * partialLength, MAX_LINE_BYTES));
+            }
+            partialLine[partialLength++] = b;
+        }
+    }
+
+    private void dispatch(String line) {
+        synchronized (this) {
+            if (lines == null) {
+                lines = new ArrayDeque<>(4);
+            }
+            lines.add(line);
+            if (processing) {
+                return;
+            }
+            processing = true;
+        }
+        workers.execute(this::process);
+    }
+
+    // Worker: the lines in order, then the disconnect if the peer has gone
+    private void process() {
+        while (true) {
+            String line;
+            boolean disconnect = false;
+            synchronized (this) {
+                line = lines == null ? null : lines.poll();
+                if (line == null) {
+                    lines = null;
+                    if (!peerGone || closeRequested) {
+                        processing = false;
+                        return;
+                    }
+                    disconnect = true;
+                } else if (closeRequested) {
+                    // the handler has closed the connection, the rest is dropped
+                    continue;
+                }
+            }
+
+            if (disconnect) {
+                handler.disconnect();
+                synchronized (this) {
+                    processing = false;
+                }
+                return;
+            }
+
+            try {
+                handler.handleLine(line);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error in client handler: " + e.getMessage());
+                handler.disconnect();
+                continue;
+            }
+
+            boolean open;
+            synchronized (this) {
+                open = !closeRequested;
+            }
+            if (handler.isDisconnected() && open) {
+                handler.disconnect();
+            }
+        }
+    }
+
+    private void flushOutbound() {
+        synchronized (this) {
+            flushScheduled = false;
+        }
+        if (closed) {
+            return;
+        }
+
+        try {
+            if (pendingNetOut != null) {
+                channel.write(pendingNetOut);
+                if (pendingNetOut.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                pendingNetOut = null;
+            }
+
+            while (true) {
+                SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+                if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                    runDelegatedTasks();
+                    continue;
+                }
+                if (status == SSLEngineResult.HandshakeStatus.NEED_UNWRAP) {
+                    break;
+                }
+
+                boolean handshaking = status == SSLEngineResult.HandshakeStatus.NEED_WRAP;
+                ByteBuffer source = handshaking ? EMPTY : nextOutbound();
+                if (source == null) {
+                    if (closeRequested() && !engine.isOutboundDone()) {
+                        engine.closeOutbound();
+                        continue;
+                    }
+                    break;
+                }
+
+                ByteBuffer net = loop.wrapBuffer(engine.getSession().getPacketBufferSize());
+                SSLEngineResult result = engine.wrap(source, net);
+                if (source != EMPTY && !source.hasRemaining()) {
+                    removeOutbound();
+                }
+
+                net.flip();
+                channel.write(net);
+                if (net.hasRemaining()) {
+                    pendingNetOut = ByteBuffer.allocate(net.remaining()).put(net).flip();
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+
+                if (result.bytesConsumed() == 0 && result.bytesProduced() == 0
+                        && result.getStatus() != SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                    break;
+                }
+            }
+
+            if (engine.isOutboundDone()) {
+                closeChannel();
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private synchronized ByteBuffer nextOutbound() {
+        return outbound == null ? null : outbound.peek();
+    }
+
+    private synchronized void removeOutbound() {
+        outbound.poll();
+        if (outbound.isEmpty()) {
+            outbound = null;
+        }
+    }
+
+    private synchronized boolean closeRequested() {
+        return closeRequested;
+    }
+
+    // The handshake's certificate work, done on the loop: it is short and once per connection
+    private void runDelegatedTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    // The peer closed the connection or broke it: the socket is closed at once and the
+    // handler told once the lines before it are done
+    private void peerClosed() {
+        closeChannel();
+
+        synchronized (this) {
+            peerGone = true;
+            pendingText = null;
+            outbound = null;
+            if (processing || closeRequested) {
+                return;
+            }
+            processing = true;
+        }
+        workers.execute(this::process);
+    }
+
+    private void closeChannel() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pendingNetIn = null;
+        pendingNetOut = null;
+        partialLine = null;
+
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        ServerStats.connectionClosed();
+    }
+
+    // The handler's output: text is kept until flush, then queued for the loop to encrypt
+    private class Output extends Writer {
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            synchronized (TlsConnection.this) {
+                if (closeRequested || peerGone) {
+                    return;
+                }
+                if (pendingText == null) {
+                    pendingText = new StringBuilder(Math.max(length, 64));
+                }
+                pendingText.append(chars, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() {
+            synchronized (TlsConnection.this) {
+                if (pendingText == null) {
+                    return;
+                }
+                if (outbound == null) {
+                    outbound = new ArrayDeque<>(4);
+                }
+                outbound.add(ByteBuffer.wrap(pendingText.toString().getBytes(StandardCharsets.UTF_8)));
+                pendingText = null;
+
+                if (flushScheduled) {
+                    return;
+                }
+                flushScheduled = true;
+            }
+            loop.execute(TlsConnection.this::flushOutbound);
+        }
+
+        @Override
+        public void close() {
+            flush();
+        }
+    }
+}